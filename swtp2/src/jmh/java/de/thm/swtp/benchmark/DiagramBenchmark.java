@@ -0,0 +1,112 @@
+package de.thm.swtp.benchmark;
+
+import de.thm.swtp.TransformationPipeline;
+import de.thm.swtp.classdiagram.ClassDiagramValidator;
+import de.thm.swtp.generator.DiagramGenerator;
+import de.thm.swtp.sequencediagram.FastSequenceParser;
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.statediagram.DiagramNode;
+import de.thm.swtp.statediagram.StateDiagramTransformer;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.classdiagram.ClassDiagram;
+import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steps of a transformation on their own: parsing the sequence diagram, validating it against a class
+ * diagram, transforming it and rendering the state diagram. Every step runs on the result of the previous steps
+ * prepared once per trial, so each benchmark only measures its own step. The diagrams are generated by
+ * {@link DiagramGenerator}; the parameters span their size, which yields the scaling curve of every step.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DiagramBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int messages;
+
+    @Param({"0", "2", "6"})
+    public int depth;
+
+    @Param({"2", "8"})
+    public int fanOut;
+
+    @Param({"3"})
+    public int participants;
+
+    private String code;
+    private SequenceDiagramModel sequenceDiagram;
+    private ClassDiagram classDiagram;
+    private DiagramNode stateDiagram;
+
+    /**
+     * Generates the diagrams and prepares the input of every step.
+     */
+    @Setup
+    public void setup() {
+        var generator = new DiagramGenerator(participants, messages, depth, fanOut);
+        code = generator.sequenceDiagram();
+        sequenceDiagram = FastSequenceParser.parse(code);
+        classDiagram = TransformationPipeline.parseClassDiagram(generator.classDiagram());
+        stateDiagram = transform();
+    }
+
+    /**
+     * Parses the sequence diagram with PlantUML and converts it into the model the transformation works on.
+     * @return The parsed sequence diagram.
+     */
+    @Benchmark
+    public SequenceDiagramModel parse() {
+        var diagram = (SequenceDiagram) new SourceStringReader(code).getBlocks().get(0).getDiagram();
+        return SequenceDiagramModel.of(diagram);
+    }
+
+    /**
+     * Parses the sequence diagram with the parser for the common subset of PlantUML.
+     * @return The parsed sequence diagram.
+     */
+    @Benchmark
+    public SequenceDiagramModel parseFast() {
+        return FastSequenceParser.parse(code);
+    }
+
+    /**
+     * Validates the sequence diagram against the class diagram.
+     * @return The class diagram, so the validation is not eliminated.
+     */
+    @Benchmark
+    public ClassDiagram validate() {
+        new ClassDiagramValidator(classDiagram, sequenceDiagram).validate();
+        return classDiagram;
+    }
+
+    /**
+     * Transforms the sequence diagram into the state diagram of one participant.
+     * @return The state diagram.
+     */
+    @Benchmark
+    public DiagramNode transform() {
+        return new StateDiagramTransformer(sequenceDiagram, List.of(DiagramGenerator.participant(1)),
+                StateDiagramTransformer.Options.DEFAULT).transform();
+    }
+
+    /**
+     * Renders the state diagram as PlantUML code.
+     * @return The PlantUML code.
+     */
+    @Benchmark
+    public String render() {
+        return stateDiagram.toString();
+    }
+}
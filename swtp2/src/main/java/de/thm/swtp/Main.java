@@ -1,19 +1,24 @@
 package de.thm.swtp;
 
-import de.thm.swtp.classdiagram.ClassDiagramValidator;
-import de.thm.swtp.statediagram.StateDiagramTransformer;
-import net.sourceforge.plantuml.FileFormat;
-import net.sourceforge.plantuml.FileFormatOption;
-import net.sourceforge.plantuml.SourceStringReader;
-import net.sourceforge.plantuml.classdiagram.ClassDiagram;
-import net.sourceforge.plantuml.sequencediagram.*;
+import de.thm.swtp.batch.BatchResult;
+import de.thm.swtp.batch.BatchTransformer;
+import de.thm.swtp.cache.ResultCache;
+import de.thm.swtp.conformance.ConformanceChecker;
+import de.thm.swtp.conformance.ConformanceSummary;
+import de.thm.swtp.metrics.Metrics;
+import de.thm.swtp.sequencediagram.DiagramBlock;
+import de.thm.swtp.server.TransformerServer;
+import de.thm.swtp.statediagram.DeterministicStateMachine;
+import de.thm.swtp.watch.DiagramWatcher;
 import org.apache.commons.cli.*;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.List;
 
 public class Main {
 
@@ -30,22 +35,146 @@ public class Main {
         }
     }
 
+    private static void error(String message) {
+        System.out.println("Error: " + message);
+        System.exit(1);
+    }
+
     /**
-     * Writes string to a file it created.
-     * @param path Path of the file to create and write to.
-     * @param content Content to be written.
+     * Transforms a single sequence diagram and exits the program on the first error.
+     * @param pipeline The pipeline to transform the sequence diagram with.
+     * @param sequenceDiagramPath Path of the sequence diagram.
+     * @param outputPath Path to write the generated state diagram to.
      */
-    private static void writeFile(String path, String content) {
+    private static void runSingle(TransformationPipeline pipeline, String sequenceDiagramPath, String outputPath) {
+        List<DiagramBlock> sequenceDiagrams = null;
+        try (var phase = pipeline.getMetrics().start("read")) {
+            sequenceDiagrams = DiagramBlock.read(Paths.get(sequenceDiagramPath));
+        } catch (IOException e) {
+            error("Could not open file " + sequenceDiagramPath);
+        }
+
         try {
-            Files.writeString(Paths.get(path), content);
+            pipeline.run(sequenceDiagrams, Paths.get(outputPath));
+        } catch (IllegalStateException e) {
+            error(e.getMessage());
         } catch (IOException e) {
-            throw new IllegalStateException("Could not save file");
+            error("Could not save file " + outputPath);
         }
     }
 
-    private static void error(String message) {
-        System.out.println("Error: " + message);
-        System.exit(1);
+    /**
+     * Transforms all sequence diagrams matching a directory or glob and prints a summary.
+     * @param pipeline The pipeline to transform the sequence diagrams with.
+     * @param input A directory or glob of sequence diagrams.
+     * @param outputDirectory The directory to write the generated state diagrams to.
+     * @param workers The number of sequence diagrams transformed in parallel.
+     * @return Whether all sequence diagrams were transformed successfully.
+     */
+    private static boolean runBatch(TransformationPipeline pipeline, String input, String outputDirectory, int workers) {
+        try {
+            var inputs = BatchTransformer.findInputs(input);
+            var batch = new BatchTransformer(pipeline, BatchTransformer.baseDirectoryOf(input), Paths.get(outputDirectory), workers);
+            var results = batch.run(inputs);
+
+            BatchTransformer.printSummary(results);
+            return results.stream().allMatch(BatchResult::isSuccess);
+        } catch (IOException e) {
+            error("Could not read " + input);
+        } catch (InterruptedException e) {
+            error("Interrupted");
+        }
+        return false;
+    }
+
+    /**
+     * Checks the traces of a trace file against the minimal state machine of the target participant and writes a
+     * report with one line per trace. The summary is printed to the standard error stream, so the report can be
+     * piped.
+     * @param pipeline The pipeline to transform the sequence diagram with, which reduces it to the minimal machine.
+     * @param sequenceDiagramPath Path of the sequence diagram.
+     * @param traceFile Path of the trace file.
+     * @param reportPath Path to write the report to or null for the standard output.
+     * @param workers The number of workers the chunks of the trace file are distributed to.
+     * @return Whether all traces were accepted.
+     */
+    private static boolean runConformance(TransformationPipeline pipeline, String sequenceDiagramPath,
+                                          String traceFile, String reportPath, int workers) {
+        String sequenceDiagramCode = null;
+        try (var phase = pipeline.getMetrics().start("read")) {
+            sequenceDiagramCode = readFile(sequenceDiagramPath);
+        } catch (IllegalStateException e) {
+            error("Could not open file " + sequenceDiagramPath);
+        }
+
+        try {
+            var machines = pipeline.transform(sequenceDiagramCode);
+            if (machines.size() != 1) {
+                error("Conformance can only be checked for a single participant.");
+            }
+            var checker = new ConformanceChecker((DeterministicStateMachine) machines.values().iterator().next());
+
+            ConformanceSummary summary;
+            try (var phase = pipeline.getMetrics().start("check");
+                 var report = reportPath != null
+                         ? Files.newBufferedWriter(Paths.get(reportPath))
+                         : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+                summary = checker.check(Paths.get(traceFile), workers, report);
+            }
+            System.err.printf("%d traces: %d accepted, %d rejected, %d incomplete (%d events)%n", summary.traces(),
+                    summary.accepted(), summary.rejected(), summary.incomplete(), summary.events());
+            return summary.isConformant();
+        } catch (IllegalStateException e) {
+            error(e.getMessage());
+        } catch (IOException e) {
+            error("Could not check " + traceFile);
+        } catch (InterruptedException e) {
+            error("Interrupted");
+        }
+        return false;
+    }
+
+    /**
+     * Prints the collected metrics to the standard error stream.
+     * @param metrics The metrics.
+     * @param format Either 'text' or 'json'.
+     */
+    private static void printMetrics(Metrics metrics, String format) {
+        System.err.print(format.equals("json") ? metrics.toJson() : metrics.toText());
+    }
+
+    /**
+     * Transforms the watched sequence diagrams whenever they change. The program keeps running until it is terminated.
+     * @param watcher The watcher of the sequence diagrams.
+     * @param input The sequence diagram, directory or glob being watched.
+     */
+    private static void runWatch(DiagramWatcher watcher, String input) {
+        try {
+            System.out.printf("Watching %s for changes%n", input);
+            watcher.run();
+        } catch (IOException e) {
+            error("Could not watch " + input);
+        } catch (InterruptedException e) {
+            error("Interrupted");
+        }
+    }
+
+    /**
+     * Starts the transformer server. The program keeps running until it is terminated.
+     * @param port The port to listen on.
+     * @param timeout The maximum time in milliseconds a single request may take.
+     * @param cache The cache to serve unchanged inputs from or null.
+     */
+    private static void runServer(String port, String timeout, ResultCache cache) {
+        try {
+            var server = new TransformerServer(Integer.parseInt(port), Long.parseLong(timeout), cache);
+            server.start();
+            System.out.printf("Listening on http://localhost:%d/transform%n", server.getPort());
+        } catch (NumberFormatException e) {
+            error("Invalid port or timeout. Must be a number.");
+        } catch (IOException e) {
+            error("Could not listen on port " + port);
+        }
     }
 
     public static void main(String[] args) {
@@ -55,7 +184,6 @@ public class Main {
                         .hasArg()
                         .desc("The sequence diagram to transform to a sate diagram.")
                         .argName("path")
-                        .required()
                         .build())
                 .addOption(Option.builder("c")
                         .longOpt("classDiagram")
@@ -68,19 +196,107 @@ public class Main {
                         .hasArg()
                         .desc("Path to write the generated state diagram to.")
                         .argName("path")
-                        .required()
+                        .build())
+                .addOption(Option.builder("i")
+                        .longOpt("input")
+                        .hasArg()
+                        .desc("Batch mode: a directory (all .puml files inside it) or glob of sequence diagrams to transform.")
+                        .argName("dir|glob")
+                        .build())
+                .addOption(Option.builder("d")
+                        .longOpt("outputDirectory")
+                        .hasArg()
+                        .desc("Batch mode: directory to write the generated state diagrams to.")
+                        .argName("path")
+                        .build())
+                .addOption(Option.builder("w")
+                        .longOpt("workers")
+                        .hasArg()
+                        .desc("Batch mode: number of sequence diagrams transformed in parallel. Defaults to the number of processors.")
+                        .argName("count")
                         .build())
                 .addOption(Option.builder("p")
                         .longOpt("targetParticipant")
                         .hasArg()
-                        .desc("Every event in the sequence diagram that does not deal with this participant will be ignored.")
+                        .desc("Every event in the sequence diagram that does not deal with this participant will be ignored. "
+                                + "A comma-separated list of participants or '*' for all participants generates one state "
+                                + "diagram per participant in a single pass, named after the output with the participant "
+                                + "inserted before the file extension.")
                         .argName("name")
-                        .required()
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("conformance")
+                        .hasArg()
+                        .desc("Check the traces of a log against the minimal state machine of the participant instead "
+                                + "of transforming. One event per line, the session and the event separated by a tab, "
+                                + "sessions may be interleaved. Writes one line per trace to --output or the standard "
+                                + "output.")
+                        .argName("path")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("watch")
+                        .desc("Keep running and transform the sequence diagrams again whenever they change. "
+                                + "Only changed outputs are written.")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("share")
+                        .desc("Write every copy of an identical alt, loop or opt block or branch as a reference to the "
+                                + "first one instead of repeating its states.")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("optimize")
+                        .desc("Remove redundant empty transitions and wrapper states from the generated state diagrams "
+                                + "without changing their behaviour. Smaller diagrams are laid out faster.")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("minimize")
+                        .desc("Flatten the generated state diagrams and write the minimal deterministic state machines "
+                                + "accepting the same sequences of triggers and guards.")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("metrics")
+                        .hasArg()
+                        .optionalArg(true)
+                        .desc("Print the wall time and allocated bytes of every phase and the size of the generated "
+                                + "state diagrams to stderr once a single or batch run is done. Can be 'text' (default) "
+                                + "or 'json'.")
+                        .argName("format")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("cache")
+                        .hasArg()
+                        .desc("Directory to cache validation verdicts and generated state diagrams in. Unchanged inputs are served from it.")
+                        .argName("dir")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("cacheSize")
+                        .hasArg()
+                        .desc("Maximum size of the cache in megabytes. Least recently used entries are evicted first. Defaults to 256.")
+                        .argName("mb")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("server")
+                        .hasArg()
+                        .desc("Server mode: keep running and answer transformation requests over HTTP on this localhost port.")
+                        .argName("port")
+                        .build())
+                .addOption(Option.builder()
+                        .longOpt("timeout")
+                        .hasArg()
+                        .desc("Server mode: maximum time a single request may take. Defaults to 10000. Generating states "
+                                + "stops when it is exceeded, parsing and rendering run to completion.")
+                        .argName("ms")
                         .build())
                 .addOption(Option.builder("outputType")
                         .hasArg()
-                        .desc("The format in which the state diagram should be emitted. Can be either 'image' or 'uml'.")
-                        .argName("type")
+                        .desc("The format in which the state diagram should be emitted. Can be 'uml', 'image' or "
+                                + "'png', 'svg', 'table', the transition table of the minimal state machine as "
+                                + "tab-separated values, 'java', a Java class executing the minimal state machine, or "
+                                + "'binary', the state graph in a versioned binary format for other tools (.stg). "
+                                + "A comma-separated list writes several formats from a single transformation, each "
+                                + "to the output with the extension of its format. 'table' and 'java' can only be "
+                                + "combined with other formats together with --minimize.")
+                        .argName("types")
                         .build());
 
         var optionParser = new DefaultParser();
@@ -88,63 +304,120 @@ public class Main {
         try {
             var opt = optionParser.parse(options, args);
 
+            ResultCache cache = null;
+            if (opt.hasOption("cache")) {
+                try {
+                    var cacheSize = Long.parseLong(opt.getOptionValue("cacheSize", "256"));
+                    cache = new ResultCache(Paths.get(opt.getOptionValue("cache")), cacheSize * 1024 * 1024);
+                } catch (NumberFormatException e) {
+                    error("Invalid cache size. Must be a number.");
+                } catch (IOException e) {
+                    error("Could not create cache directory " + opt.getOptionValue("cache"));
+                }
+            }
+
+            if (opt.hasOption("server")) {
+                runServer(opt.getOptionValue("server"), opt.getOptionValue("timeout", "10000"), cache);
+                return;
+            }
+
             var sequenceDiagramPath = opt.getOptionValue("sequenceDiagram");
             var classDiagramPath = opt.getOptionValue("classDiagram");
-            var outputPath = opt.getOptionValue("output", null);
+            var outputPath = opt.getOptionValue("output");
+            var input = opt.getOptionValue("input");
+            var outputDirectory = opt.getOptionValue("outputDirectory");
             var targetParticipant = opt.getOptionValue("targetParticipant");
             var outputType = opt.getOptionValue("outputType", "uml");
+            var traceFile = opt.getOptionValue("conformance");
 
-            if (!outputType.equals("uml") && !outputType.equals("image")) {
-                error("Invalid output type. Must be either 'image' or 'uml'.");
+            if (targetParticipant == null) {
+                throw new ParseException("Missing required option: p");
+            }
+
+            var single = sequenceDiagramPath != null && outputPath != null;
+            var batch = input != null && outputDirectory != null;
+            if (traceFile != null && sequenceDiagramPath == null) {
+                throw new ParseException("--conformance requires --sequenceDiagram.");
+            }
+            if (traceFile == null && single == batch) {
+                throw new ParseException("Either --sequenceDiagram and --output or --input and --outputDirectory are required.");
             }
 
-            String sequenceDiagramCode = null;
             try {
-                sequenceDiagramCode = readFile(sequenceDiagramPath);
+                TransformationPipeline.parseOutputTypes(outputType);
             } catch (IllegalStateException e) {
-                error("Could not open file " + sequenceDiagramPath);
+                error(e.getMessage());
             }
-            SequenceDiagram sequenceDiagram = null;
-            try {
-                assert sequenceDiagramCode != null;
-                sequenceDiagram = (SequenceDiagram) new SourceStringReader(sequenceDiagramCode).getBlocks().get(0).getDiagram();
-            } catch (ClassCastException e) {
-                error("PlantUML failed to parse given sequence diagram. Make sure it does not contain any syntax errors.");
+
+            var metricsFormat = opt.getOptionValue("metrics", "text");
+            if (!metricsFormat.equals("text") && !metricsFormat.equals("json")) {
+                error("Invalid metrics format. Must be either 'text' or 'json'.");
             }
+            var metrics = opt.hasOption("metrics") ? new Metrics() : Metrics.disabled();
 
-            if (classDiagramPath != null) {
-                String classDiagramCode = null;
+            var workers = Runtime.getRuntime().availableProcessors();
+            if (opt.hasOption("workers")) {
                 try {
+                    workers = Integer.parseInt(opt.getOptionValue("workers"));
+                } catch (NumberFormatException e) {
+                    workers = 0;
+                }
+                if (workers < 1) {
+                    error("Invalid number of workers. Must be a positive number.");
+                }
+            }
+
+            String classDiagramCode = null;
+            if (classDiagramPath != null) {
+                try (var phase = metrics.start("read")) {
                     classDiagramCode = readFile(classDiagramPath);
                 } catch (IllegalStateException e) {
-                    error("Could not open file " + classDiagramCode);
-                }
-                ClassDiagram classDiagram = null;
-                try {
-                    assert classDiagramCode != null;
-                    classDiagram = (ClassDiagram) new SourceStringReader(classDiagramCode).getBlocks().get(0).getDiagram();
-                } catch (ClassCastException e) {
-                    error("PlantUML failed to parse given class diagram. Make sure it does not contain any syntax errors.");
+                    error("Could not open file " + classDiagramPath);
                 }
-                var classDiagramReader = new ClassDiagramValidator(classDiagram, sequenceDiagram);
-                classDiagramReader.validate();
             }
 
-            var stateDiagramTransformer = new StateDiagramTransformer(sequenceDiagram, targetParticipant);
+            var reduction = opt.hasOption("minimize") || traceFile != null
+                    ? TransformationPipeline.Reduction.MINIMIZE
+                    : opt.hasOption("optimize")
+                    ? TransformationPipeline.Reduction.OPTIMIZE
+                    : opt.hasOption("share")
+                    ? TransformationPipeline.Reduction.SHARE
+                    : TransformationPipeline.Reduction.NONE;
+            TransformationPipeline pipeline = null;
+            try {
+                pipeline = new TransformationPipeline(targetParticipant, outputType, classDiagramCode, cache, reduction,
+                        metrics);
+            } catch (IllegalStateException e) {
+                error(e.getMessage());
+            }
 
-            if (outputType.equals("uml")) {
-                writeFile(outputPath, stateDiagramTransformer.transform().toString());
+            if (opt.hasOption("watch") && traceFile == null) {
+                if (pipeline.getOutputTypes().contains("binary")) {
+                    error("Binary state graphs cannot be written in watch mode.");
+                }
+                var watcher = single
+                        ? DiagramWatcher.forFile(pipeline, Paths.get(sequenceDiagramPath), Paths.get(outputPath))
+                        : DiagramWatcher.forBatch(pipeline, input, Paths.get(outputDirectory));
+                runWatch(watcher, single ? sequenceDiagramPath : input);
             } else {
-                var reader = new SourceStringReader(stateDiagramTransformer.transform().toString());
-                var output = new FileOutputStream(outputPath);
-                reader.outputImage(output, new FileFormatOption(FileFormat.PNG));
-                output.close();
+                var success = true;
+                if (traceFile != null) {
+                    success = runConformance(pipeline, sequenceDiagramPath, traceFile, outputPath, workers);
+                } else if (single) {
+                    runSingle(pipeline, sequenceDiagramPath, outputPath);
+                } else {
+                    success = runBatch(pipeline, input, outputDirectory, workers);
+                }
+                if (opt.hasOption("metrics")) {
+                    printMetrics(metrics, metricsFormat);
+                }
+                if (!success) {
+                    System.exit(1);
+                }
             }
         } catch (ParseException e) {
             System.out.println(e.getMessage());
             new HelpFormatter().printHelp("transformer.jar args...", options);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
     }
 }
@@ -0,0 +1,794 @@
+package de.thm.swtp;
+
+import de.thm.swtp.cache.ResultCache;
+import de.thm.swtp.classdiagram.ClassDiagramValidator;
+import de.thm.swtp.metrics.Metrics;
+import de.thm.swtp.sequencediagram.DiagramBlock;
+import de.thm.swtp.sequencediagram.FastSequenceParser;
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.statediagram.BinaryStateGraph;
+import de.thm.swtp.statediagram.CompactStateGraph;
+import de.thm.swtp.statediagram.DeterministicStateMachine;
+import de.thm.swtp.statediagram.JavaCodeGenerator;
+import de.thm.swtp.statediagram.Node;
+import de.thm.swtp.statediagram.StateDiagramTransformer;
+import de.thm.swtp.statediagram.SubgraphCache;
+import net.sourceforge.plantuml.FileFormat;
+import net.sourceforge.plantuml.FileFormatOption;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.classdiagram.ClassDiagram;
+import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Parses, validates and transforms sequence diagrams and writes the resulting state diagrams.
+ * Holds no per-diagram state, so a single pipeline can be shared by several threads.
+ */
+public class TransformationPipeline {
+
+    /**
+     * How far the generated state diagrams are reduced before they are written.
+     */
+    public enum Reduction {
+        // The state diagrams as generated.
+        NONE,
+        // Copies of identical alt, loop and opt blocks and branches written as references to the first one.
+        SHARE,
+        // Redundant empty transitions and wrapper states removed, the hierarchy is kept.
+        OPTIMIZE,
+        // The minimal deterministic state machines, without hierarchy.
+        MINIMIZE
+    }
+
+    private final List<String> targetParticipants;
+    // Whether one state diagram is written per participant, i.e. several or all participants were requested.
+    private final boolean perParticipant;
+    // The formats every state diagram is written in, without duplicates. Several formats are written from a
+    // single transformation.
+    private final List<String> outputTypes;
+    private final String classDiagramCode;
+    // Parsed on first use, so results served from the cache do not need PlantUML to parse the class diagram.
+    private ClassDiagram classDiagram;
+    private final ResultCache cache;
+    private final Reduction reduction;
+    private final Metrics metrics;
+
+    /**
+     * Creates a new pipeline.
+     * @param targetParticipant The participant to generate the state diagrams for. May also be a comma-separated list
+     *                          of participants or {@value StateDiagramTransformer#ALL_PARTICIPANTS} for all
+     *                          participants, in which case one state diagram per participant is written.
+     * @param outputType The format in which the state diagrams are written. Either 'uml', 'image' (or 'png'), 'svg',
+     *                   'table', 'java' or 'binary', or a comma-separated list of several formats.
+     * @param classDiagramCode The class diagram to ensure coherence with or null if no validation should be done.
+     */
+    public TransformationPipeline(String targetParticipant, String outputType, String classDiagramCode) {
+        this(targetParticipant, outputType, classDiagramCode, null);
+    }
+
+    /**
+     * Creates a new pipeline which serves unchanged inputs from a cache.
+     * @param targetParticipant The participant to generate the state diagrams for. May also be a comma-separated list
+     *                          of participants or {@value StateDiagramTransformer#ALL_PARTICIPANTS} for all
+     *                          participants, in which case one state diagram per participant is written.
+     * @param outputType The format in which the state diagrams are written. Either 'uml', 'image' (or 'png'), 'svg',
+     *                   'table', 'java' or 'binary', or a comma-separated list of several formats.
+     * @param classDiagramCode The class diagram to ensure coherence with or null if no validation should be done.
+     * @param cache The cache for validation verdicts and generated state diagrams or null if nothing should be cached.
+     */
+    public TransformationPipeline(String targetParticipant, String outputType, String classDiagramCode, ResultCache cache) {
+        this(targetParticipant, outputType, classDiagramCode, cache, Reduction.NONE);
+    }
+
+    /**
+     * Creates a new pipeline which serves unchanged inputs from a cache and optionally reduces the generated
+     * state diagrams.
+     * @param targetParticipant The participant to generate the state diagrams for. May also be a comma-separated list
+     *                          of participants or {@value StateDiagramTransformer#ALL_PARTICIPANTS} for all
+     *                          participants, in which case one state diagram per participant is written.
+     * @param outputType The format in which the state diagrams are written. Either 'uml', 'image' (or 'png'), 'svg',
+     *                   'table', 'java' or 'binary', or a comma-separated list of several formats. Tables and Java
+     *                   classes are always written for the minimal state machines, other formats can only be
+     *                   combined with them when minimizing.
+     * @param classDiagramCode The class diagram to ensure coherence with or null if no validation should be done.
+     * @param cache The cache for validation verdicts and generated state diagrams or null if nothing should be cached.
+     * @param reduction How far the state diagrams are reduced before they are written.
+     */
+    public TransformationPipeline(String targetParticipant, String outputType, String classDiagramCode, ResultCache cache,
+                                  Reduction reduction) {
+        this(targetParticipant, outputType, classDiagramCode, cache, reduction, null);
+    }
+
+    /**
+     * Creates a new pipeline which serves unchanged inputs from a cache, optionally reduces the generated state
+     * diagrams and records the time and memory of every phase.
+     * @param targetParticipant The participant to generate the state diagrams for. May also be a comma-separated list
+     *                          of participants or {@value StateDiagramTransformer#ALL_PARTICIPANTS} for all
+     *                          participants, in which case one state diagram per participant is written.
+     * @param outputType The format in which the state diagrams are written. Either 'uml', 'image' (or 'png'), 'svg',
+     *                   'table', 'java' or 'binary', or a comma-separated list of several formats. Tables and Java
+     *                   classes are always written for the minimal state machines, other formats can only be
+     *                   combined with them when minimizing.
+     * @param classDiagramCode The class diagram to ensure coherence with or null if no validation should be done.
+     * @param cache The cache for validation verdicts and generated state diagrams or null if nothing should be cached.
+     * @param reduction How far the state diagrams are reduced before they are written.
+     * @param metrics The metrics to record the phases and state diagrams in or null if only Flight Recorder events
+     *                should be emitted.
+     * @throws IllegalStateException If an output type is invalid, binary state graphs are combined with shared
+     *                               fragments or tables and Java classes with another reduction or, unless
+     *                               minimizing, with other output types.
+     */
+    public TransformationPipeline(String targetParticipant, String outputType, String classDiagramCode, ResultCache cache,
+                                  Reduction reduction, Metrics metrics) {
+        this.targetParticipants = Arrays.stream(targetParticipant.split(","))
+                .map(String::trim)
+                .filter(p -> !p.isEmpty())
+                .collect(Collectors.toList());
+        this.perParticipant = targetParticipants.size() > 1
+                || targetParticipants.contains(StateDiagramTransformer.ALL_PARTICIPANTS);
+        this.outputTypes = parseOutputTypes(outputType);
+        this.classDiagramCode = classDiagramCode;
+        this.cache = cache;
+        // Tables and Java classes alone imply minimizing, other output types are never minimized implicitly.
+        var machineOutputs = outputTypes.contains("table") || outputTypes.contains("java");
+        if (machineOutputs && (reduction == Reduction.SHARE || reduction == Reduction.OPTIMIZE)) {
+            throw new IllegalStateException("Tables and Java classes are written for the minimal state machines and "
+                    + "cannot be combined with shared fragments or optimization.");
+        }
+        if (machineOutputs && reduction != Reduction.MINIMIZE
+                && !List.of("table", "java").containsAll(outputTypes)) {
+            throw new IllegalStateException("Tables and Java classes are written for the minimal state machines and "
+                    + "can only be combined with other output types when minimizing.");
+        }
+        this.reduction = machineOutputs ? Reduction.MINIMIZE : reduction;
+        if (this.reduction == Reduction.SHARE && outputTypes.contains("binary")) {
+            throw new IllegalStateException("Binary state graphs cannot be written with shared fragments.");
+        }
+        this.metrics = metrics != null ? metrics : Metrics.disabled();
+    }
+
+    /**
+     * Parses a comma-separated list of output types. 'image' is the same as 'png'.
+     * @param outputType The output types.
+     * @return The output types without duplicates, in the given order.
+     * @throws IllegalStateException If an output type is invalid or none is given.
+     */
+    public static List<String> parseOutputTypes(String outputType) {
+        var outputTypes = new ArrayList<String>();
+        for (var type : outputType.split(",")) {
+            type = type.trim();
+            if (type.equals("image")) {
+                type = "png";
+            }
+            if (!List.of("uml", "png", "svg", "table", "java", "binary").contains(type)) {
+                throw new IllegalStateException("Invalid output type '" + type + "'. Must be 'uml', 'image', 'png', "
+                        + "'svg', 'table', 'java' or 'binary', or a comma-separated list of them.");
+            }
+            if (!outputTypes.contains(type)) {
+                outputTypes.add(type);
+            }
+        }
+        return outputTypes;
+    }
+
+    /**
+     * Returns whether the given output type is an image rendered by PlantUML from the code of a state diagram.
+     * @param outputType The output type.
+     * @return Whether the output type is 'png' or 'svg'.
+     */
+    private static boolean isImage(String outputType) {
+        return outputType.equals("png") || outputType.equals("svg");
+    }
+
+    /**
+     * Parses the given PlantUML code into a sequence diagram. Diagrams within the subset supported by the
+     * {@link FastSequenceParser} are parsed without PlantUML.
+     * @param code The PlantUML code.
+     * @return The sequence diagram.
+     * @throws IllegalStateException If the code does not describe a valid sequence diagram.
+     */
+    public static SequenceDiagramModel parseSequenceDiagram(String code) {
+        var sequenceDiagram = FastSequenceParser.parse(code);
+        if (sequenceDiagram != null) {
+            return sequenceDiagram;
+        }
+
+        try {
+            return SequenceDiagramModel.of((SequenceDiagram) new SourceStringReader(code).getBlocks().get(0).getDiagram());
+        } catch (ClassCastException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("PlantUML failed to parse given sequence diagram. Make sure it does not contain any syntax errors.");
+        }
+    }
+
+    /**
+     * Parses the given PlantUML code into a class diagram.
+     * @param code The PlantUML code.
+     * @return The class diagram.
+     * @throws IllegalStateException If the code does not describe a valid class diagram.
+     */
+    public static ClassDiagram parseClassDiagram(String code) {
+        try {
+            return (ClassDiagram) new SourceStringReader(code).getBlocks().get(0).getDiagram();
+        } catch (ClassCastException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("PlantUML failed to parse given class diagram. Make sure it does not contain any syntax errors.");
+        }
+    }
+
+    /**
+     * Returns the output types of this pipeline.
+     * @return The output types, each of them 'uml', 'png', 'svg', 'table', 'java' or 'binary'.
+     */
+    public List<String> getOutputTypes() {
+        return outputTypes;
+    }
+
+    /**
+     * Returns the metrics the phases of this pipeline are recorded in.
+     * @return The metrics.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the class diagram to ensure coherence with, parsing it on first use.
+     * @return The class diagram or null if no validation should be done.
+     * @throws IllegalStateException If the code does not describe a valid class diagram.
+     */
+    private synchronized ClassDiagram getClassDiagram() {
+        if (classDiagram == null && classDiagramCode != null) {
+            try (var phase = metrics.start("parseClassDiagram")) {
+                classDiagram = parseClassDiagram(classDiagramCode);
+            }
+        }
+        return classDiagram;
+    }
+
+    /**
+     * Returns the file extension of the files written by this pipeline in its first output type.
+     * @return The file extension including the leading dot.
+     */
+    public String getFileExtension() {
+        return fileExtensionOf(outputTypes.get(0));
+    }
+
+    /**
+     * Returns the file extension of the files written in the given output type.
+     * @param outputType The output type.
+     * @return The file extension including the leading dot.
+     */
+    public static String fileExtensionOf(String outputType) {
+        return switch (outputType) {
+            case "png" -> ".png";
+            case "svg" -> ".svg";
+            case "table" -> ".tsv";
+            case "java" -> ".java";
+            case "binary" -> ".stg";
+            default -> ".puml";
+        };
+    }
+
+    /**
+     * Returns the file a state diagram is written to in the given output type. If this pipeline writes several
+     * output types, the file extension is replaced by the one of the output type.
+     * @param output The output file of the state diagram.
+     * @param outputType The output type.
+     * @return The output file itself or, if several output types are written, the file of the output type.
+     */
+    public Path formatPathOf(Path output, String outputType) {
+        if (outputTypes.size() == 1) {
+            return output;
+        }
+
+        var name = output.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        return output.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + fileExtensionOf(outputType));
+    }
+
+    /**
+     * Returns the file the state diagram of the given participant is written to if one state diagram per participant
+     * is written. The name of the participant is inserted before the file extension.
+     * @param output The output file given by the user.
+     * @param participant The name of the participant.
+     * @return The output file of the participant.
+     */
+    public static Path participantPathOf(Path output, String participant) {
+        return insertBeforeExtension(output, participant);
+    }
+
+    /**
+     * Returns the file the state diagrams of a diagram of a file are written to. If the file contains several
+     * diagrams, the name of the diagram is inserted before the file extension.
+     * @param output The output file given by the user.
+     * @param blocks All diagrams of the file.
+     * @param block The diagram.
+     * @return The output file of the diagram.
+     */
+    public static Path blockPathOf(Path output, List<DiagramBlock> blocks, DiagramBlock block) {
+        return blocks.size() > 1 ? insertBeforeExtension(output, block.name()) : output;
+    }
+
+    /**
+     * Inserts a suffix separated by a dash before the file extension of a file.
+     * @param output The file.
+     * @param suffix The suffix.
+     * @return The file with the suffix.
+     */
+    private static Path insertBeforeExtension(Path output, String suffix) {
+        var name = output.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        var newName = dot > 0
+                ? name.substring(0, dot) + "-" + suffix + name.substring(dot)
+                : name + "-" + suffix;
+        return output.resolveSibling(newName);
+    }
+
+    /**
+     * Returns the file the state diagram of the given participant is written to.
+     * @param output The output file given by the user.
+     * @param participant The name of the participant.
+     * @return The output file itself or, if one state diagram per participant is written, the output file of the
+     *         participant.
+     */
+    public Path outputPathOf(Path output, String participant) {
+        return perParticipant ? participantPathOf(output, participant) : output;
+    }
+
+    /**
+     * Parses and validates the given sequence diagram and transforms it into a state diagram for every target
+     * participant.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagram.
+     * @return The generated state diagrams by participant name.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    public Map<String, ? extends Node> transform(String sequenceDiagramCode) {
+        return transform(sequenceDiagramCode, null);
+    }
+
+    /**
+     * Parses and validates the given sequence diagram and transforms it into a state diagram for every target
+     * participant, reusing the states of unchanged top-level blocks of the previous transformation.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagram.
+     * @param subgraphs The subgraphs of the previous transformation of this sequence diagram or null.
+     * @return The generated state diagrams by participant name.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    public Map<String, ? extends Node> transform(String sequenceDiagramCode, SubgraphCache subgraphs) {
+        SequenceDiagramModel sequenceDiagram;
+        try (var phase = metrics.start("parse")) {
+            sequenceDiagram = parseSequenceDiagram(sequenceDiagramCode);
+        }
+
+        var classDiagram = getClassDiagram();
+        if (classDiagram != null) {
+            try (var phase = metrics.start("validate")) {
+                new ClassDiagramValidator(classDiagram, sequenceDiagram).validate();
+            }
+        }
+
+        Map<String, ? extends Node> stateDiagrams;
+        try (var phase = metrics.start("transform")) {
+            // Large diagrams are split into blocks transformed in parallel if there is more than one core, which
+            // yields the same diagrams.
+            var transformer = new StateDiagramTransformer(sequenceDiagram, targetParticipants,
+                    StateDiagramTransformer.Options.DEFAULT
+                            .withSubgraphs(subgraphs)
+                            .withOptimize(reduction == Reduction.OPTIMIZE)
+                            .withParallel(Runtime.getRuntime().availableProcessors() > 1));
+            // Without subgraphs to share, the compact representation renders the same using far less memory.
+            // Optimized diagrams never share subgraphs.
+            if (reduction == Reduction.MINIMIZE) {
+                stateDiagrams = transformer.transformAllMinimal();
+            } else if (reduction == Reduction.SHARE) {
+                stateDiagrams = transformer.transformAllShared();
+            } else if (subgraphs == null || reduction == Reduction.OPTIMIZE) {
+                stateDiagrams = transformer.transformAllCompact();
+            } else {
+                stateDiagrams = transformer.transformAll();
+            }
+        }
+        for (var e : stateDiagrams.entrySet()) {
+            metrics.recordDiagram(e.getKey(), e.getValue());
+        }
+        return stateDiagrams;
+    }
+
+    /**
+     * Opens the stream a state diagram is written to in an output type.
+     */
+    @FunctionalInterface
+    private interface OutputFactory {
+
+        /**
+         * Opens the stream for the given output type.
+         * @param outputType The output type.
+         * @return The stream, which is closed once the state diagram has been written.
+         * @throws IOException If the stream could not be opened.
+         */
+        OutputStream open(String outputType) throws IOException;
+    }
+
+    /**
+     * Writes the given state diagram to a stream in the first output type of this pipeline. The stream is not closed.
+     * @param diagram The state diagram.
+     * @param out The stream to write to.
+     * @throws IOException If writing to the stream fails.
+     */
+    public void write(Node diagram, OutputStream out) throws IOException {
+        write(diagram, outputTypes.get(0), out);
+    }
+
+    /**
+     * Writes the given state diagram to a stream in the given output type. The stream is not closed.
+     * @param diagram The state diagram.
+     * @param outputType The output type.
+     * @param out The stream to write to.
+     * @throws IOException If writing to the stream fails.
+     */
+    private void write(Node diagram, String outputType, OutputStream out) throws IOException {
+        if (isImage(outputType)) {
+            write(toSource(diagram, outputType), outputType, out);
+            return;
+        }
+        if (outputType.equals("binary")) {
+            writeBinary(diagram, out);
+            return;
+        }
+
+        var writer = new BufferedWriter(new OutputStreamWriter(metrics.countOutput(out), StandardCharsets.UTF_8));
+        render(diagram, outputType, writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes the given state diagram to a stream as a {@link BinaryStateGraph}. The stream is not closed.
+     * @param diagram The state diagram, either a compact state diagram or a minimal state machine.
+     * @param out The stream to write to.
+     * @throws IOException If writing to the stream fails.
+     * @throws IllegalStateException If the state diagram shares states between several blocks.
+     */
+    private void writeBinary(Node diagram, OutputStream out) throws IOException {
+        try (var phase = metrics.start("render")) {
+            var channel = Channels.newChannel(metrics.countOutput(out));
+            if (diagram instanceof CompactStateGraph graph) {
+                BinaryStateGraph.write(graph, channel);
+            } else if (diagram instanceof DeterministicStateMachine machine) {
+                BinaryStateGraph.write(machine, channel);
+            } else {
+                throw new IllegalStateException("Binary state graphs can only be written from compact state "
+                        + "diagrams and state machines.");
+            }
+        }
+    }
+
+    /**
+     * Writes the given state diagram in every output type of this pipeline. Text is rendered one output type after
+     * the other. The PlantUML code is rendered once for all images, which are encoded concurrently in the fork/join
+     * pool of the calling thread.
+     * @param diagram The state diagram.
+     * @param outputTypes The output types to write.
+     * @param outputs Opens the stream of every output type.
+     * @throws IOException If writing to a stream fails.
+     */
+    private void write(Node diagram, List<String> outputTypes, OutputFactory outputs) throws IOException {
+        var images = new ArrayList<String>();
+        for (var outputType : outputTypes) {
+            if (isImage(outputType)) {
+                images.add(outputType);
+                continue;
+            }
+            try (var out = outputs.open(outputType)) {
+                write(diagram, outputType, out);
+            }
+        }
+        if (images.isEmpty()) {
+            return;
+        }
+
+        var stateDiagramCode = toSource(diagram, "uml");
+        if (images.size() == 1) {
+            try (var out = outputs.open(images.get(0))) {
+                write(stateDiagramCode, images.get(0), out);
+            }
+            return;
+        }
+        try {
+            images.parallelStream().forEach(outputType -> {
+                try (var out = outputs.open(outputType)) {
+                    write(stateDiagramCode, outputType, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the text of a state diagram in the given output type to a sink: its PlantUML code or, for tables and
+     * Java, the transition table or the class of the state machine.
+     * @param diagram The state diagram.
+     * @param outputType The output type.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     * @throws IllegalStateException If the output type is 'binary'.
+     */
+    private void render(Node diagram, String outputType, Appendable out) throws IOException {
+        if (outputType.equals("binary")) {
+            throw new IllegalStateException("Binary state graphs have no text form.");
+        }
+        try (var phase = metrics.start("render")) {
+            if (outputType.equals("table")) {
+                ((DeterministicStateMachine) diagram).renderTable(out);
+            } else if (outputType.equals("java")) {
+                new JavaCodeGenerator((DeterministicStateMachine) diagram).render(out);
+            } else {
+                diagram.render(out);
+            }
+        }
+    }
+
+    /**
+     * Returns the text a state diagram is written from in the first output type of this pipeline, which is its
+     * PlantUML code or, for tables and Java, the transition table or the class of the state machine.
+     * @param diagram The state diagram.
+     * @return The text, which can be passed to {@link #write(String, OutputStream)}.
+     */
+    public String toSource(Node diagram) {
+        return toSource(diagram, outputTypes.get(0));
+    }
+
+    /**
+     * Returns the text a state diagram is written from in the given output type, which is its PlantUML code or, for
+     * tables and Java, the transition table or the class of the state machine.
+     * @param diagram The state diagram.
+     * @param outputType The output type.
+     * @return The text, which can be passed to {@link #write(String, String, OutputStream)}.
+     * @throws IllegalStateException If the output type is 'binary', which has no text form.
+     */
+    public String toSource(Node diagram, String outputType) {
+        var s = new StringBuilder();
+        try {
+            render(diagram, outputType, s);
+        } catch (IOException e) {
+            // StringBuilder never throws.
+            throw new IllegalStateException(e);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Writes the given PlantUML code of a state diagram (or its transition table for tables) to a stream in the
+     * first output type of this pipeline. The stream is not closed.
+     * @param stateDiagramCode The PlantUML code of the state diagram or its transition table.
+     * @param out The stream to write to.
+     * @throws IOException If writing to the stream fails.
+     */
+    public void write(String stateDiagramCode, OutputStream out) throws IOException {
+        write(stateDiagramCode, outputTypes.get(0), out);
+    }
+
+    /**
+     * Writes the text of a state diagram returned by {@link #toSource(Node, String)} to a stream in the given output
+     * type. Images are rendered from the PlantUML code. The stream is not closed.
+     * @param stateDiagramCode The text of the state diagram.
+     * @param outputType The output type.
+     * @param out The stream to write to.
+     * @throws IOException If writing to the stream fails.
+     */
+    public void write(String stateDiagramCode, String outputType, OutputStream out) throws IOException {
+        if (!isImage(outputType)) {
+            metrics.countOutput(out).write(stateDiagramCode.getBytes(StandardCharsets.UTF_8));
+        } else {
+            try (var phase = metrics.start("image")) {
+                var reader = new SourceStringReader(stateDiagramCode);
+                var format = outputType.equals("svg") ? FileFormat.SVG : FileFormat.PNG;
+                reader.outputImage(metrics.countOutput(out), new FileFormatOption(format));
+            }
+        }
+    }
+
+    /**
+     * Writes the given state diagram to a file in the first output type of this pipeline.
+     * @param diagram The state diagram.
+     * @param output The file to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(Node diagram, Path output) throws IOException {
+        try (var out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            write(diagram, out);
+        }
+    }
+
+    /**
+     * Writes the given state diagram to files in every output type of this pipeline, see
+     * {@link #formatPathOf(Path, String)}.
+     * @param diagram The state diagram.
+     * @param output The file to write to.
+     * @throws IOException If a file could not be written.
+     */
+    public void writeAll(Node diagram, Path output) throws IOException {
+        write(diagram, outputTypes, t -> new BufferedOutputStream(Files.newOutputStream(formatPathOf(output, t))));
+    }
+
+    /**
+     * Transforms the given sequence diagram and writes the resulting state diagrams to memory in the first output
+     * type of this pipeline, serving them from the cache if the same inputs have been transformed before.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagram.
+     * @return The generated state diagrams by participant name.
+     * @throws IOException If the cache could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    public Map<String, byte[]> render(String sequenceDiagramCode) throws IOException {
+        return renderAll(sequenceDiagramCode).get(outputTypes.get(0));
+    }
+
+    /**
+     * Transforms the given sequence diagram and writes the resulting state diagrams to memory in every output type
+     * of this pipeline. Every output type is cached on its own; the sequence diagram is transformed once for all
+     * output types not served from the cache.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagram.
+     * @return The generated state diagrams by participant name, by output type in the order of the output types.
+     * @throws IOException If the cache could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    public Map<String, Map<String, byte[]>> renderAll(String sequenceDiagramCode) throws IOException {
+        if (cache == null) {
+            return renderUncached(sequenceDiagramCode, outputTypes);
+        }
+
+        var keys = new LinkedHashMap<String, String>();
+        var outputs = new HashMap<String, Map<String, byte[]>>();
+        var missing = new ArrayList<String>();
+        for (var outputType : outputTypes) {
+            var key = ResultCache.key(sequenceDiagramCode, classDiagramCode, String.join(",", targetParticipants),
+                    outputType, reduction.name());
+            keys.put(outputType, key);
+            var entry = cache.get(key);
+            if (entry == null) {
+                missing.add(outputType);
+            } else if (!entry.isSuccess()) {
+                throw new IllegalStateException(entry.error());
+            } else {
+                outputs.put(outputType, entry.outputs());
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            try {
+                outputs.putAll(renderUncached(sequenceDiagramCode, missing));
+            } catch (CancellationException e) {
+                // An interrupted transformation says nothing about the inputs, so it may succeed next time.
+                throw e;
+            } catch (IllegalStateException e) {
+                // Failed validations and transformations are cached as well, they fail again for the same inputs.
+                for (var outputType : missing) {
+                    cache.put(keys.get(outputType), ResultCache.Entry.failure(e.getMessage()));
+                }
+                throw e;
+            }
+            for (var outputType : missing) {
+                cache.put(keys.get(outputType), ResultCache.Entry.success(outputs.get(outputType)));
+            }
+        }
+
+        var ordered = new LinkedHashMap<String, Map<String, byte[]>>();
+        for (var outputType : outputTypes) {
+            ordered.put(outputType, outputs.get(outputType));
+        }
+        return ordered;
+    }
+
+    /**
+     * Transforms the given sequence diagram and writes the resulting state diagrams to memory.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagram.
+     * @param outputTypes The output types to write.
+     * @return The generated state diagrams by participant name, by output type in the given order.
+     * @throws IOException If a state diagram could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    private Map<String, Map<String, byte[]>> renderUncached(String sequenceDiagramCode, List<String> outputTypes)
+            throws IOException {
+        var outputs = new LinkedHashMap<String, Map<String, byte[]>>();
+        for (var outputType : outputTypes) {
+            outputs.put(outputType, new LinkedHashMap<>());
+        }
+        for (var e : transform(sequenceDiagramCode).entrySet()) {
+            var streams = new ConcurrentHashMap<String, ByteArrayOutputStream>();
+            write(e.getValue(), outputTypes, t -> streams.computeIfAbsent(t, x -> new ByteArrayOutputStream()));
+            for (var outputType : outputTypes) {
+                outputs.get(outputType).put(e.getKey(), streams.get(outputType).toByteArray());
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Transforms all sequence diagrams of the given code and writes the resulting state diagrams to files.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagrams.
+     * @param output The file to write to. If the code contains several diagrams, the name of the diagram is inserted
+     *               before the file extension; if one state diagram per participant is written, the name of the
+     *               participant is inserted as well.
+     * @throws IOException If a file could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    public void run(String sequenceDiagramCode, Path output) throws IOException {
+        run(DiagramBlock.split(sequenceDiagramCode), output);
+    }
+
+    /**
+     * Transforms the sequence diagrams of a file and writes the resulting state diagrams to files. Several diagrams
+     * are transformed concurrently, in the fork/join pool of the calling thread.
+     * @param blocks The diagrams of the file.
+     * @param output The file to write to. If there are several diagrams, the name of the diagram is inserted before
+     *               the file extension; if one state diagram per participant is written, the name of the
+     *               participant is inserted as well.
+     * @throws IOException If a file could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation of a diagram fails.
+     */
+    public void run(List<DiagramBlock> blocks, Path output) throws IOException {
+        if (blocks.size() == 1) {
+            runBlock(blocks.get(0).code(), output);
+            return;
+        }
+
+        try {
+            blocks.parallelStream().forEach(b -> {
+                try {
+                    runBlock(b.code(), blockPathOf(output, blocks, b));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (IllegalStateException e) {
+                    throw new IllegalStateException("Diagram " + b.name() + ": " + e.getMessage(), e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Transforms a single sequence diagram and writes the resulting state diagrams to files.
+     * @param sequenceDiagramCode The PlantUML code of the sequence diagram.
+     * @param output The file to write to. If one state diagram per participant is written, the name of the
+     *               participant is inserted before the file extension.
+     * @throws IOException If a file could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    private void runBlock(String sequenceDiagramCode, Path output) throws IOException {
+        if (cache != null) {
+            for (var outputs : renderAll(sequenceDiagramCode).entrySet()) {
+                for (var e : outputs.getValue().entrySet()) {
+                    Files.write(formatPathOf(outputPathOf(output, e.getKey()), outputs.getKey()), e.getValue());
+                }
+            }
+            return;
+        }
+
+        // Without a cache, the state diagrams are streamed into the files directly.
+        for (var e : transform(sequenceDiagramCode).entrySet()) {
+            writeAll(e.getValue(), outputPathOf(output, e.getKey()));
+        }
+    }
+}
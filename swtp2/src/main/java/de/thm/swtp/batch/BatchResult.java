@@ -0,0 +1,20 @@
+package de.thm.swtp.batch;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of transforming a single file in batch mode.
+ * @param input The sequence diagram that was transformed.
+ * @param output The file the state diagram was written to.
+ * @param error The reason the transformation failed or null if it succeeded.
+ */
+public record BatchResult(Path input, Path output, String error) {
+
+    /**
+     * Returns whether the transformation succeeded.
+     * @return Whether the transformation succeeded.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
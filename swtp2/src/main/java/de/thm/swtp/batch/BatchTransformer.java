@@ -0,0 +1,213 @@
+package de.thm.swtp.batch;
+
+import de.thm.swtp.TransformationPipeline;
+import de.thm.swtp.sequencediagram.DiagramBlock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Transforms many sequence diagrams in a single JVM. Files are read ahead on the calling thread while a
+ * work-stealing pool transforms the files read so far. The number of files that have been read but not yet
+ * transformed is bounded, so memory use does not depend on the number of inputs.
+ */
+public class BatchTransformer {
+
+    private static final Pattern GLOB_CHARACTERS = Pattern.compile("[*?\\[{]");
+
+    private final TransformationPipeline pipeline;
+    private final Path baseDirectory;
+    private final Path outputDirectory;
+    private final int workers;
+
+    /**
+     * Creates a new batch transformer.
+     * @param pipeline The pipeline used to transform every single file.
+     * @param baseDirectory The directory the inputs are located in. Their paths relative to it are kept in the output directory.
+     * @param outputDirectory The directory to write the state diagrams to.
+     * @param workers The number of files transformed in parallel.
+     */
+    public BatchTransformer(TransformationPipeline pipeline, Path baseDirectory, Path outputDirectory, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        this.pipeline = pipeline;
+        this.baseDirectory = baseDirectory;
+        this.outputDirectory = outputDirectory;
+        this.workers = workers;
+    }
+
+    /**
+     * Returns the index at which the glob part of a directory or glob starts, which is the beginning of the first
+     * path element containing glob characters.
+     * @param directoryOrGlob A directory or a glob like diagrams/**&#47;*.puml.
+     * @return The index or -1 if the argument contains no glob characters.
+     */
+    private static int globStart(String directoryOrGlob) {
+        var matcher = GLOB_CHARACTERS.matcher(directoryOrGlob);
+        if (!matcher.find()) {
+            return -1;
+        }
+        var separator = Math.max(directoryOrGlob.lastIndexOf('/', matcher.start()),
+                directoryOrGlob.lastIndexOf(File.separatorChar, matcher.start()));
+        return separator + 1;
+    }
+
+    /**
+     * Returns the directory part of a directory or glob, i.e. everything before the first path element
+     * containing glob characters.
+     * @param directoryOrGlob A directory or a glob like diagrams/**&#47;*.puml.
+     * @return The directory all matches of the glob are located in.
+     */
+    public static Path baseDirectoryOf(String directoryOrGlob) {
+        var start = globStart(directoryOrGlob);
+        if (start < 0) {
+            return Paths.get(directoryOrGlob);
+        }
+        return start == 0 ? Paths.get(".") : Paths.get(directoryOrGlob.substring(0, start));
+    }
+
+    /**
+     * Returns a matcher for the sequence diagrams given by a directory (all .puml files inside it) or a glob.
+     * @param directoryOrGlob A directory or a glob like diagrams/**&#47;*.puml.
+     * @return A matcher for paths relative to the {@link #baseDirectoryOf(String) base directory}.
+     */
+    public static PathMatcher inputMatcherOf(String directoryOrGlob) {
+        var start = globStart(directoryOrGlob);
+        var glob = start < 0 ? "**.puml" : directoryOrGlob.substring(start);
+        return FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    }
+
+    /**
+     * Collects the sequence diagrams given by a file, a directory (all .puml files inside it) or a glob.
+     * @param directoryOrGlob A file, a directory or a glob like diagrams/**&#47;*.puml.
+     * @return The matching files in a stable order.
+     * @throws IOException If the directory could not be read.
+     */
+    public static List<Path> findInputs(String directoryOrGlob) throws IOException {
+        var base = baseDirectoryOf(directoryOrGlob);
+        if (Files.isRegularFile(base)) {
+            return List.of(base);
+        }
+
+        var matcher = inputMatcherOf(directoryOrGlob);
+
+        try (Stream<Path> files = Files.walk(base)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(f -> matcher.matches(base.relativize(f)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Returns the file the state diagram for the given input is written to.
+     * @param input The sequence diagram.
+     * @return The output file.
+     */
+    public Path outputPathOf(Path input) {
+        var relative = input.startsWith(baseDirectory) && !input.equals(baseDirectory)
+                ? baseDirectory.relativize(input)
+                : input.getFileName();
+        var name = relative.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return outputDirectory.resolve(relative).resolveSibling(name + pipeline.getFileExtension());
+    }
+
+    /**
+     * Transforms a single file that has already been read. All diagrams of the file are transformed concurrently.
+     * @param input The sequence diagram.
+     * @param blocks The diagrams of the file.
+     * @return The outcome of the transformation.
+     */
+    private BatchResult transform(Path input, List<DiagramBlock> blocks) {
+        var output = outputPathOf(input);
+        try {
+            Files.createDirectories(output.getParent());
+            pipeline.run(blocks, output);
+            return new BatchResult(input, output, null);
+        } catch (IOException e) {
+            return new BatchResult(input, output, "Could not save file " + output);
+        } catch (RuntimeException e) {
+            return new BatchResult(input, output, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /**
+     * Transforms all given sequence diagrams. Failures are recorded per file and do not stop the batch.
+     * @param inputs The sequence diagrams to transform.
+     * @return The outcome for every input, in the order of the inputs.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the workers.
+     */
+    public List<BatchResult> run(List<Path> inputs) throws InterruptedException {
+        var results = new BatchResult[inputs.size()];
+        // Files that have been read but not transformed yet. Bounds the memory used for prefetched content.
+        var prefetched = new Semaphore(2 * workers);
+        var pool = new ForkJoinPool(workers);
+
+        try {
+            for (var i = 0; i < inputs.size(); i++) {
+                var index = i;
+                var input = inputs.get(i);
+
+                prefetched.acquire();
+                List<DiagramBlock> blocks;
+                try (var phase = pipeline.getMetrics().start("read")) {
+                    blocks = DiagramBlock.read(input);
+                } catch (IOException e) {
+                    prefetched.release();
+                    results[index] = new BatchResult(input, outputPathOf(input), "Could not open file " + input);
+                    continue;
+                }
+
+                pool.execute(() -> {
+                    try {
+                        results[index] = transform(input, blocks);
+                    } catch (Throwable e) {
+                        // Errors like deep recursion only fail their file, the summary still covers every input.
+                        results[index] = new BatchResult(input, outputPathOf(input), e.toString());
+                    } finally {
+                        prefetched.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        return List.of(results);
+    }
+
+    /**
+     * Prints one line per file and the number of succeeded and failed transformations.
+     * @param results The outcome of a batch.
+     */
+    public static void printSummary(List<BatchResult> results) {
+        var failed = 0;
+        for (var r : results) {
+            if (r.isSuccess()) {
+                System.out.printf("OK    %s -> %s%n", r.input(), r.output());
+            } else {
+                failed++;
+                System.out.printf("FAIL  %s: %s%n", r.input(), r.error());
+            }
+        }
+        System.out.printf("%d succeeded, %d failed%n", results.size() - failed, failed);
+    }
+}
@@ -0,0 +1,379 @@
+package de.thm.swtp.cache;
+
+import de.thm.swtp.Main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed on-disk cache for the results of transformations. Entries are keyed by a hash of everything
+ * the result depends on and hold either the generated state diagrams or the reason the transformation failed.
+ * <p>
+ * The cache directory may be shared by several processes: entries are written to a temporary file and atomically
+ * moved into place, and the cache is evicted (least recently used first) while holding a file lock.
+ */
+public class ResultCache {
+
+    // Increased whenever the format of the entries changes.
+    private static final int FORMAT_VERSION = 1;
+    // Resource next to this class with a hash of the compiled classes and libraries, written by the build.
+    private static final String BUILD_HASH_RESOURCE = "build-hash";
+    private static final String TOOL_VERSION = computeToolVersion();
+    private static final String ENTRY_SUFFIX = ".entry";
+    // Evicting down to a fraction of the maximum size avoids evicting on every single write once the cache is full.
+    private static final double EVICTION_TARGET = 0.9;
+    // Guards the lock file against threads of the same JVM, which file locks do not cover.
+    private static final Object EVICTION_LOCK = new Object();
+
+    private final Path directory;
+    private final long maxBytes;
+    // Estimated size of the cache. Other processes' writes are only noticed on the next eviction scan.
+    private final AtomicLong estimatedBytes = new AtomicLong(-1);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The cached result of a transformation.
+     * @param outputs The generated state diagrams by participant name or null if the transformation failed.
+     * @param error The reason the transformation failed or null if it succeeded.
+     */
+    public record Entry(Map<String, byte[]> outputs, String error) {
+
+        /**
+         * Creates the entry of a successful transformation.
+         * @param outputs The generated state diagrams by participant name.
+         * @return The entry.
+         */
+        public static Entry success(Map<String, byte[]> outputs) {
+            return new Entry(outputs, null);
+        }
+
+        /**
+         * Creates the entry of a failed transformation.
+         * @param error The reason the transformation failed.
+         * @return The entry.
+         */
+        public static Entry failure(String error) {
+            return new Entry(null, error);
+        }
+
+        /**
+         * Returns whether the transformation succeeded.
+         * @return Whether the transformation succeeded.
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * An entry file found while evicting.
+     * @param path The file.
+     * @param lastModified The time the entry was last written or read.
+     * @param size The size of the file.
+     */
+    private record CachedFile(Path path, long lastModified, long size) {
+    }
+
+    /**
+     * Creates a new cache in the given directory.
+     * @param directory The cache directory. Created if it does not exist.
+     * @param maxBytes The maximum size of the cache in bytes.
+     * @throws IOException If the directory could not be created.
+     */
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the version of this tool, which is part of every key so a new version does not serve stale results.
+     * Besides the release, it contains a hash of the compiled classes and libraries, so every change of the code
+     * changes the keys.
+     * @return The version.
+     */
+    public static String toolVersion() {
+        return TOOL_VERSION;
+    }
+
+    /**
+     * Computes the version of this tool.
+     * @return The version.
+     */
+    private static String computeToolVersion() {
+        var version = Main.class.getPackage().getImplementationVersion();
+        return (version != null ? version : "dev") + "+" + buildHash() + "/" + FORMAT_VERSION;
+    }
+
+    /**
+     * Returns the hash of the compiled classes and libraries written by the build or, when running from an IDE,
+     * hashes the classes or the jar this class was loaded from.
+     * @return The hex encoded hash.
+     */
+    private static String buildHash() {
+        try (var in = ResultCache.class.getResourceAsStream(BUILD_HASH_RESOURCE)) {
+            if (in != null) {
+                return new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim();
+            }
+            var digest = MessageDigest.getInstance("SHA-256");
+            var location = Path.of(ResultCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                try (var files = Files.walk(location)) {
+                    for (var file : files.filter(f -> f.toString().endsWith(".class")).sorted().toList()) {
+                        update(digest, location.relativize(file).toString());
+                        digest.update(Files.readAllBytes(file));
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return hex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException | URISyntaxException | RuntimeException e) {
+            // Without knowing the code, results are only reused within this process.
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Computes the key of an entry from everything its result depends on.
+     * @param parts The inputs of the transformation. May contain null.
+     * @return The hex encoded SHA-256 hash of the tool version and the given parts.
+     */
+    public static String key(String... parts) {
+        return keyOf(toolVersion(), parts);
+    }
+
+    /**
+     * Computes the key of an entry for the given version of this tool.
+     * @param toolVersion The version of this tool.
+     * @param parts The inputs of the transformation. May contain null.
+     * @return The hex encoded SHA-256 hash of the tool version and the given parts.
+     */
+    static String keyOf(String toolVersion, String... parts) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            update(digest, toolVersion);
+            for (var part : parts) {
+                update(digest, part);
+            }
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes bytes as lower case hex digits.
+     * @param bytes The bytes.
+     * @return The hex digits.
+     */
+    private static String hex(byte[] bytes) {
+        var hex = new StringBuilder();
+        for (var b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Adds a part of a key to the hash. Parts are length-prefixed, so different splits of the same text do not collide.
+     * @param digest The hash to add the part to.
+     * @param part The part or null.
+     */
+    private static void update(MessageDigest digest, String part) {
+        if (part == null) {
+            digest.update((byte) '-');
+            return;
+        }
+        var bytes = part.getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    /**
+     * Returns the file holding the entry with the given key.
+     * @param key The key.
+     * @return The file.
+     */
+    private Path pathOf(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Looks up an entry and marks it as recently used.
+     * @param key The key of the entry.
+     * @return The entry or null if it is not cached.
+     */
+    public Entry get(String key) {
+        var path = pathOf(key);
+        Entry entry;
+        try {
+            entry = decode(Files.readAllBytes(path));
+        } catch (IOException e) {
+            // Missing, concurrently evicted or unreadable entries are treated as not cached.
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted by another process in the meantime, the entry is still valid.
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Stores an entry and evicts the least recently used entries if the cache grew too large.
+     * @param key The key of the entry.
+     * @param entry The entry.
+     * @throws IOException If the entry could not be written.
+     */
+    public void put(String key, Entry entry) throws IOException {
+        var path = pathOf(key);
+        Files.createDirectories(path.getParent());
+
+        var bytes = encode(entry);
+        var temporary = Files.createTempFile(path.getParent(), key, ".tmp");
+        try {
+            Files.write(temporary, bytes);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        if (estimatedBytes.get() < 0 || estimatedBytes.addAndGet(bytes.length) > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that were served from the cache.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that were not served from the cache.
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is smaller than its maximum size. Holds a file lock,
+     * so only one process evicts at a time.
+     * @throws IOException If the cache directory could not be read.
+     */
+    private void evict() throws IOException {
+        synchronized (EVICTION_LOCK) {
+            try (var lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 var lock = lockChannel.lock()) {
+                var entries = new ArrayList<CachedFile>();
+                try (Stream<Path> files = Files.walk(directory, 2)) {
+                    for (var f : (Iterable<Path>) files::iterator) {
+                        if (!f.getFileName().toString().endsWith(ENTRY_SUFFIX)) {
+                            continue;
+                        }
+                        try {
+                            entries.add(new CachedFile(f, Files.getLastModifiedTime(f).toMillis(), Files.size(f)));
+                        } catch (NoSuchFileException e) {
+                            // Evicted by another process in the meantime.
+                        }
+                    }
+                }
+
+                var total = entries.stream().mapToLong(CachedFile::size).sum();
+                if (total > maxBytes) {
+                    entries.sort(Comparator.comparingLong(CachedFile::lastModified));
+                    for (var e : entries) {
+                        if (total <= maxBytes * EVICTION_TARGET) {
+                            break;
+                        }
+                        Files.deleteIfExists(e.path());
+                        total -= e.size();
+                    }
+                }
+                estimatedBytes.set(total);
+            }
+        }
+    }
+
+    /**
+     * Serializes an entry.
+     * @param entry The entry.
+     * @return The serialized entry.
+     * @throws IOException Never, the entry is written to memory.
+     */
+    private static byte[] encode(Entry entry) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(entry.isSuccess());
+            if (entry.isSuccess()) {
+                out.writeInt(entry.outputs().size());
+                for (var e : entry.outputs().entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            } else {
+                out.writeUTF(entry.error());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes an entry.
+     * @param bytes The serialized entry.
+     * @return The entry.
+     * @throws IOException If the entry is not valid.
+     */
+    private static Entry decode(byte[] bytes) throws IOException {
+        try (var in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported cache entry format");
+            }
+            if (!in.readBoolean()) {
+                return Entry.failure(in.readUTF());
+            }
+
+            var count = in.readInt();
+            var outputs = new LinkedHashMap<String, byte[]>();
+            for (var i = 0; i < count; i++) {
+                var name = in.readUTF();
+                var output = new byte[in.readInt()];
+                in.readFully(output);
+                outputs.put(name, output);
+            }
+            return Entry.success(outputs);
+        }
+    }
+}
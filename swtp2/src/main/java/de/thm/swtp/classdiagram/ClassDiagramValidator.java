@@ -1,11 +1,10 @@
 package de.thm.swtp.classdiagram;
 
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent.MessageEvent;
 import net.sourceforge.plantuml.classdiagram.ClassDiagram;
-import net.sourceforge.plantuml.sequencediagram.Message;
 import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
@@ -14,9 +13,11 @@ import java.util.regex.Pattern;
  */
 public class ClassDiagramValidator {
 
+    private static final Pattern METHOD_NAME = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]+");
+
     private final ClassDiagram classDiagram;
-    private final SequenceDiagram sequenceDiagram;
-    private final Map<String, ClassType> classes = new HashMap<>();
+    private final SequenceDiagramModel sequenceDiagram;
+    private ClassIndex classes;
 
     /**
      * Creates a new ClassDiagramValidator for the given class and sequence diagrams.
@@ -24,6 +25,15 @@ public class ClassDiagramValidator {
      * @param sequenceDiagram The sequence diagram that will later be transformed into a state diagram.
      */
     public ClassDiagramValidator(ClassDiagram classDiagram, SequenceDiagram sequenceDiagram) {
+        this(classDiagram, SequenceDiagramModel.of(sequenceDiagram));
+    }
+
+    /**
+     * Creates a new ClassDiagramValidator for the given class and sequence diagrams.
+     * @param classDiagram The class diagram to check coherence with.
+     * @param sequenceDiagram The sequence diagram that will later be transformed into a state diagram, read by any parser.
+     */
+    public ClassDiagramValidator(ClassDiagram classDiagram, SequenceDiagramModel sequenceDiagram) {
         this.classDiagram = classDiagram;
         this.sequenceDiagram = sequenceDiagram;
     }
@@ -34,7 +44,7 @@ public class ClassDiagramValidator {
      * @return Whether a class with the given name exists.
      */
     private boolean existsClass(String className) {
-        return classes.containsKey(className);
+        return classes.get(className) != null;
     }
 
     /**
@@ -44,8 +54,7 @@ public class ClassDiagramValidator {
      * @return The name of the method invoked by the given method call.
      */
     private String extractMethodName(String methodCall) {
-        var pattern = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]+");
-        var matcher = pattern.matcher(methodCall);
+        var matcher = METHOD_NAME.matcher(methodCall);
         if (!matcher.find()) {
             throw new IllegalStateException("Could not extract method name from " + methodCall);
         }
@@ -53,41 +62,38 @@ public class ClassDiagramValidator {
     }
 
     /**
-     * Prints an error message and exits the program with a non-zero exit code.
+     * Reports a discrepancy between the class and sequence diagram.
      * @param m The sequence diagram message this error belongs to.
      * @param message The error message to display.
+     * @throws IllegalStateException Always.
      */
-    private void error(Message m, String message) {
-        System.out.printf("Error at %s --> %s: %s", m.getParticipant1().getCode(), m.getParticipant2().getCode(), message);
-        System.exit(1);
+    private void error(MessageEvent m, String message) {
+        throw new IllegalStateException(String.format("%s --> %s: %s", m.from(), m.to(), message));
     }
 
     /**
-     * Checks coherence between the given class and sequence diagram. Prints an error message and exits the
-     * program if discrepancies are found.
+     * Checks coherence between the given class and sequence diagram.
+     * @throws IllegalStateException If discrepancies are found or the inheritance hierarchy contains a cycle.
      */
     public void validate() {
-        for (var l : classDiagram.getLeafsvalues()) {
-            var clazz = ClassType.of(l, classDiagram);
-            classes.put(clazz.getName(), clazz);
-        }
+        classes = ClassIndex.of(classDiagram);
 
         for (var e : sequenceDiagram.events()) {
-            if (e instanceof Message m) {
-                if (!existsClass(m.getParticipant1().getCode())) {
-                    error(m, String.format("Class %s does not exist.", m.getParticipant1().getCode()));
+            if (e instanceof MessageEvent m) {
+                if (!existsClass(m.from())) {
+                    error(m, String.format("Class %s does not exist.", m.from()));
                 }
 
-                if (!existsClass(m.getParticipant2().getCode())) {
-                    error(m, String.format("Class %s does not exist.", m.getParticipant2().getCode()));
+                if (!existsClass(m.to())) {
+                    error(m, String.format("Class %s does not exist.", m.to()));
                 }
 
-                if (m.getLabel().get(0).toString().contains(".")) {
+                if (m.label().contains(".")) {
                     continue;
                 }
 
-                var clazz = classes.get(m.getParticipant2().getCode());
-                var methodName = extractMethodName(m.getLabel().get(0).toString());
+                var clazz = classes.get(m.to());
+                var methodName = extractMethodName(m.label());
                 if (!clazz.existsMethod(methodName)) {
                     error(m, String.format("Class %s has no method %s.", clazz.getName(), methodName));
                 }
@@ -0,0 +1,201 @@
+package de.thm.swtp.classdiagram;
+
+import net.sourceforge.plantuml.classdiagram.ClassDiagram;
+import net.sourceforge.plantuml.cucadiagram.LinkDecor;
+import net.sourceforge.plantuml.cucadiagram.LinkType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * All classes of a class diagram by name. The index is built in one pass over the classes and one over the links of
+ * the diagram, creates a single {@link ClassType} per class and flattens the inherited methods of every class once,
+ * so looking up a method takes constant time regardless of the depth of the hierarchy.
+ */
+public class ClassIndex {
+
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]+");
+
+    private final Map<String, ClassType> classes = new HashMap<>();
+
+    /**
+     * Creates a new index of the given classes.
+     * @param methods The methods declared by every class, by class name.
+     * @param parents The names of the classes every class directly inherits from, by class name. Classes without
+     *                parents may be missing.
+     * @throws IllegalStateException If the inheritance hierarchy contains a cycle.
+     */
+    ClassIndex(Map<String, Set<String>> methods, Map<String, List<String>> parents) {
+        // Depth-first search, so the parents of a class are complete before the class itself. Classes on the
+        // stack have been entered but not completed, meeting one of them again means the hierarchy has a cycle.
+        var onStack = new HashSet<String>();
+        var stack = new ArrayDeque<String>();
+        for (var name : methods.keySet()) {
+            if (classes.containsKey(name)) {
+                continue;
+            }
+            onStack.add(name);
+            stack.push(name);
+            while (!stack.isEmpty()) {
+                var current = stack.peek();
+                var pending = findPendingParent(current, methods, parents);
+                if (pending == null) {
+                    classes.put(current, create(current, methods, parents));
+                    onStack.remove(current);
+                    stack.pop();
+                } else if (onStack.add(pending)) {
+                    stack.push(pending);
+                } else {
+                    throw new IllegalStateException("Inheritance cycle: " + describeCycle(stack, pending));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the index of all classes of a class diagram.
+     * @param classDiagram The class diagram.
+     * @return The index of its classes.
+     * @throws IllegalStateException If a method name cannot be extracted or the inheritance hierarchy contains a
+     *                               cycle.
+     */
+    public static ClassIndex of(ClassDiagram classDiagram) {
+        var methods = new LinkedHashMap<String, Set<String>>();
+        for (var leaf : classDiagram.getLeafsvalues()) {
+            var declared = new HashSet<String>();
+            for (var m : leaf.getBodier().getMethodsToDisplay()) {
+                declared.add(extractMethodName(m.toString()));
+            }
+            methods.put(leaf.getCodeGetName(), declared);
+        }
+
+        var parents = new HashMap<String, List<String>>();
+        for (var l : classDiagram.getEntityFactory().getLinks()) {
+            if (!isExtends(l.getType())) {
+                continue;
+            }
+            var child = l.getEntity2().getCodeGetName();
+            var parent = l.getEntity1().getCodeGetName();
+            if (methods.containsKey(child) && methods.containsKey(parent)) {
+                parents.computeIfAbsent(child, c -> new ArrayList<>()).add(parent);
+            }
+        }
+
+        return new ClassIndex(methods, parents);
+    }
+
+    /**
+     * Returns the class with the given name.
+     * @param name The name of the class.
+     * @return The class or null if the class diagram has no class with this name.
+     */
+    public ClassType get(String name) {
+        return classes.get(name);
+    }
+
+    /**
+     * Returns the number of classes in the index.
+     * @return The number of classes.
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Returns the first parent of a class which has not been added to the index yet.
+     * @param name The name of the class.
+     * @param methods The methods declared by every class.
+     * @param parents The direct parents of every class.
+     * @return The name of the parent or null if all parents have been added.
+     */
+    private String findPendingParent(String name, Map<String, Set<String>> methods,
+                                     Map<String, List<String>> parents) {
+        for (var p : parents.getOrDefault(name, List.of())) {
+            if (!classes.containsKey(p) && methods.containsKey(p)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the class type of a class whose parents have been added to the index.
+     * @param name The name of the class.
+     * @param methods The methods declared by every class.
+     * @param parents The direct parents of every class.
+     * @return The class type.
+     */
+    private ClassType create(String name, Map<String, Set<String>> methods, Map<String, List<String>> parents) {
+        var declared = methods.get(name);
+        var parentTypes = new ArrayList<ClassType>();
+        for (var p : parents.getOrDefault(name, List.of())) {
+            var parent = classes.get(p);
+            if (parent != null && !parentTypes.contains(parent)) {
+                parentTypes.add(parent);
+            }
+        }
+
+        // A class adding nothing to its only parent shares the method set of the parent.
+        Set<String> allMethods;
+        if (parentTypes.size() == 1 && parentTypes.get(0).getMethods().containsAll(declared)) {
+            allMethods = parentTypes.get(0).getMethods();
+        } else {
+            var union = new HashSet<>(declared);
+            for (var p : parentTypes) {
+                union.addAll(p.getMethods());
+            }
+            allMethods = Collections.unmodifiableSet(union);
+        }
+        return new ClassType(name, allMethods, List.copyOf(parentTypes));
+    }
+
+    /**
+     * Describes the cycle closed by inheriting from a class on the stack.
+     * @param stack The classes being added, innermost first.
+     * @param name The class on the stack which is inherited from again.
+     * @return The names of the classes of the cycle, each followed by its parent.
+     */
+    private static String describeCycle(ArrayDeque<String> stack, String name) {
+        var cycle = new ArrayList<String>();
+        cycle.add(name);
+        for (var s : stack) {
+            cycle.add(0, s);
+            if (s.equals(name)) {
+                break;
+            }
+        }
+        return String.join(" -> ", cycle);
+    }
+
+    /**
+     * Extracts the method name from a PlantUML method declaration.
+     * Example: +void myMethod(int x, int y) --> myMethod
+     * @param declaration The PlantUML method declaration.
+     * @return The method name.
+     * @throws IllegalStateException If the declaration does not contain a method name.
+     */
+    static String extractMethodName(String declaration) {
+        var matcher = NAME.matcher(declaration);
+        if (!matcher.find() || !matcher.find()) {
+            throw new IllegalStateException("Could not extract method name from " + declaration);
+        }
+        return matcher.group();
+    }
+
+    /**
+     * Returns whether the given link type is class/interface extension.
+     * @param l The link type.
+     * @return Whether it is an extension.
+     */
+    private static boolean isExtends(LinkType l) {
+        return l.getDecor1() == LinkDecor.EXTENDS || l.getDecor2() == LinkDecor.EXTENDS;
+    }
+}
@@ -1,13 +1,10 @@
 package de.thm.swtp.classdiagram;
 
 import net.sourceforge.plantuml.classdiagram.ClassDiagram;
-import net.sourceforge.plantuml.cucadiagram.CodeImpl;
 import net.sourceforge.plantuml.cucadiagram.ILeaf;
-import net.sourceforge.plantuml.cucadiagram.LinkDecor;
-import net.sourceforge.plantuml.cucadiagram.LinkType;
 
-import java.util.HashSet;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Represents a class with methods. Used to detected spelling and other semantic mistakes in given sequence diagram.
@@ -15,16 +12,17 @@ import java.util.regex.Pattern;
 public class ClassType {
 
     private final String name;
-    private final HashSet<String> methods;
-    private final HashSet<ClassType> parents;
+    // The methods of this class and all its ancestors.
+    private final Set<String> methods;
+    private final List<ClassType> parents;
 
     /**
-     * Creates a new class type with a name, a list of methods and a list of classes this class inherits from.
+     * Creates a new class type with a name, its methods and the classes this class inherits from.
      * @param name The name of this class.
-     * @param methods A list of methods this class has.
-     * @param parents A list of classes this class inherits methods from.
+     * @param methods The methods this class declares or inherits.
+     * @param parents The classes this class directly inherits methods from.
      */
-    private ClassType(String name, HashSet<String> methods, HashSet<ClassType> parents) {
+    ClassType(String name, Set<String> methods, List<ClassType> parents) {
         this.name = name;
         this.methods = methods;
         this.parents = parents;
@@ -39,71 +37,40 @@ public class ClassType {
     }
 
     /**
-     * Returns whether this class or any of its parents have a method with the given name.
-     * @param name The name of the method to look for.
-     * @return Whether a method with the given name exists.
+     * Returns the methods this class declares or inherits.
+     * @return The names of the methods.
      */
-    public boolean existsMethod(String name) {
-        if (methods.contains(name)) {
-            return true;
-        }
-
-        for (var p : parents) {
-            if (p.existsMethod(name)) {
-                return true;
-            }
-        }
-
-        return false;
+    Set<String> getMethods() {
+        return methods;
     }
 
     /**
-     * Extracts the method name from a PlantUML method declaration.
-     * Example: +void myMethod(int x, int y) --> myMethod
-     * @param declaration The PlantUML method declaration.
-     * @return The method name.
+     * Returns the classes this class directly inherits from.
+     * @return The parent classes.
      */
-    private static String extractMethodName(String declaration) {
-        var pattern = Pattern.compile("[a-zA-Z][a-zA-Z0-9_]+");
-        var matcher = pattern.matcher(declaration);
-        if (!matcher.find() || !matcher.find()) {
-            throw new IllegalStateException("Could not extract method name from " + declaration);
-        }
-        return matcher.group();
+    public List<ClassType> getParents() {
+        return parents;
     }
 
     /**
-     * Returns whether the given link type is class/interface extension.
-     * @param l The link type.
-     * @return Whether it is an extension.
+     * Returns whether this class or any of its parents have a method with the given name.
+     * @param name The name of the method to look for.
+     * @return Whether a method with the given name exists.
      */
-    private static boolean isExtends(LinkType l) {
-        return l.getDecor1() == LinkDecor.EXTENDS || l.getDecor2() == LinkDecor.EXTENDS;
+    public boolean existsMethod(String name) {
+        return methods.contains(name);
     }
 
     /**
-     * Recursively generates a new class type from a given PlantUML class diagram class.
+     * Generates the class type of a given PlantUML class diagram class. Builds the {@link ClassIndex} of the whole
+     * class diagram, so the index should be used directly when looking up more than one class.
      * @param leaf The class leaf to generate a class type for.
      * @param classDiagram The class diagram the given leaf belongs to.
      * @return The generated class type.
+     * @throws IllegalStateException If a method name cannot be extracted or the inheritance hierarchy contains a
+     *                               cycle.
      */
     public static ClassType of(ILeaf leaf, ClassDiagram classDiagram) {
-        var className = leaf.getCodeGetName();
-
-        var methods = new HashSet<String>();
-        var parents = new HashSet<ClassType>();
-
-        for (var m : leaf.getBodier().getMethodsToDisplay()) {
-            methods.add(extractMethodName(m.toString()));
-        }
-
-        for (var l : classDiagram.getEntityFactory().getLinks()) {
-            if (!l.contains(leaf) || !isExtends(l.getType()) || !l.getEntity2().equals(leaf)) continue;
-
-            var parent = classDiagram.getLeaf(CodeImpl.of(l.getEntity1().getCodeGetName()));
-            parents.add(of(parent, classDiagram));
-        }
-
-        return new ClassType(className, methods, parents);
+        return ClassIndex.of(classDiagram).get(leaf.getCodeGetName());
     }
 }
@@ -0,0 +1,704 @@
+package de.thm.swtp.conformance;
+
+import de.thm.swtp.statediagram.DeterministicStateMachine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks logged traces against the minimal state machine of a participant.
+ * <p>
+ * A trace file has one event per line, given as the session and the text of the trigger or guard separated by a tab,
+ * e.g. {@code 42\tinsertCard}. All lines of a session form its trace, in the order of the file, so the sessions of a
+ * production log may be interleaved. Empty lines and lines starting with '#' are ignored.
+ * <p>
+ * The file is split into memory-mapped chunks, and every chunk is read exactly once by one of the workers. As a worker
+ * does not know in which state a session enters its chunk, it follows the machine from every state at once and
+ * records, for every session, the state each start state leads to or its first violating event. Start states that
+ * reach the same state are merged, so after a few events only one or two of them are left to follow. The summaries of
+ * the chunks are combined in the order of the file, looking up each session once per chunk, and the results are
+ * reported in the order of the first event of every session. Memory use depends on the number of sessions, not on
+ * the size of the file. Events are looked up by their UTF-8 bytes in a hash table and dispatched through a dense
+ * transition table, so the hot path neither decodes nor allocates.
+ */
+public class ConformanceChecker {
+
+    private static final String REPORT_HEADER = "session\tverdict\tevents\tline\tevent\n";
+    // Size from which the file is split into a new chunk at the next line.
+    private static final long DEFAULT_CHUNK_SIZE = 32 << 20;
+    private static final long MAX_TABLE_SIZE = 1L << 26;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    // The state every trace starts in.
+    private static final int START_STATE = 0;
+
+    private final int stateCount;
+    private final int inputCount;
+    // The target of every state and input at state * inputCount + input or -1 if the input is rejected.
+    private final int[] transitions;
+    private final boolean[] accepting;
+    // The UTF-8 encoded texts of the inputs and an open addressing hash table of the input + 1 by text.
+    private final byte[][] texts;
+    private final int[] slots;
+    private final long chunkSize;
+    // The number of lines read by the workers of all checks.
+    private final LongAdder linesRead = new LongAdder();
+
+    /**
+     * Sessions numbered in the order of their first event, found by their UTF-8 encoded names in an open addressing
+     * hash table. Subclasses keep the names and further data per session in parallel arrays.
+     */
+    private abstract static class SessionTable {
+
+        int size = 0;
+        int[] hashes = new int[16];
+        // The session + 1 in every used slot.
+        private int[] slots = new int[32];
+
+        /**
+         * Returns the session with the given UTF-8 encoded name, adding it if it is not known yet.
+         * @param bytes The bytes containing the name.
+         * @param start The position of the name.
+         * @param end The position after the name.
+         * @param hash The hash of the name.
+         * @return The session.
+         */
+        int sessionOf(ByteBuffer bytes, int start, int end, int hash) {
+            var slot = hash & (slots.length - 1);
+            while (slots[slot] != 0) {
+                var session = slots[slot] - 1;
+                if (hashes[session] == hash && hasName(session, bytes, start, end)) {
+                    return session;
+                }
+                slot = (slot + 1) & (slots.length - 1);
+            }
+
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * size);
+                grow(2 * size);
+            }
+            var session = size++;
+            hashes[session] = hash;
+            setName(session, bytes, start, end);
+            slots[slot] = session + 1;
+            if (2 * size > slots.length) {
+                rehash();
+            }
+            return session;
+        }
+
+        /**
+         * Returns whether a session has the given name.
+         * @param session The session.
+         * @param bytes The bytes containing the name.
+         * @param start The position of the name.
+         * @param end The position after the name.
+         * @return Whether the names are equal.
+         */
+        abstract boolean hasName(int session, ByteBuffer bytes, int start, int end);
+
+        /**
+         * Sets the name of a new session.
+         * @param session The session.
+         * @param bytes The bytes containing the name.
+         * @param start The position of the name.
+         * @param end The position after the name.
+         */
+        abstract void setName(int session, ByteBuffer bytes, int start, int end);
+
+        /**
+         * Grows the parallel arrays of the subclass.
+         * @param capacity The new number of sessions.
+         */
+        abstract void grow(int capacity);
+
+        /**
+         * Doubles the size of the hash table.
+         */
+        private void rehash() {
+            slots = new int[2 * slots.length];
+            for (var session = 0; session < size; session++) {
+                var slot = hashes[session] & (slots.length - 1);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & (slots.length - 1);
+                }
+                slots[slot] = session + 1;
+            }
+        }
+    }
+
+    /**
+     * The events of every session within a single chunk, followed from every state the session may enter the chunk
+     * in. Each of these start states has a slot of the same number. The first chunk only has the slot of the start
+     * state 0, as every session starts there. Names and violating events are kept as positions in the chunk.
+     */
+    private static class Chunk extends SessionTable {
+
+        private final ByteBuffer bytes;
+        private final int width;
+        private int[] nameStarts = new int[16];
+        private int[] nameEnds = new int[16];
+        private long[] firstLines = new long[16];
+        private long[] events = new long[16];
+        // The slots of every session at session * 3 * width: the state every slot has reached or the violation it
+        // stopped at, encoded as -(violation + 1), the slot every slot was merged into after reaching the same state
+        // or the slot itself, and the slots neither merged nor stopped. Replaced by the resolved states once the
+        // chunk is read.
+        private int[] slots;
+        private int[] liveCounts = new int[16];
+        // The line within the chunk and the position of the text of every violating event.
+        private long[] violationLines = new long[16];
+        private int[] violationStarts = new int[16];
+        private int[] violationEnds = new int[16];
+        private int violationCount = 0;
+        // The number of lines read, and the first line without a tab or 0, counted from the start of the chunk.
+        private long lines = 0;
+        private long malformedLine = 0;
+
+        /**
+         * Creates a new chunk.
+         * @param bytes The mapped chunk.
+         * @param width The number of slots of every session.
+         */
+        Chunk(ByteBuffer bytes, int width) {
+            this.bytes = bytes;
+            this.width = width;
+            slots = new int[16 * 3 * width];
+        }
+
+        @Override
+        boolean hasName(int session, ByteBuffer bytes, int start, int end) {
+            var nameStart = nameStarts[session];
+            if (nameEnds[session] - nameStart != end - start) {
+                return false;
+            }
+            for (var i = 0; i < end - start; i++) {
+                if (this.bytes.get(nameStart + i) != bytes.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void setName(int session, ByteBuffer bytes, int start, int end) {
+            nameStarts[session] = start;
+            nameEnds[session] = end;
+        }
+
+        @Override
+        void grow(int capacity) {
+            nameStarts = Arrays.copyOf(nameStarts, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+            firstLines = Arrays.copyOf(firstLines, capacity);
+            events = Arrays.copyOf(events, capacity);
+            slots = Arrays.copyOf(slots, capacity * 3 * width);
+            liveCounts = Arrays.copyOf(liveCounts, capacity);
+        }
+
+        /**
+         * Adds a violating event.
+         * @param line The line of the event within the chunk.
+         * @param start The position of the text of the event.
+         * @param end The position after the text of the event.
+         * @return The number of the violation.
+         */
+        int addViolation(long line, int start, int end) {
+            if (violationCount == violationLines.length) {
+                violationLines = Arrays.copyOf(violationLines, 2 * violationCount);
+                violationStarts = Arrays.copyOf(violationStarts, 2 * violationCount);
+                violationEnds = Arrays.copyOf(violationEnds, 2 * violationCount);
+            }
+            violationLines[violationCount] = line;
+            violationStarts[violationCount] = start;
+            violationEnds[violationCount] = end;
+            return violationCount++;
+        }
+
+        /**
+         * Resolves every slot of every session to the state it reached or the violation it stopped at.
+         */
+        void finish() {
+            var states = new int[size * width];
+            for (var session = 0; session < size; session++) {
+                var base = session * 3 * width;
+                for (var slot = 0; slot < width; slot++) {
+                    var target = slot;
+                    while (slots[base + width + target] != target) {
+                        target = slots[base + width + target];
+                    }
+                    states[session * width + slot] = slots[base + target];
+                }
+            }
+            slots = states;
+        }
+    }
+
+    /**
+     * The traces of all sessions of the file in parallel arrays, combined from the chunks in order.
+     */
+    private static class Sessions extends SessionTable {
+
+        private byte[][] names = new byte[16][];
+        // The current state of every session.
+        private int[] states = new int[16];
+        private long[] events = new long[16];
+        private long[] firstLines = new long[16];
+        // The line and text of the first violating event of every session or null.
+        private long[] violationLines = new long[16];
+        private String[] violations = new String[16];
+
+        @Override
+        boolean hasName(int session, ByteBuffer bytes, int start, int end) {
+            var name = names[session];
+            return name.length == end - start && equalBytes(bytes, start, name);
+        }
+
+        @Override
+        void setName(int session, ByteBuffer bytes, int start, int end) {
+            names[session] = new byte[end - start];
+            bytes.get(start, names[session]);
+        }
+
+        @Override
+        void grow(int capacity) {
+            names = Arrays.copyOf(names, capacity);
+            states = Arrays.copyOf(states, capacity);
+            events = Arrays.copyOf(events, capacity);
+            firstLines = Arrays.copyOf(firstLines, capacity);
+            violationLines = Arrays.copyOf(violationLines, capacity);
+            violations = Arrays.copyOf(violations, capacity);
+        }
+    }
+
+    /**
+     * Creates a new checker.
+     * @param machine The state machine the traces have to conform to.
+     * @throws IllegalStateException If the transition table of the machine is too large.
+     */
+    public ConformanceChecker(DeterministicStateMachine machine) {
+        this(machine, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new checker.
+     * @param machine The state machine the traces have to conform to.
+     * @param chunkSize The size from which a trace file is split into a new chunk at the next line.
+     * @throws IllegalStateException If the transition table of the machine is too large.
+     */
+    ConformanceChecker(DeterministicStateMachine machine, long chunkSize) {
+        inputCount = machine.getSymbols().size();
+        if ((long) machine.getStateCount() * inputCount > MAX_TABLE_SIZE) {
+            throw new IllegalStateException(String.format("State machine of %s with %d states and %d inputs is too "
+                    + "large to check traces.", machine.getName(), machine.getStateCount(), inputCount));
+        }
+        this.chunkSize = chunkSize;
+        // A machine without states rejects every event, just like a single state without transitions.
+        stateCount = Math.max(machine.getStateCount(), 1);
+
+        transitions = new int[stateCount * inputCount];
+        Arrays.fill(transitions, DeterministicStateMachine.NO_TRANSITION);
+        accepting = new boolean[stateCount];
+        for (var s = 0; s < machine.getStateCount(); s++) {
+            for (var input = 0; input < inputCount; input++) {
+                transitions[s * inputCount + input] = machine.getTransition(s, input);
+            }
+            accepting[s] = machine.isAccepting(s);
+        }
+
+        texts = new byte[inputCount][];
+        slots = new int[Integer.highestOneBit(Math.max(inputCount, 1)) * 4];
+        for (var input = 0; input < inputCount; input++) {
+            var text = machine.getSymbols().get(input).text().getBytes(StandardCharsets.UTF_8);
+            texts[input] = text;
+            var slot = hash(ByteBuffer.wrap(text), 0, text.length) & (slots.length - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = input + 1;
+        }
+    }
+
+    /**
+     * Returns the number of lines read by the workers of all checks of this checker. Every line is read once.
+     * @return The number of lines.
+     */
+    long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    /**
+     * Checks all traces of a trace file and writes one line per trace to a report: the session, the verdict, the
+     * number of events and, for rejected traces, the line and text of the first violating event, separated by tabs.
+     * @param traceFile The trace file.
+     * @param workers The number of workers the chunks of the file are distributed to.
+     * @param report The sink to write the report to, the header is written first.
+     * @return The totals of all traces.
+     * @throws IOException If the trace file could not be read or the report could not be written.
+     * @throws IllegalStateException If the trace file contains a line without a tab or a line larger than 2 GB.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the workers.
+     */
+    public ConformanceSummary check(Path traceFile, int workers, Appendable report) throws IOException,
+            InterruptedException {
+        report.append(REPORT_HEADER);
+        var sessions = new Sessions();
+
+        var pool = new ForkJoinPool(workers);
+        try (var channel = FileChannel.open(traceFile, StandardOpenOption.READ)) {
+            // Splitting is cheap, it only reads the line at the end of every chunk.
+            var size = channel.size();
+            var pending = new ArrayList<Future<Chunk>>();
+            for (var start = 0L; start < size; ) {
+                var chunkStart = start;
+                var chunkEnd = lineStartAfter(channel, start + chunkSize, size);
+                pending.add(pool.submit(() -> checkChunk(channel, chunkStart, chunkEnd)));
+                start = chunkEnd;
+            }
+
+            var lineOffset = 0L;
+            for (var i = 0; i < pending.size(); i++) {
+                var chunk = await(pending.get(i));
+                // Summaries are only kept until they are combined.
+                pending.set(i, null);
+                if (chunk.malformedLine > 0) {
+                    throw new IllegalStateException(String.format("Line %d: expected a session and an event "
+                            + "separated by a tab.", lineOffset + chunk.malformedLine));
+                }
+                combine(sessions, chunk, lineOffset);
+                lineOffset += chunk.lines;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long traces = 0, accepted = 0, rejected = 0, incomplete = 0, events = 0;
+        for (var session = 0; session < sessions.size; session++) {
+            var trace = result(sessions, session);
+            traces++;
+            events += trace.events();
+            switch (trace.verdict()) {
+                case ACCEPTED -> accepted++;
+                case REJECTED -> rejected++;
+                case INCOMPLETE -> incomplete++;
+            }
+            appendResult(report, trace);
+        }
+        return new ConformanceSummary(traces, accepted, rejected, incomplete, events);
+    }
+
+    /**
+     * Continues the traces of all sessions with their events in the next chunk.
+     * @param sessions The sessions of the previous chunks.
+     * @param chunk The next chunk.
+     * @param lineOffset The number of lines before the chunk.
+     */
+    private void combine(Sessions sessions, Chunk chunk, long lineOffset) {
+        for (var c = 0; c < chunk.size; c++) {
+            var session = sessions.sessionOf(chunk.bytes, chunk.nameStarts[c], chunk.nameEnds[c], chunk.hashes[c]);
+            // Only sessions without events in the previous chunks have no events yet.
+            if (sessions.events[session] == 0) {
+                sessions.states[session] = START_STATE;
+                sessions.firstLines[session] = lineOffset + chunk.firstLines[c];
+            }
+            sessions.events[session] += chunk.events[c];
+            if (sessions.violations[session] == null) {
+                var state = chunk.slots[c * chunk.width + sessions.states[session]];
+                if (state < 0) {
+                    var violation = -state - 1;
+                    sessions.violationLines[session] = lineOffset + chunk.violationLines[violation];
+                    sessions.violations[session] = decode(chunk.bytes, chunk.violationStarts[violation],
+                            chunk.violationEnds[violation]);
+                } else {
+                    sessions.states[session] = state;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a worker to check its chunk.
+     * @param chunk The pending chunk.
+     * @return The checked chunk.
+     * @throws IOException If the trace file could not be read.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    private static Chunk await(Future<Chunk> chunk) throws IOException, InterruptedException {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            } else if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the result of a trace to the report.
+     * @param report The sink to write to.
+     * @param trace The result of the trace.
+     * @throws IOException If writing to the sink fails.
+     */
+    private static void appendResult(Appendable report, TraceResult trace) throws IOException {
+        report.append(trace.session()).append('\t')
+                .append(trace.verdict().name().toLowerCase(Locale.ROOT)).append('\t')
+                .append(Long.toString(trace.events())).append('\t');
+        if (trace.verdict() == TraceResult.Verdict.REJECTED) {
+            report.append(Long.toString(trace.line())).append('\t').append(trace.event());
+        } else {
+            report.append('\t');
+        }
+        report.append('\n');
+    }
+
+    /**
+     * Follows the events of every session within a chunk of a trace file from every state it may enter the chunk in.
+     * @param channel The trace file.
+     * @param start The position of the first byte of the chunk, which starts a line.
+     * @param end The position after the last byte of the chunk, which ends a line or the file.
+     * @return The chunk, which stops at the first line without a tab.
+     * @throws IOException If the chunk could not be mapped.
+     * @throws IllegalStateException If the chunk is larger than 2 GB.
+     */
+    private Chunk checkChunk(FileChannel channel, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Lines larger than 2 GB are not supported.");
+        }
+        var bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        var chunk = new Chunk(bytes, start == 0 ? 1 : stateCount);
+        // The slot which reached every state with the current event, valid if its mark is the line of the event.
+        var owners = new int[stateCount];
+        var marks = new long[stateCount];
+
+        var limit = bytes.limit();
+        var line = 0L;
+        var position = 0;
+        try {
+            while (position < limit) {
+                line++;
+                var lineStart = position;
+                var tab = -1;
+                while (position < limit) {
+                    var b = bytes.get(position);
+                    if (b == '\n') {
+                        break;
+                    } else if (b == '\t' && tab < 0) {
+                        tab = position;
+                    }
+                    position++;
+                }
+                var lineEnd = position++;
+                if (lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd == lineStart || bytes.get(lineStart) == '#') {
+                    continue;
+                }
+                if (tab < 0 || tab > lineEnd) {
+                    chunk.malformedLine = line;
+                    return chunk;
+                }
+
+                var session = chunk.sessionOf(bytes, lineStart, tab, hash(bytes, lineStart, tab));
+                if (chunk.events[session]++ == 0) {
+                    startSlots(chunk, session, line);
+                }
+                if (chunk.liveCounts[session] > 0) {
+                    follow(chunk, session, line, tab + 1, lineEnd, owners, marks);
+                }
+            }
+        } finally {
+            chunk.lines = line;
+            linesRead.add(line);
+        }
+        chunk.finish();
+        return chunk;
+    }
+
+    /**
+     * Starts the slots of a session at its first event within a chunk.
+     * @param chunk The chunk.
+     * @param session The session.
+     * @param line The line of the event within the chunk.
+     */
+    private void startSlots(Chunk chunk, int session, long line) {
+        var width = chunk.width;
+        var base = session * 3 * width;
+        for (var slot = 0; slot < width; slot++) {
+            chunk.slots[base + slot] = slot;
+            chunk.slots[base + width + slot] = slot;
+            chunk.slots[base + 2 * width + slot] = slot;
+        }
+        chunk.liveCounts[session] = width;
+        chunk.firstLines[session] = line;
+    }
+
+    /**
+     * Follows an event from the state of every live slot of a session. Slots reaching the same state are merged,
+     * slots without a transition stop at the event.
+     * @param chunk The chunk.
+     * @param session The session.
+     * @param line The line of the event within the chunk.
+     * @param textStart The position of the text of the event.
+     * @param textEnd The position after the text of the event.
+     * @param owners The slot which reached every state with the event.
+     * @param marks The line of the event which last reached every state.
+     */
+    private void follow(Chunk chunk, int session, long line, int textStart, int textEnd, int[] owners,
+                        long[] marks) {
+        var input = inputOf(chunk.bytes, textStart, textEnd);
+        var slots = chunk.slots;
+        var width = chunk.width;
+        var base = session * 3 * width;
+        var violation = -1;
+        var live = 0;
+        for (var i = 0; i < chunk.liveCounts[session]; i++) {
+            var slot = slots[base + 2 * width + i];
+            var state = input >= 0
+                    ? transitions[slots[base + slot] * inputCount + input]
+                    : DeterministicStateMachine.NO_TRANSITION;
+            if (state < 0) {
+                if (violation < 0) {
+                    violation = chunk.addViolation(line, textStart, textEnd);
+                }
+                slots[base + slot] = -violation - 1;
+            } else if (marks[state] == line) {
+                slots[base + width + slot] = owners[state];
+            } else {
+                marks[state] = line;
+                owners[state] = slot;
+                slots[base + slot] = state;
+                slots[base + 2 * width + live++] = slot;
+            }
+        }
+        chunk.liveCounts[session] = live;
+    }
+
+    /**
+     * Creates the result of a completely checked trace.
+     * @param sessions The sessions of the file.
+     * @param session The session of the trace.
+     * @return The result.
+     */
+    private TraceResult result(Sessions sessions, int session) {
+        var name = new String(sessions.names[session], StandardCharsets.UTF_8);
+        var events = sessions.events[session];
+        var violation = sessions.violations[session];
+        if (violation != null) {
+            return new TraceResult(name, TraceResult.Verdict.REJECTED, events, sessions.violationLines[session],
+                    violation);
+        }
+        var verdict = accepting[sessions.states[session]]
+                ? TraceResult.Verdict.ACCEPTED
+                : TraceResult.Verdict.INCOMPLETE;
+        return new TraceResult(name, verdict, events, 0, null);
+    }
+
+    /**
+     * Returns the input with the given UTF-8 encoded text.
+     * @param bytes The chunk.
+     * @param start The position of the text.
+     * @param end The position after the text.
+     * @return The input or -1 if no transition has this text.
+     */
+    private int inputOf(ByteBuffer bytes, int start, int end) {
+        var slot = hash(bytes, start, end) & (slots.length - 1);
+        while (slots[slot] != 0) {
+            var input = slots[slot] - 1;
+            var text = texts[input];
+            if (text.length == end - start && equalBytes(bytes, start, text)) {
+                return input;
+            }
+            slot = (slot + 1) & (slots.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Hashes a range of bytes.
+     * @param bytes The bytes.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The hash.
+     */
+    private static int hash(ByteBuffer bytes, int start, int end) {
+        var h = 0;
+        for (var i = start; i < end; i++) {
+            h = 31 * h + bytes.get(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compares a range of bytes with a text.
+     * @param bytes The bytes.
+     * @param start The position of the range, which has the length of the text.
+     * @param text The text.
+     * @return Whether the range equals the text.
+     */
+    private static boolean equalBytes(ByteBuffer bytes, int start, byte[] text) {
+        for (var i = 0; i < text.length; i++) {
+            if (bytes.get(start + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a range of UTF-8 encoded bytes.
+     * @param bytes The bytes.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The decoded text.
+     */
+    private static String decode(ByteBuffer bytes, int start, int end) {
+        var text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the first line starting at or after a position. Only the line containing the position is read.
+     * @param channel The trace file.
+     * @param position The position.
+     * @param size The size of the trace file.
+     * @return The position of the next line or the size of the file.
+     * @throws IOException If the file could not be read.
+     */
+    private static long lineStartAfter(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+        var buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // Starts at the byte before the position, so a position at the start of a line is kept.
+        var start = position - 1;
+        while (start < size) {
+            buffer.clear();
+            var read = channel.read(buffer, start);
+            if (read <= 0) {
+                break;
+            }
+            for (var i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            start += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,20 @@
+package de.thm.swtp.conformance;
+
+/**
+ * The totals of checking a trace file against a state machine.
+ * @param traces The number of traces.
+ * @param accepted The number of accepted traces.
+ * @param rejected The number of traces with a violating event.
+ * @param incomplete The number of traces which ended before the machine reached an accepting state.
+ * @param events The number of events of all traces.
+ */
+public record ConformanceSummary(long traces, long accepted, long rejected, long incomplete, long events) {
+
+    /**
+     * Returns whether all traces were accepted.
+     * @return Whether all traces conform to the state machine.
+     */
+    public boolean isConformant() {
+        return accepted == traces;
+    }
+}
@@ -0,0 +1,24 @@
+package de.thm.swtp.conformance;
+
+/**
+ * The outcome of checking a single trace against a state machine.
+ * @param session The session the trace belongs to.
+ * @param verdict Whether the trace conforms to the state machine.
+ * @param events The number of events of the trace.
+ * @param line The line of the first violating event in the trace file or 0 if the trace was not rejected.
+ * @param event The text of the first violating event or null if the trace was not rejected.
+ */
+public record TraceResult(String session, Verdict verdict, long events, long line, String event) {
+
+    /**
+     * Whether a trace conforms to a state machine.
+     */
+    public enum Verdict {
+        // All events were accepted and the machine ended in an accepting state.
+        ACCEPTED,
+        // An event had no transition.
+        REJECTED,
+        // All events were accepted, but the trace ended before the machine reached an accepting state.
+        INCOMPLETE
+    }
+}
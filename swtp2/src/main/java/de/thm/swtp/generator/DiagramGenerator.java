@@ -0,0 +1,113 @@
+package de.thm.swtp.generator;
+
+/**
+ * Generates valid PlantUML sequence diagrams of any size together with a class diagram declaring every participant
+ * and called method. The diagrams only depend on the parameters, so benchmarks and stress tests always run on the same
+ * input.
+ * <p>
+ * The sequence diagram consists of blocks nested {@code depth} levels deep, cycling through {@code alt},
+ * {@code loop} and {@code opt} from level to level. The first branch of every block contains the next level, the
+ * innermost level is a single message. Every block has {@code fanOut} entries: an alt block has one branch per entry,
+ * the other blocks send one message per additional entry after the nested level. Blocks are repeated until the
+ * diagram has the given number of messages; with a depth of 0, the diagram is a plain sequence of messages.
+ * @param participants The number of participants, at least 2.
+ * @param messages The number of messages.
+ * @param depth The nesting depth of the blocks.
+ * @param fanOut The number of entries of every block, at least 1.
+ */
+public record DiagramGenerator(int participants, int messages, int depth, int fanOut) {
+
+    private static final String[] GROUPINGS = {"alt", "loop", "opt"};
+    // The number of distinct methods the messages call.
+    private static final int METHODS = 20;
+
+    /**
+     * Checks the parameters.
+     * @throws IllegalArgumentException If a parameter is out of range.
+     */
+    public DiagramGenerator {
+        if (participants < 2 || messages < 0 || depth < 0 || fanOut < 1) {
+            throw new IllegalArgumentException("Invalid diagram parameters");
+        }
+    }
+
+    /**
+     * Returns the name of a participant.
+     * @param index The index of the participant.
+     * @return The name of the participant.
+     */
+    public static String participant(int index) {
+        return "P" + index;
+    }
+
+    /**
+     * Generates the sequence diagram. The blocks are written without recursion, so any depth can be generated.
+     * @return The PlantUML code of the sequence diagram.
+     */
+    public String sequenceDiagram() {
+        var code = new StringBuilder("@startuml\n");
+        for (var i = 0; i < participants; i++) {
+            code.append("participant ").append(participant(i)).append('\n');
+        }
+
+        var written = 0;
+        var block = 0;
+        while (written < messages) {
+            for (var level = 0; level < depth; level++) {
+                code.append(grouping(block, level)).append(" guard").append(level).append('\n');
+            }
+            appendMessage(code, written++);
+            for (var level = depth - 1; level >= 0; level--) {
+                var alt = grouping(block, level).equals("alt");
+                for (var i = 1; i < fanOut && written < messages; i++) {
+                    if (alt) {
+                        code.append("else guard").append(level).append('_').append(i).append('\n');
+                    }
+                    appendMessage(code, written++);
+                }
+                code.append("end\n");
+            }
+            block++;
+        }
+        return code.append("@enduml\n").toString();
+    }
+
+    /**
+     * Generates a class diagram declaring every participant of the sequence diagram. The called methods are declared
+     * by a common base class, so validating a message has to look up an inherited method.
+     * @return The PlantUML code of the class diagram.
+     */
+    public String classDiagram() {
+        var code = new StringBuilder("@startuml\nclass Component {\n");
+        for (var i = 0; i < METHODS; i++) {
+            code.append("+void call").append(i).append("(int x)\n");
+        }
+        code.append("}\n");
+        for (var i = 0; i < participants; i++) {
+            code.append("class ").append(participant(i)).append('\n');
+            code.append("Component <|-- ").append(participant(i)).append('\n');
+        }
+        return code.append("@enduml\n").toString();
+    }
+
+    /**
+     * Returns the grouping of a level of a block.
+     * @param block The index of the block.
+     * @param level The nesting level inside the block.
+     * @return The PlantUML keyword of the grouping.
+     */
+    private static String grouping(int block, int level) {
+        return GROUPINGS[(block + level) % GROUPINGS.length];
+    }
+
+    /**
+     * Appends a message from one participant to the next, calling one of the methods of the class diagram.
+     * @param code The code to append to.
+     * @param index The index of the message.
+     */
+    private void appendMessage(StringBuilder code, int index) {
+        var from = index % participants;
+        code.append(participant(from)).append(" -> ").append(participant((from + 1) % participants))
+                .append(": call").append(index % METHODS).append("(x)\n");
+    }
+}
@@ -0,0 +1,268 @@
+package de.thm.swtp.metrics;
+
+import de.thm.swtp.statediagram.Node;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the wall time and allocated bytes of the phases of transformations and the size of the generated state
+ * diagrams. The phases are 'read', 'parse', 'parseClassDiagram', 'validate', 'transform', 'render' (writing the
+ * PlantUML code or table), 'image' (PlantUML generating the PNG) and 'check' (checking a trace file for
+ * conformance).
+ * <p>
+ * Allocated bytes are those of the thread running the phase only. Blocks transformed in parallel on the common
+ * fork/join pool and the workers checking a trace file are not included, so the figures of 'transform' and 'check'
+ * are too low for large diagrams and logs. The pool is shared by concurrent transformations, so its allocations
+ * cannot be attributed to a single phase.
+ * <p>
+ * Every phase is also emitted as a JDK Flight Recorder event ({@code de.thm.swtp.Phase}) and every state diagram as
+ * a {@code de.thm.swtp.StateDiagram} event, whether or not metrics are collected. Thread-safe, so the
+ * transformations of a whole batch are summed up.
+ */
+public class Metrics {
+
+    private static final Metrics DISABLED = new Metrics(false);
+    // Measures the bytes allocated by the current thread or null if the JVM does not support it.
+    private static final com.sun.management.ThreadMXBean THREADS = findThreadBean();
+
+    private final boolean enabled;
+    // Totals by phase, in the order the phases first ended.
+    private final Map<String, Totals> phases = new LinkedHashMap<>();
+    private int diagrams;
+    private long states;
+    private long edges;
+    private long compositeStates;
+    private int maxDepth;
+    private final LongAdder outputBytes = new LongAdder();
+
+    /**
+     * The totals of a phase.
+     */
+    private static class Totals {
+
+        private int count;
+        private long time;
+        private long allocated;
+    }
+
+    /**
+     * A running phase, which is recorded when it is closed.
+     */
+    public static final class Phase implements AutoCloseable {
+
+        private final Metrics metrics;
+        private final String name;
+        private final PhaseEvent event = new PhaseEvent();
+        // Whether anyone is interested in the phase, otherwise nothing is measured.
+        private final boolean measured;
+        private final long startAllocated;
+        private final long startTime;
+
+        /**
+         * Starts a new phase.
+         * @param metrics The metrics to record the phase in.
+         * @param name The name of the phase.
+         */
+        private Phase(Metrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            measured = metrics.enabled || event.isEnabled();
+            startAllocated = measured ? allocatedBytes() : 0;
+            startTime = System.nanoTime();
+            event.begin();
+        }
+
+        /**
+         * Ends the phase and records its wall time and allocated bytes.
+         */
+        @Override
+        public void close() {
+            if (!measured) {
+                return;
+            }
+            var time = System.nanoTime() - startTime;
+            var allocated = allocatedBytes() - startAllocated;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.allocated = allocated;
+                event.commit();
+            }
+            if (metrics.enabled) {
+                metrics.addPhase(name, time, allocated);
+            }
+        }
+    }
+
+    /**
+     * Creates new, empty metrics.
+     */
+    public Metrics() {
+        this(true);
+    }
+
+    /**
+     * Creates new, empty metrics.
+     * @param enabled Whether phases and state diagrams are collected or only emitted to Flight Recorder.
+     */
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns metrics which collect nothing and only emit Flight Recorder events.
+     * @return The disabled metrics.
+     */
+    public static Metrics disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Returns the thread bean if it can measure the bytes allocated by a thread.
+     * @return The thread bean or null.
+     */
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes the current thread allocated so far.
+     * @return The number of bytes or 0 if the JVM cannot measure it.
+     */
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Starts a phase, which is recorded once it is closed. Meant for try-with-resources.
+     * @param name The name of the phase.
+     * @return The running phase.
+     */
+    public Phase start(String name) {
+        return new Phase(this, name);
+    }
+
+    /**
+     * Adds the measurements of a phase to its totals.
+     * @param name The name of the phase.
+     * @param time The wall time in nanoseconds.
+     * @param allocated The allocated bytes.
+     */
+    private synchronized void addPhase(String name, long time, long allocated) {
+        var totals = phases.computeIfAbsent(name, n -> new Totals());
+        totals.count++;
+        totals.time += time;
+        totals.allocated += allocated;
+    }
+
+    /**
+     * Records the size of a generated state diagram. The diagram is only traversed if metrics are collected or
+     * Flight Recorder records the event.
+     * @param participant The participant the state diagram was generated for.
+     * @param diagram The state diagram.
+     */
+    public void recordDiagram(String participant, Node diagram) {
+        var event = new StateDiagramEvent();
+        if (!enabled && !event.isEnabled()) {
+            return;
+        }
+
+        var statistics = diagram.statistics();
+        if (event.shouldCommit()) {
+            event.participant = participant;
+            event.states = statistics.states();
+            event.edges = statistics.edges();
+            event.compositeStates = statistics.compositeStates();
+            event.maxDepth = statistics.maxDepth();
+            event.commit();
+        }
+        if (enabled) {
+            synchronized (this) {
+                diagrams++;
+                states += statistics.states();
+                edges += statistics.edges();
+                compositeStates += statistics.compositeStates();
+                maxDepth = Math.max(maxDepth, statistics.maxDepth());
+            }
+        }
+    }
+
+    /**
+     * Wraps a stream a state diagram is written to, so the written bytes are counted as output.
+     * @param out The stream.
+     * @return The counting stream or the stream itself if metrics are not collected. Closing it closes the stream.
+     */
+    public OutputStream countOutput(OutputStream out) {
+        if (!enabled) {
+            return out;
+        }
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                outputBytes.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                outputBytes.add(len);
+            }
+        };
+    }
+
+    /**
+     * Formats the metrics as a human-readable table of the phases followed by the size of the state diagrams.
+     * @return The formatted metrics.
+     */
+    public synchronized String toText() {
+        var s = new StringBuilder();
+        s.append(String.format(Locale.ROOT, "%-18s %6s %12s %16s%n", "phase", "count", "time (ms)", "allocated (MB)*"));
+        for (var e : phases.entrySet()) {
+            var totals = e.getValue();
+            s.append(String.format(Locale.ROOT, "%-18s %6d %12.1f %16.1f%n", e.getKey(), totals.count,
+                    totals.time / 1e6, totals.allocated / (1024.0 * 1024.0)));
+        }
+        s.append("* calling thread only, without parallel workers\n");
+        s.append(String.format(Locale.ROOT,
+                "state diagrams: %d, states: %d, edges: %d, composite states: %d, maximum depth: %d, output: %d bytes%n",
+                diagrams, states, edges, compositeStates, maxDepth, outputBytes.sum()));
+        return s.toString();
+    }
+
+    /**
+     * Formats the metrics as a JSON object with the totals of every phase and the size of the state diagrams.
+     * Times are given in milliseconds, allocated bytes are those of the calling thread only.
+     * @return The formatted metrics.
+     */
+    public synchronized String toJson() {
+        var s = new StringBuilder("{\"phases\":[");
+        var first = true;
+        for (var e : phases.entrySet()) {
+            var totals = e.getValue();
+            if (!first) {
+                s.append(',');
+            }
+            first = false;
+            // Phase names are fixed identifiers, so they need no escaping.
+            s.append(String.format(Locale.ROOT, "{\"name\":\"%s\",\"count\":%d,\"timeMillis\":%.3f,"
+                    + "\"callingThreadAllocatedBytes\":%d}",
+                    e.getKey(), totals.count, totals.time / 1e6, totals.allocated));
+        }
+        s.append(String.format(Locale.ROOT,
+                "],\"stateDiagrams\":%d,\"states\":%d,\"edges\":%d,\"compositeStates\":%d,\"maxDepth\":%d,\"outputBytes\":%d}%n",
+                diagrams, states, edges, compositeStates, maxDepth, outputBytes.sum()));
+        return s.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package de.thm.swtp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event of a phase of a transformation, see {@link Metrics}.
+ */
+@Name("de.thm.swtp.Phase")
+@Label("Transformation Phase")
+@Category("SWTP")
+@Description("A phase of transforming a sequence diagram into state diagrams")
+@StackTrace(false)
+class PhaseEvent extends jdk.jfr.Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the thread running the phase, without parallel workers")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,33 @@
+package de.thm.swtp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event of a generated state diagram, see {@link Metrics}.
+ */
+@Name("de.thm.swtp.StateDiagram")
+@Label("State Diagram")
+@Category("SWTP")
+@Description("The size of a generated state diagram")
+@StackTrace(false)
+class StateDiagramEvent extends jdk.jfr.Event {
+
+    @Label("Participant")
+    String participant;
+
+    @Label("States")
+    int states;
+
+    @Label("Edges")
+    int edges;
+
+    @Label("Composite States")
+    int compositeStates;
+
+    @Label("Maximum Depth")
+    int maxDepth;
+}
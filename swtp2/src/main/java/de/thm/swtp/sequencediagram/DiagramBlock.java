@@ -0,0 +1,176 @@
+package de.thm.swtp.sequencediagram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A single diagram of a PlantUML file, from its @startuml line to its @enduml line.
+ * @param name The name of the diagram given after @startuml or its position in the file, starting at 1. Unique within
+ *             the file and safe to use in file names.
+ * @param code The PlantUML code of the diagram.
+ */
+public record DiagramBlock(String name, String code) {
+
+    // Files from this size on are mapped into memory instead of being read into the heap.
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private static final byte[] START = "@startuml".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "@enduml".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Reads all diagrams of a file. Large files are memory-mapped and only the text of the single diagrams is copied
+     * into the heap.
+     * @param file The file.
+     * @return The diagrams in the order of the file.
+     * @throws IOException If the file could not be read.
+     */
+    public static List<DiagramBlock> read(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            if (size >= MAP_THRESHOLD) {
+                return split(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+
+            var bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // Read until the buffer is full or the file ends.
+            }
+            return split(bytes.flip());
+        }
+    }
+
+    /**
+     * Splits PlantUML code into its diagrams.
+     * @param code The PlantUML code.
+     * @return The diagrams in the order of the code.
+     */
+    public static List<DiagramBlock> split(String code) {
+        return split(ByteBuffer.wrap(code.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Splits UTF-8 encoded PlantUML code into its diagrams. The markers are ASCII, which never occurs inside a
+     * multi-byte UTF-8 sequence, so the bytes are scanned without decoding them. Text outside of diagrams is
+     * ignored; code without any @startuml line is returned as a single diagram, so parsing it reports the error.
+     * @param bytes The PlantUML code from the position to the limit of the buffer.
+     * @return The diagrams in the order of the code.
+     */
+    private static List<DiagramBlock> split(ByteBuffer bytes) {
+        var blocks = new ArrayList<DiagramBlock>();
+        var names = new HashSet<String>();
+        var blockStart = -1;
+        String blockName = null;
+        var lineStart = bytes.position();
+        var limit = bytes.limit();
+        if (limit - lineStart >= 3 && bytes.get(lineStart) == (byte) 0xEF && bytes.get(lineStart + 1) == (byte) 0xBB
+                && bytes.get(lineStart + 2) == (byte) 0xBF) {
+            // Byte order mark.
+            lineStart += 3;
+        }
+        while (lineStart < limit) {
+            var lineEnd = lineStart;
+            while (lineEnd < limit && bytes.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            var textStart = lineStart;
+            while (textStart < lineEnd && (bytes.get(textStart) == ' ' || bytes.get(textStart) == '\t')) {
+                textStart++;
+            }
+
+            if (blockStart < 0 && startsWith(bytes, textStart, lineEnd, START)) {
+                blockStart = lineStart;
+                blockName = nameOf(decode(bytes, textStart + START.length, lineEnd));
+            } else if (blockStart >= 0 && startsWith(bytes, textStart, lineEnd, END)) {
+                blocks.add(new DiagramBlock(uniqueName(blockName, blocks.size(), names),
+                        decode(bytes, blockStart, Math.min(lineEnd + 1, limit))));
+                blockStart = -1;
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        if (blockStart >= 0) {
+            // A diagram without @enduml, PlantUML reports the error.
+            blocks.add(new DiagramBlock(uniqueName(blockName, blocks.size(), names), decode(bytes, blockStart, limit)));
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new DiagramBlock("1", decode(bytes, bytes.position(), limit)));
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns whether a line starts with a marker.
+     * @param bytes The code.
+     * @param start The position of the first non-blank character of the line.
+     * @param end The position of the end of the line.
+     * @param marker The marker.
+     * @return Whether the line starts with the marker.
+     */
+    private static boolean startsWith(ByteBuffer bytes, int start, int end, byte[] marker) {
+        if (end - start < marker.length) {
+            return false;
+        }
+        for (var i = 0; i < marker.length; i++) {
+            if (bytes.get(start + i) != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a range of the code.
+     * @param bytes The code.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte.
+     * @return The decoded text.
+     */
+    private static String decode(ByteBuffer bytes, int start, int end) {
+        var text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Extracts the name of a diagram from the rest of its @startuml line, e.g. "name" or "(id=name)".
+     * @param rest The text following @startuml.
+     * @return The name with all characters not allowed in file names replaced or null if the diagram has no name.
+     */
+    private static String nameOf(String rest) {
+        var name = rest.strip();
+        if (name.startsWith("(id=") && name.endsWith(")")) {
+            name = name.substring(4, name.length() - 1).strip();
+        }
+        return name.isEmpty() ? null : name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Returns the name of a diagram in a file, falling back to its position if it has no name or its name is
+     * already taken.
+     * @param name The name given after @startuml or null.
+     * @param index The index of the diagram in the file.
+     * @param names The names of the previous diagrams of the file.
+     * @return The unique name.
+     */
+    private static String uniqueName(String name, int index, HashSet<String> names) {
+        var position = String.valueOf(index + 1);
+        if (name == null) {
+            name = position;
+        }
+        // A position may collide with an explicit name as well.
+        while (!names.add(name)) {
+            name = name + "-" + position;
+        }
+        return name;
+    }
+}
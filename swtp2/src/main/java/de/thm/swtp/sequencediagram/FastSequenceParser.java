@@ -0,0 +1,215 @@
+package de.thm.swtp.sequencediagram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single-pass parser for the subset of PlantUML sequence diagrams the transformer supports: participant declarations,
+ * messages between plain participant names and alt/else/opt/loop/end groupings. Much cheaper than PlantUML, which
+ * runs its preprocessor and builds a full diagram model for every input.
+ * <p>
+ * The parser only accepts input whose meaning is unambiguous. For everything else (aliases, notes, arrow
+ * decorations, preprocessor directives, syntax errors, ...) it gives up, so the caller can fall back to PlantUML.
+ */
+public class FastSequenceParser {
+
+    private static final Set<String> PARTICIPANT_KEYWORDS = Set.of(
+            "participant", "actor", "boundary", "control", "entity", "database", "collections", "queue");
+    private static final Set<String> GROUPING_KEYWORDS = Set.of("alt", "opt", "loop");
+    // Longest first, so a prefix does not hide a longer arrow.
+    private static final String[] ARROWS = {"-->>", "-->", "->>", "->"};
+
+    private final Set<String> participants = new LinkedHashSet<>();
+    private final List<SequenceEvent> events = new ArrayList<>();
+    // Number of groupings that are currently open.
+    private int depth = 0;
+
+    /**
+     * Use {@link #parse(String)}.
+     */
+    private FastSequenceParser() {
+    }
+
+    /**
+     * Parses the first diagram of the given PlantUML code.
+     * @param code The PlantUML code.
+     * @return The sequence diagram or null if the code uses anything beyond the supported subset.
+     */
+    public static SequenceDiagramModel parse(String code) {
+        return new FastSequenceParser().parseDiagram(code);
+    }
+
+    /**
+     * Parses the first diagram of the given PlantUML code.
+     * @param code The PlantUML code.
+     * @return The sequence diagram or null if the code uses anything beyond the supported subset.
+     */
+    private SequenceDiagramModel parseDiagram(String code) {
+        var started = false;
+        var lineStart = 0;
+        while (lineStart < code.length()) {
+            var lineEnd = code.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = code.length();
+            }
+            var line = code.substring(lineStart, lineEnd).strip();
+            lineStart = lineEnd + 1;
+
+            if (!started) {
+                // Like PlantUML, everything before the first diagram is ignored.
+                if (line.startsWith("@start")) {
+                    if (!line.equals("@startuml") && !line.startsWith("@startuml ")) {
+                        return null;
+                    }
+                    started = true;
+                }
+                continue;
+            }
+
+            if (line.isEmpty() || line.startsWith("'")) {
+                continue;
+            }
+            if (line.equals("@enduml")) {
+                return depth == 0 ? new SequenceDiagramModel(List.copyOf(participants), List.copyOf(events)) : null;
+            }
+            if (!parseLine(line)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a single line of the diagram.
+     * @param line The line without leading and trailing whitespace.
+     * @return Whether the line belongs to the supported subset.
+     */
+    private boolean parseLine(String line) {
+        var space = 0;
+        while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+            space++;
+        }
+        var keyword = line.substring(0, space);
+        var rest = line.substring(space).strip();
+
+        if (PARTICIPANT_KEYWORDS.contains(keyword)) {
+            if (identifierEnd(rest, 0) != rest.length() || rest.isEmpty()) {
+                return false;
+            }
+            participants.add(rest);
+            return true;
+        }
+
+        if (GROUPING_KEYWORDS.contains(keyword) || keyword.equals("else")) {
+            if (rest.startsWith("#") || rest.contains("->") || rest.contains("<-")) {
+                // Colored groupings or messages to a participant named like a keyword.
+                return false;
+            }
+            var guard = rest.isEmpty() ? null : rest;
+            if (keyword.equals("else")) {
+                if (depth == 0) {
+                    return false;
+                }
+                events.add(new SequenceEvent.ElseEvent(guard));
+            } else {
+                depth++;
+                events.add(new SequenceEvent.GroupStartEvent(keyword, guard));
+            }
+            return true;
+        }
+
+        if (keyword.equals("end")) {
+            // 'end note', 'end box', ... close other elements.
+            if (!rest.isEmpty() || depth == 0) {
+                return false;
+            }
+            depth--;
+            events.add(new SequenceEvent.EndEvent());
+            return true;
+        }
+
+        return parseMessage(line);
+    }
+
+    /**
+     * Parses a message (from -> to: label).
+     * @param line The line without leading and trailing whitespace.
+     * @return Whether the line is a message of the supported subset.
+     */
+    private boolean parseMessage(String line) {
+        var fromEnd = identifierEnd(line, 0);
+        if (fromEnd == 0) {
+            return false;
+        }
+        var arrowStart = skipWhitespace(line, fromEnd);
+
+        String arrow = null;
+        for (var a : ARROWS) {
+            if (line.startsWith(a, arrowStart)) {
+                arrow = a;
+                break;
+            }
+        }
+        if (arrow == null) {
+            return false;
+        }
+
+        var toStart = arrowStart + arrow.length();
+        if (toStart < line.length() && (line.charAt(toStart) == 'o' || line.charAt(toStart) == 'x')) {
+            // Ambiguous with an arrow head decoration.
+            return false;
+        }
+        toStart = skipWhitespace(line, toStart);
+        var toEnd = identifierEnd(line, toStart);
+        if (toEnd == toStart) {
+            return false;
+        }
+
+        var colon = skipWhitespace(line, toEnd);
+        if (colon >= line.length() || line.charAt(colon) != ':') {
+            return false;
+        }
+        var label = line.substring(colon + 1).strip();
+        if (label.isEmpty() || label.indexOf('\\') >= 0) {
+            // Escapes and line breaks are left to PlantUML.
+            return false;
+        }
+
+        var from = line.substring(0, fromEnd);
+        var to = line.substring(toStart, toEnd);
+        participants.add(from);
+        participants.add(to);
+        events.add(new SequenceEvent.MessageEvent(from, to, label));
+        return true;
+    }
+
+    /**
+     * Returns the end of the participant name starting at the given index.
+     * @param line The line.
+     * @param start The index the name starts at.
+     * @return The index after the last character of the name or start if there is no name.
+     */
+    private static int identifierEnd(String line, int start) {
+        var end = start;
+        while (end < line.length() && (Character.isLetterOrDigit(line.charAt(end)) || line.charAt(end) == '_')) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after the given index.
+     * @param line The line.
+     * @param start The index to start at.
+     * @return The index or the length of the line if only whitespace follows.
+     */
+    private static int skipWhitespace(String line, int start) {
+        var index = start;
+        while (index < line.length() && Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+}
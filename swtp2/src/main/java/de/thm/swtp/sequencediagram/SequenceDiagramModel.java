@@ -0,0 +1,42 @@
+package de.thm.swtp.sequencediagram;
+
+import net.sourceforge.plantuml.sequencediagram.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The participants and events of a sequence diagram, as far as they are needed to generate state diagrams.
+ * @param participants The codes of all participants in the order of their declaration or first use.
+ * @param events The events in the order they appear in the sequence diagram.
+ */
+public record SequenceDiagramModel(List<String> participants, List<SequenceEvent> events) {
+
+    /**
+     * Converts a sequence diagram parsed by PlantUML. Events that do not affect state diagrams (notes, dividers,
+     * ...) are left out.
+     * @param sequenceDiagram The sequence diagram.
+     * @return The model of the sequence diagram.
+     */
+    public static SequenceDiagramModel of(SequenceDiagram sequenceDiagram) {
+        var participants = new ArrayList<String>();
+        for (var p : sequenceDiagram.participants()) {
+            participants.add(p.getCode());
+        }
+
+        var events = new ArrayList<SequenceEvent>();
+        for (var e : sequenceDiagram.events()) {
+            if (e instanceof Message m) {
+                events.add(new SequenceEvent.MessageEvent(m.getParticipant1().getCode(), m.getParticipant2().getCode(),
+                        m.getLabel().get(0).toString()));
+            } else if (e instanceof GroupingStart g) {
+                events.add(new SequenceEvent.GroupStartEvent(g.getTitle(), g.getComment()));
+            } else if (e instanceof Grouping g && g.getType() == GroupingType.ELSE) {
+                events.add(new SequenceEvent.ElseEvent(g.getComment()));
+            } else if (e instanceof Grouping g && g.getType() == GroupingType.END) {
+                events.add(new SequenceEvent.EndEvent());
+            }
+        }
+        return new SequenceDiagramModel(participants, events);
+    }
+}
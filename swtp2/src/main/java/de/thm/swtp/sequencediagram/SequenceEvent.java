@@ -0,0 +1,38 @@
+package de.thm.swtp.sequencediagram;
+
+/**
+ * An event of a sequence diagram which affects the generated state diagrams. Independent of the parser that read
+ * the sequence diagram.
+ */
+public sealed interface SequenceEvent {
+
+    /**
+     * A message sent from one participant to another (from --> to: label).
+     * @param from The code of the sending participant.
+     * @param to The code of the receiving participant.
+     * @param label The first line of the label of the message.
+     */
+    record MessageEvent(String from, String to, String label) implements SequenceEvent {
+    }
+
+    /**
+     * The start of a grouping (alt, opt, loop, ...).
+     * @param type The type of the grouping, e.g. 'alt'.
+     * @param guard The condition of the grouping or null if it has none.
+     */
+    record GroupStartEvent(String type, String guard) implements SequenceEvent {
+    }
+
+    /**
+     * An else inside a grouping.
+     * @param guard The condition of the following branch or null if it has none.
+     */
+    record ElseEvent(String guard) implements SequenceEvent {
+    }
+
+    /**
+     * The end of a grouping.
+     */
+    record EndEvent() implements SequenceEvent {
+    }
+}
@@ -0,0 +1,265 @@
+package de.thm.swtp.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.thm.swtp.TransformationPipeline;
+import de.thm.swtp.cache.ResultCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long-running transformer that keeps the JVM and PlantUML warm and answers requests over HTTP on localhost.
+ * <p>
+ * {@code POST /transform} expects a form-urlencoded body with the fields {@code sequenceDiagram},
+ * {@code targetParticipant}, and optionally {@code classDiagram}, {@code outputType} ('uml', 'image' or 'png',
+ * 'svg', 'table', 'java' or 'binary', defaults to 'uml'), {@code share} ('true' to write copies of identical blocks as
+ * references), {@code optimize} ('true' to remove redundant transitions and wrapper states) and {@code minimize}
+ * ('true' for the minimal deterministic state machine). The response contains the generated state diagram. Invalid
+ * requests are answered with status 400 and the error message, requests exceeding the timeout with status 503.
+ * {@code GET /health} answers with 'ok'.
+ * <p>
+ * One transformation per processor runs at a time, a few more wait in a queue and further requests are answered with
+ * status 503 right away. A timed out transformation is interrupted and stops at the next event or state it generates.
+ * Parsing the sequence diagram, rendering the state diagram and PlantUML itself do not check for interrupts and run to
+ * completion.
+ */
+public class TransformerServer {
+
+    // Used to load and warm up the classes of the transformer and PlantUML before the first request.
+    private static final String WARM_UP_DIAGRAM = """
+            @startuml
+            participant User
+            participant GasPump
+            User --> GasPump: insertCard
+            alt pinOK
+                GasPump --> User: startFuel
+            else
+                GasPump --> User: invalidPin
+            end
+            @enduml
+            """;
+
+    // Number of transformations waiting for a thread per processor.
+    private static final int QUEUED_PER_PROCESSOR = 4;
+
+    private final HttpServer server;
+    // Requests are handled by threads which wait for their transformation with a timeout, one per transformation
+    // running or waiting. Further requests wait for a thread of their own.
+    private final ExecutorService requestThreads;
+    private final ThreadPoolExecutor transformationThreads;
+    private final long timeoutMillis;
+    private final ResultCache cache;
+
+    /**
+     * Creates a new server listening on the loopback interface.
+     * @param port The port to listen on or 0 to pick a free one.
+     * @param timeoutMillis The maximum time a single request may take.
+     * @param cache The cache to serve unchanged inputs from or null.
+     * @throws IOException If the port could not be bound.
+     */
+    public TransformerServer(int port, long timeoutMillis, ResultCache cache) throws IOException {
+        this.timeoutMillis = timeoutMillis;
+        this.cache = cache;
+        var processors = Runtime.getRuntime().availableProcessors();
+        transformationThreads = new ThreadPoolExecutor(processors, processors, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUED_PER_PROCESSOR * processors));
+        requestThreads = Executors.newFixedThreadPool((1 + QUEUED_PER_PROCESSOR) * processors);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(requestThreads);
+        server.createContext("/transform", this::handleTransform);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain; charset=utf-8",
+                "ok".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns the port this server listens on.
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of transformations currently running.
+     * @return The number of transformations.
+     */
+    int getRunningTransformations() {
+        return transformationThreads.getActiveCount();
+    }
+
+    /**
+     * Warms up the transformer and PlantUML and starts answering requests.
+     */
+    public void start() {
+        for (var outputType : new String[]{"uml", "image"}) {
+            try {
+                new TransformationPipeline("GasPump", outputType, null).render(WARM_UP_DIAGRAM);
+            } catch (IOException | RuntimeException e) {
+                // The first request will run into the same problem and report it.
+            }
+        }
+
+        server.start();
+    }
+
+    /**
+     * Stops the server and aborts running transformations.
+     */
+    public void stop() {
+        server.stop(0);
+        requestThreads.shutdownNow();
+        transformationThreads.shutdownNow();
+    }
+
+    /**
+     * Decodes a form-urlencoded request body.
+     * @param body The request body.
+     * @return The fields of the form.
+     * @throws IllegalStateException If the body contains malformed escapes.
+     */
+    static Map<String, String> parseForm(String body) {
+        var fields = new HashMap<String, String>();
+        for (var pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            var separator = pair.indexOf('=');
+            var key = separator < 0 ? pair : pair.substring(0, separator);
+            var value = separator < 0 ? "" : pair.substring(separator + 1);
+            try {
+                fields.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("Malformed form encoding: " + e.getMessage(), e);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Transforms the sequence diagram of a request.
+     * @param form The fields of the request.
+     * @return The generated state diagram in the requested output type.
+     * @throws IOException If the state diagram could not be written.
+     * @throws IllegalStateException If the request is invalid or parsing, validation or the transformation fails.
+     */
+    private byte[] transform(Map<String, String> form) throws IOException {
+        var sequenceDiagram = form.get("sequenceDiagram");
+        var targetParticipant = form.get("targetParticipant");
+        var outputType = form.getOrDefault("outputType", "uml");
+        if (sequenceDiagram == null || targetParticipant == null) {
+            throw new IllegalStateException("sequenceDiagram and targetParticipant are required.");
+        }
+        if (TransformationPipeline.parseOutputTypes(outputType).size() > 1) {
+            throw new IllegalStateException("Only a single output type can be generated per request.");
+        }
+
+        var reduction = Boolean.parseBoolean(form.get("minimize"))
+                ? TransformationPipeline.Reduction.MINIMIZE
+                : Boolean.parseBoolean(form.get("optimize"))
+                ? TransformationPipeline.Reduction.OPTIMIZE
+                : Boolean.parseBoolean(form.get("share"))
+                ? TransformationPipeline.Reduction.SHARE
+                : TransformationPipeline.Reduction.NONE;
+        var pipeline = new TransformationPipeline(targetParticipant, outputType, form.get("classDiagram"), cache,
+                reduction);
+        var stateDiagrams = pipeline.render(sequenceDiagram);
+        if (stateDiagrams.size() > 1 && !pipeline.getOutputTypes().get(0).equals("uml")) {
+            throw new IllegalStateException("Images, tables, Java classes and binary state graphs can only be "
+                    + "generated for a single participant.");
+        }
+
+        // Several state diagrams in uml form one PlantUML file with a block per participant.
+        var out = new ByteArrayOutputStream();
+        for (var stateDiagram : stateDiagrams.values()) {
+            out.write(stateDiagram);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Handles a transformation request.
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response could not be sent.
+     */
+    private void handleTransform(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "text/plain; charset=utf-8", "Use POST".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        Map<String, String> form;
+        try (var in = exchange.getRequestBody()) {
+            form = parseForm(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IllegalStateException e) {
+            respond(exchange, 400, "text/plain; charset=utf-8", e.getMessage().getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        Future<byte[]> task;
+        try {
+            task = transformationThreads.submit(() -> transform(form));
+        } catch (RejectedExecutionException e) {
+            respond(exchange, 503, "text/plain; charset=utf-8", "Server is busy".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        try {
+            var body = task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            var contentType = switch (form.getOrDefault("outputType", "uml").trim()) {
+                case "image", "png" -> "image/png";
+                case "svg" -> "image/svg+xml";
+                case "table" -> "text/tab-separated-values; charset=utf-8";
+                case "java" -> "text/x-java-source; charset=utf-8";
+                case "binary" -> "application/octet-stream";
+                default -> "text/plain; charset=utf-8";
+            };
+            respond(exchange, 200, contentType, body);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            respond(exchange, 503, "text/plain; charset=utf-8",
+                    String.format("Transformation took longer than %d ms", timeoutMillis).getBytes(StandardCharsets.UTF_8));
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            var status = cause instanceof IllegalStateException ? 400 : 500;
+            var message = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+            respond(exchange, status, "text/plain; charset=utf-8", message.getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "text/plain; charset=utf-8", "Server is shutting down".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Sends a response and closes the exchange.
+     * @param exchange The HTTP exchange.
+     * @param status The HTTP status code.
+     * @param contentType The content type of the body.
+     * @param body The body.
+     * @throws IOException If the response could not be sent.
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package de.thm.swtp.statediagram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A state diagram or state machine in a versioned binary format, read directly from a memory-mapped file. Nothing is
+ * deserialized up front: opening a file only checks its header, every accessor reads the mapped tables, so loading
+ * a machine with a million transitions takes as long as mapping the file.
+ * <p>
+ * All numbers are little-endian ints. The file starts with a header of {@value #HEADER_SIZE} bytes: the magic number
+ * "STGB", the version, the flags, the numbers of states, inner states, transitions and triggers, the length of the
+ * name and the length of the string pool, followed by a reserved int. The tables follow in this order:
+ * <ol>
+ *     <li>states: the parent composite state (or {@link #NO_PARENT}) and the flags of every state</li>
+ *     <li>hierarchy: the position of the first inner state of every state plus the end of the last range, followed
+ *     by the inner states sorted by composite state</li>
+ *     <li>transitions: the position of the first transition of every state plus the end of the last range, followed
+ *     by source, target and trigger (or {@link #NO_TRIGGER}) of every transition sorted by source</li>
+ *     <li>triggers: the offset of the text in the string pool, its length and the {@link Symbol.Kind} of every
+ *     trigger and guard</li>
+ *     <li>string pool: the name of the diagram followed by the texts of the triggers, encoded in UTF-8</li>
+ * </ol>
+ * The inner states and transitions of every state are kept in the order they were added, so the file describes
+ * exactly the diagram rendered by {@link CompactStateGraph}.
+ */
+public class BinaryStateGraph {
+
+    // The version written by this class. Files of other versions are rejected.
+    public static final int VERSION = 1;
+    // Flag of files holding a deterministic state machine: state 0 is its start state, end states are accepting.
+    public static final int DETERMINISTIC = 1;
+    // Trigger of transitions without a trigger.
+    public static final int NO_TRIGGER = CompactStateGraph.NO_TRIGGER;
+    // Parent of states which are not contained in a composite state.
+    public static final int NO_PARENT = CompactStateGraph.NO_PARENT;
+
+    // "STGB" read as a little-endian int.
+    private static final int MAGIC = 0x42475453;
+    private static final int HEADER_SIZE = 40;
+    private static final int START_STATE = 1;
+    private static final int END_STATE = 2;
+    private static final int COMPOSITE_STATE = 4;
+
+    private final ByteBuffer buffer;
+    private final int flags;
+    private final int stateCount;
+    private final int innerStateCount;
+    private final int edgeCount;
+    private final int triggerCount;
+    private final String name;
+    // Offsets of the tables.
+    private final int states;
+    private final int innerStateStarts;
+    private final int innerStates;
+    private final int edgeStarts;
+    private final int edges;
+    private final int triggers;
+    private final int strings;
+
+    /**
+     * Writes ints and bytes to a channel through a buffer.
+     */
+    private static class ChannelWriter {
+
+        private final WritableByteChannel out;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Creates a new writer.
+         * @param out The channel to write to.
+         */
+        ChannelWriter(WritableByteChannel out) {
+            this.out = out;
+        }
+
+        /**
+         * Writes an int.
+         * @param value The int.
+         * @throws IOException If writing to the channel fails.
+         */
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        /**
+         * Writes bytes.
+         * @param bytes The bytes.
+         * @throws IOException If writing to the channel fails.
+         */
+        void putBytes(byte[] bytes) throws IOException {
+            var offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                var length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Writes everything buffered to the channel.
+         * @throws IOException If writing to the channel fails.
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads a graph from a buffer.
+     * @param source The buffer holding the file, starting at position 0. Its byte order is not changed.
+     * @throws IllegalStateException If the buffer does not hold a graph of this version.
+     */
+    private BinaryStateGraph(ByteBuffer source) {
+        buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a binary state graph.");
+        }
+        var version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported binary state graph version " + version + ".");
+        }
+
+        flags = buffer.getInt(8);
+        stateCount = buffer.getInt(12);
+        innerStateCount = buffer.getInt(16);
+        edgeCount = buffer.getInt(20);
+        triggerCount = buffer.getInt(24);
+        var nameLength = buffer.getInt(28);
+        var stringBytes = buffer.getInt(32);
+        if (Math.min(Math.min(stateCount, innerStateCount), Math.min(edgeCount, triggerCount)) < 0
+                || nameLength < 0 || nameLength > stringBytes
+                || HEADER_SIZE + 16L * stateCount + 8 + 4L * innerStateCount + 12L * edgeCount + 12L * triggerCount
+                        + stringBytes > buffer.capacity()) {
+            throw new IllegalStateException("Binary state graph is truncated or corrupt.");
+        }
+        // Every offset is within the buffer now.
+        states = HEADER_SIZE;
+        innerStateStarts = states + 8 * stateCount;
+        innerStates = innerStateStarts + 4 * (stateCount + 1);
+        edgeStarts = innerStates + 4 * innerStateCount;
+        edges = edgeStarts + 4 * (stateCount + 1);
+        triggers = edges + 12 * edgeCount;
+        strings = triggers + 12 * triggerCount;
+        name = readString(0, nameLength);
+    }
+
+    /**
+     * Maps a file written by {@link #write(CompactStateGraph, WritableByteChannel)} into memory. The mapping stays
+     * valid after this method returns.
+     * @param file The file.
+     * @return The graph.
+     * @throws IOException If the file could not be mapped.
+     * @throws IllegalStateException If the file does not hold a graph of this version.
+     */
+    public static BinaryStateGraph open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Binary state graph is too large to map.");
+            }
+            return new BinaryStateGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a graph from a buffer, e.g. the body of a response.
+     * @param buffer The buffer holding the file, starting at position 0.
+     * @return The graph.
+     * @throws IllegalStateException If the buffer does not hold a graph of this version.
+     */
+    public static BinaryStateGraph of(ByteBuffer buffer) {
+        return new BinaryStateGraph(buffer);
+    }
+
+    /**
+     * Writes the header and returns the encoded name and trigger texts.
+     * @param out The writer.
+     * @param name The name of the diagram.
+     * @param flags The flags of the file.
+     * @param stateCount The number of states.
+     * @param innerStateCount The number of inner states.
+     * @param edgeCount The number of transitions.
+     * @param symbols The triggers and guards.
+     * @return The name followed by the texts of the triggers, encoded in UTF-8.
+     * @throws IOException If writing to the channel fails.
+     */
+    private static byte[][] writeHeader(ChannelWriter out, String name, int flags, int stateCount,
+                                        int innerStateCount, int edgeCount, List<Symbol> symbols) throws IOException {
+        var strings = new byte[symbols.size() + 1][];
+        strings[0] = name.getBytes(StandardCharsets.UTF_8);
+        var stringBytes = strings[0].length;
+        for (var i = 0; i < symbols.size(); i++) {
+            strings[i + 1] = symbols.get(i).text().getBytes(StandardCharsets.UTF_8);
+            stringBytes += strings[i + 1].length;
+        }
+
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(flags);
+        out.putInt(stateCount);
+        out.putInt(innerStateCount);
+        out.putInt(edgeCount);
+        out.putInt(symbols.size());
+        out.putInt(strings[0].length);
+        out.putInt(stringBytes);
+        out.putInt(0);
+        return strings;
+    }
+
+    /**
+     * Writes the trigger table and the string pool and flushes the writer.
+     * @param out The writer.
+     * @param symbols The triggers and guards.
+     * @param strings The name followed by the texts of the triggers, encoded in UTF-8.
+     * @throws IOException If writing to the channel fails.
+     */
+    private static void writeStrings(ChannelWriter out, List<Symbol> symbols, byte[][] strings) throws IOException {
+        var offset = strings[0].length;
+        for (var i = 0; i < symbols.size(); i++) {
+            out.putInt(offset);
+            out.putInt(strings[i + 1].length);
+            out.putInt(symbols.get(i).kind().ordinal());
+            offset += strings[i + 1].length;
+        }
+        for (var string : strings) {
+            out.putBytes(string);
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes a state diagram to a channel. The channel is not closed.
+     * @param graph The state diagram.
+     * @param channel The channel to write to.
+     * @throws IOException If writing to the channel fails.
+     */
+    public static void write(CompactStateGraph graph, WritableByteChannel channel) throws IOException {
+        var out = new ChannelWriter(channel);
+        var stateCount = graph.getStateCount();
+        var innerStateCount = graph.getInnerStateStart(stateCount);
+        var strings = writeHeader(out, graph.getName(), 0, stateCount, innerStateCount, graph.getEdgeCount(),
+                graph.getTriggers());
+
+        for (var s = 0; s < stateCount; s++) {
+            out.putInt(graph.getParent(s));
+            out.putInt((graph.isStartState(s) ? START_STATE : 0) | (graph.isEndState(s) ? END_STATE : 0)
+                    | (graph.isCompositeState(s) ? COMPOSITE_STATE : 0));
+        }
+        for (var s = 0; s <= stateCount; s++) {
+            out.putInt(graph.getInnerStateStart(s));
+        }
+        for (var i = 0; i < innerStateCount; i++) {
+            out.putInt(graph.getSortedInnerState(i));
+        }
+        for (var s = 0; s <= stateCount; s++) {
+            out.putInt(graph.getEdgeStart(s));
+        }
+        for (var i = 0; i < graph.getEdgeCount(); i++) {
+            var e = graph.getSortedEdge(i);
+            out.putInt(graph.getEdgeSource(e));
+            out.putInt(graph.getEdgeTarget(e));
+            out.putInt(graph.getEdgeTrigger(e));
+        }
+        writeStrings(out, graph.getTriggers(), strings);
+    }
+
+    /**
+     * Writes a deterministic state machine to a channel. State 0 is written as start state, accepting states as end
+     * states and the inputs as triggers. The channel is not closed.
+     * @param machine The state machine.
+     * @param channel The channel to write to.
+     * @throws IOException If writing to the channel fails.
+     */
+    public static void write(DeterministicStateMachine machine, WritableByteChannel channel) throws IOException {
+        var out = new ChannelWriter(channel);
+        var stateCount = machine.getStateCount();
+        var strings = writeHeader(out, machine.getName(), DETERMINISTIC, stateCount, 0,
+                machine.getTransitionCount(), machine.getSymbols());
+
+        for (var s = 0; s < stateCount; s++) {
+            out.putInt(NO_PARENT);
+            out.putInt((s == 0 ? START_STATE : 0) | (machine.isAccepting(s) ? END_STATE : 0));
+        }
+        for (var s = 0; s <= stateCount; s++) {
+            out.putInt(0);
+        }
+        for (var s = 0; s <= stateCount; s++) {
+            out.putInt(machine.getTransitionStart(s));
+        }
+        for (var s = 0; s < stateCount; s++) {
+            for (var t = machine.getTransitionStart(s); t < machine.getTransitionStart(s + 1); t++) {
+                out.putInt(s);
+                out.putInt(machine.getTransitionTarget(t));
+                out.putInt(machine.getTransitionInput(t));
+            }
+        }
+        writeStrings(out, machine.getSymbols(), strings);
+    }
+
+    /**
+     * Decodes a string of the string pool.
+     * @param offset The offset of the string in the pool.
+     * @param length The length of the encoded string.
+     * @return The string.
+     */
+    private String readString(int offset, int length) {
+        var bytes = new byte[length];
+        buffer.get(strings + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the name of the diagram, which is the name of the participant it was generated for.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns whether this file holds a deterministic state machine without composite states and empty transitions.
+     * @return Whether the graph is deterministic.
+     */
+    public boolean isDeterministic() {
+        return (flags & DETERMINISTIC) != 0;
+    }
+
+    /**
+     * Returns the number of states.
+     * @return The number of states.
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Returns whether a state is a start state.
+     * @param state The ID of the state.
+     * @return Whether the state is a start state.
+     */
+    public boolean isStartState(int state) {
+        return (buffer.getInt(states + 8 * state + 4) & START_STATE) != 0;
+    }
+
+    /**
+     * Returns whether a state is an end state, which is an accepting state of deterministic machines.
+     * @param state The ID of the state.
+     * @return Whether the state is an end state.
+     */
+    public boolean isEndState(int state) {
+        return (buffer.getInt(states + 8 * state + 4) & END_STATE) != 0;
+    }
+
+    /**
+     * Returns whether a state is a composite state.
+     * @param state The ID of the state.
+     * @return Whether the state is a composite state.
+     */
+    public boolean isCompositeState(int state) {
+        return (buffer.getInt(states + 8 * state + 4) & COMPOSITE_STATE) != 0;
+    }
+
+    /**
+     * Returns the composite state a state is contained in.
+     * @param state The ID of the state.
+     * @return The ID of the composite state or {@link #NO_PARENT}.
+     */
+    public int getParent(int state) {
+        return buffer.getInt(states + 8 * state);
+    }
+
+    /**
+     * Returns the number of states contained in composite states.
+     * @return The number of inner states.
+     */
+    public int getInnerStateCount() {
+        return innerStateCount;
+    }
+
+    /**
+     * Returns the position of the first inner state of a composite state. The inner states of a state end where the
+     * ones of the next state start.
+     * @param state The ID of the state or the number of states for the end of the last range.
+     * @return The position, see {@link #getInnerState(int)}.
+     */
+    public int getInnerStateStart(int state) {
+        return buffer.getInt(innerStateStarts + 4 * state);
+    }
+
+    /**
+     * Returns an inner state by its position.
+     * @param position The position.
+     * @return The ID of the inner state.
+     */
+    public int getInnerState(int position) {
+        return buffer.getInt(innerStates + 4 * position);
+    }
+
+    /**
+     * Returns the number of transitions.
+     * @return The number of transitions.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the first transition of a state. The transitions of a state end where the ones of the next state start.
+     * @param state The ID of the state or the number of states for the end of the last range.
+     * @return The index of the transition.
+     */
+    public int getEdgeStart(int state) {
+        return buffer.getInt(edgeStarts + 4 * state);
+    }
+
+    /**
+     * Returns the state a transition starts at.
+     * @param edge The index of the transition.
+     * @return The ID of the state.
+     */
+    public int getEdgeSource(int edge) {
+        return buffer.getInt(edges + 12 * edge);
+    }
+
+    /**
+     * Returns the state a transition leads to.
+     * @param edge The index of the transition.
+     * @return The ID of the state.
+     */
+    public int getEdgeTarget(int edge) {
+        return buffer.getInt(edges + 12 * edge + 4);
+    }
+
+    /**
+     * Returns the trigger of a transition.
+     * @param edge The index of the transition.
+     * @return The index of the trigger or {@link #NO_TRIGGER}.
+     */
+    public int getEdgeTrigger(int edge) {
+        return buffer.getInt(edges + 12 * edge + 8);
+    }
+
+    /**
+     * Returns the number of distinct triggers and guards.
+     * @return The number of triggers.
+     */
+    public int getTriggerCount() {
+        return triggerCount;
+    }
+
+    /**
+     * Returns the text of a trigger or guard, decoded from the string pool.
+     * @param trigger The index of the trigger.
+     * @return The text as written in the state diagram.
+     */
+    public String getTriggerText(int trigger) {
+        return readString(buffer.getInt(triggers + 12 * trigger), buffer.getInt(triggers + 12 * trigger + 4));
+    }
+
+    /**
+     * Returns whether a trigger is a message or a guard.
+     * @param trigger The index of the trigger.
+     * @return The kind of the trigger.
+     */
+    public Symbol.Kind getTriggerKind(int trigger) {
+        return Symbol.Kind.values()[buffer.getInt(triggers + 12 * trigger + 8)];
+    }
+}
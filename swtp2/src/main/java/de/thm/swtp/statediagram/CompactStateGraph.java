@@ -0,0 +1,498 @@
+package de.thm.swtp.statediagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A state diagram stored in primitive arrays instead of one object per state and transition. Transitions are kept
+ * as parallel arrays of source, target and trigger index, triggers are looked up in a table, start, end and composite
+ * flags are bit sets and every state refers to the composite state containing it by index.
+ * <p>
+ * A million transitions take about a dozen bytes each. States are identified by their IDs, which must be added
+ * consecutively starting at 0. Renders exactly like the equivalent {@link DiagramNode}. Building is not thread-safe,
+ * but a finished graph can be rendered by several threads at once.
+ */
+public class CompactStateGraph extends Node implements StateGraphSink {
+
+    // Trigger index of transitions without a trigger.
+    public static final int NO_TRIGGER = -1;
+    // Parent index of states which are not contained in a composite state.
+    public static final int NO_PARENT = -1;
+
+    private final String name;
+
+    private int stateCount = 0;
+    private final BitSet startStates = new BitSet();
+    private final BitSet endStates = new BitSet();
+    private final BitSet compositeStates = new BitSet();
+    private int[] parents = new int[16];
+    // States added to composite states, in the order they were added.
+    private int[] innerStates = new int[16];
+    private int innerStateCount = 0;
+
+    private int edgeCount = 0;
+    private int[] edgeSources = new int[16];
+    private int[] edgeTargets = new int[16];
+    private int[] edgeTriggers = new int[16];
+    private final List<Symbol> triggers = new ArrayList<>();
+    private final HashMap<Symbol, Integer> triggerIndices = new HashMap<>();
+
+    // Built on the first traversal: the inner states and outgoing transitions of every state as ranges into
+    // arrays sorted by state, in the order they were added.
+    private boolean indexed = false;
+    private int[] innerStateStart;
+    private int[] sortedInnerStates;
+    private int[] edgeStart;
+    private int[] sortedEdges;
+
+    /**
+     * The states whose inner states and transitions are currently being written, stored in parallel arrays.
+     */
+    private static class RenderStack {
+
+        private int[] states = new int[16];
+        // Position of the next inner state to write or -1 once all inner states are written.
+        private int[] innerStates = new int[16];
+        // Position of the next transition to write.
+        private int[] edges = new int[16];
+        private int size = 0;
+
+        /**
+         * Pushes a state.
+         * @param state The state.
+         * @param innerState The position of its first inner state.
+         * @param edge The position of its first transition.
+         */
+        void push(int state, int innerState, int edge) {
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size * 2);
+                innerStates = Arrays.copyOf(innerStates, size * 2);
+                edges = Arrays.copyOf(edges, size * 2);
+            }
+            states[size] = state;
+            innerStates[size] = innerState;
+            edges[size] = edge;
+            size++;
+        }
+    }
+
+    /**
+     * Creates a new empty graph.
+     * @param name The name of the state diagram, which is the name of the participant it is generated for.
+     */
+    public CompactStateGraph(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this state diagram.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a state with the next ID.
+     * @param id The ID of the state, which must be the number of states added so far.
+     * @throws IllegalArgumentException If the ID is not the next one.
+     */
+    private void addState(int id) {
+        if (id != stateCount) {
+            throw new IllegalArgumentException("State IDs must be added consecutively");
+        }
+        if (stateCount == parents.length) {
+            parents = Arrays.copyOf(parents, stateCount * 2);
+        }
+        parents[stateCount++] = NO_PARENT;
+        indexed = false;
+    }
+
+    /**
+     * Adds a simple state.
+     * @param id The ID of the state, which must be the number of states added so far.
+     * @param startState Whether the state is a start state.
+     * @param endState Whether the state is an end state.
+     */
+    @Override
+    public void addState(int id, boolean startState, boolean endState) {
+        addState(id);
+        startStates.set(id, startState);
+        endStates.set(id, endState);
+    }
+
+    /**
+     * Adds a composite state.
+     * @param id The ID of the state, which must be the number of states added so far.
+     */
+    @Override
+    public void addCompositeState(int id) {
+        addState(id);
+        compositeStates.set(id);
+    }
+
+    /**
+     * Adds a state to the content of a composite state.
+     * @param compositeState The ID of the composite state.
+     * @param state The ID of the inner state.
+     * @throws IllegalArgumentException If the state is already contained in a composite state.
+     */
+    @Override
+    public void addInnerState(int compositeState, int state) {
+        if (parents[state] != NO_PARENT) {
+            throw new IllegalArgumentException("State S" + state + " is already contained in a composite state");
+        }
+        parents[state] = compositeState;
+        if (innerStateCount == innerStates.length) {
+            innerStates = Arrays.copyOf(innerStates, innerStateCount * 2);
+        }
+        innerStates[innerStateCount++] = state;
+        indexed = false;
+    }
+
+    /**
+     * Adds a transition between two states.
+     * @param source The ID of the state the transition starts at.
+     * @param target The ID of the state the transition leads to.
+     * @param trigger The trigger or guard of the transition or null if it does not require an input (epsilon).
+     */
+    @Override
+    public void addTransition(int source, int target, Symbol trigger) {
+        if (edgeCount == edgeSources.length) {
+            edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+            edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            edgeTriggers = Arrays.copyOf(edgeTriggers, edgeCount * 2);
+        }
+        edgeSources[edgeCount] = source;
+        edgeTargets[edgeCount] = target;
+        edgeTriggers[edgeCount] = trigger != null ? internTrigger(trigger) : NO_TRIGGER;
+        edgeCount++;
+        indexed = false;
+    }
+
+    /**
+     * Returns the index of a trigger in the trigger table, adding it if necessary.
+     * @param trigger The trigger.
+     * @return The index.
+     */
+    private int internTrigger(Symbol trigger) {
+        var index = triggerIndices.get(trigger);
+        if (index == null) {
+            index = triggers.size();
+            triggers.add(trigger);
+            triggerIndices.put(trigger, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of states.
+     * @return The number of states.
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Returns whether a state is a start state.
+     * @param state The ID of the state.
+     * @return Whether the state is a start state.
+     */
+    public boolean isStartState(int state) {
+        return startStates.get(state);
+    }
+
+    /**
+     * Returns whether a state is an end state.
+     * @param state The ID of the state.
+     * @return Whether the state is an end state.
+     */
+    public boolean isEndState(int state) {
+        return endStates.get(state);
+    }
+
+    /**
+     * Returns whether a state is a composite state.
+     * @param state The ID of the state.
+     * @return Whether the state is a composite state.
+     */
+    public boolean isCompositeState(int state) {
+        return compositeStates.get(state);
+    }
+
+    /**
+     * Returns the composite state a state was added to.
+     * @param state The ID of the state.
+     * @return The ID of the composite state or {@link #NO_PARENT}.
+     */
+    public int getParent(int state) {
+        return parents[state];
+    }
+
+    /**
+     * Returns the number of transitions.
+     * @return The number of transitions.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the state a transition starts at.
+     * @param edge The index of the transition.
+     * @return The ID of the state.
+     */
+    public int getEdgeSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    /**
+     * Returns the state a transition leads to.
+     * @param edge The index of the transition.
+     * @return The ID of the state.
+     */
+    public int getEdgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    /**
+     * Returns the trigger of a transition.
+     * @param edge The index of the transition.
+     * @return The index of the trigger in the trigger table or {@link #NO_TRIGGER}.
+     */
+    public int getEdgeTrigger(int edge) {
+        return edgeTriggers[edge];
+    }
+
+    /**
+     * Returns the triggers and guards of all transitions.
+     * @return The trigger table.
+     */
+    public List<Symbol> getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * Returns the position of the first inner state of a composite state among the inner states sorted by composite
+     * state. The inner states of a state end where the ones of the next state start.
+     * @param state The ID of the state or the number of states for the end of the last range.
+     * @return The position.
+     */
+    int getInnerStateStart(int state) {
+        index();
+        return innerStateStart[state];
+    }
+
+    /**
+     * Returns an inner state by its position among the inner states sorted by composite state, in the order they
+     * were added.
+     * @param position The position.
+     * @return The ID of the inner state.
+     */
+    int getSortedInnerState(int position) {
+        index();
+        return sortedInnerStates[position];
+    }
+
+    /**
+     * Returns the position of the first transition of a state among the transitions sorted by source. The
+     * transitions of a state end where the ones of the next state start.
+     * @param state The ID of the state or the number of states for the end of the last range.
+     * @return The position.
+     */
+    int getEdgeStart(int state) {
+        index();
+        return edgeStart[state];
+    }
+
+    /**
+     * Returns a transition by its position among the transitions sorted by source, in the order they were added.
+     * @param position The position.
+     * @return The index of the transition.
+     */
+    int getSortedEdge(int position) {
+        index();
+        return sortedEdges[position];
+    }
+
+    /**
+     * Sorts the inner states and transitions by state, keeping the order they were added in.
+     */
+    private synchronized void index() {
+        if (indexed) {
+            return;
+        }
+
+        innerStateStart = new int[stateCount + 1];
+        sortedInnerStates = new int[innerStateCount];
+        for (var i = 0; i < innerStateCount; i++) {
+            innerStateStart[parents[innerStates[i]] + 1]++;
+        }
+        for (var s = 0; s < stateCount; s++) {
+            innerStateStart[s + 1] += innerStateStart[s];
+        }
+        var next = Arrays.copyOf(innerStateStart, stateCount);
+        for (var i = 0; i < innerStateCount; i++) {
+            sortedInnerStates[next[parents[innerStates[i]]]++] = innerStates[i];
+        }
+
+        edgeStart = new int[stateCount + 1];
+        sortedEdges = new int[edgeCount];
+        for (var e = 0; e < edgeCount; e++) {
+            edgeStart[edgeSources[e] + 1]++;
+        }
+        for (var s = 0; s < stateCount; s++) {
+            edgeStart[s + 1] += edgeStart[s];
+        }
+        next = Arrays.copyOf(edgeStart, stateCount);
+        for (var e = 0; e < edgeCount; e++) {
+            sortedEdges[next[edgeSources[e]]++] = e;
+        }
+
+        indexed = true;
+    }
+
+    /**
+     * Writes the name of a state as used in a transition, which is [*] for start and end states.
+     * @param out The sink to write to.
+     * @param state The ID of the state.
+     * @param pseudoState Whether the state is represented by the [*] pseudo state.
+     * @throws IOException If writing to the sink fails.
+     */
+    private static void renderName(Appendable out, int state, boolean pseudoState) throws IOException {
+        if (pseudoState) {
+            out.append("[*]");
+        } else {
+            out.append('S').append(Integer.toString(state));
+        }
+    }
+
+    /**
+     * Starts writing a state and pushes it on the render stack if its content has to be written. Composite states
+     * are only written once.
+     * @param state The ID of the state.
+     * @param out The sink to write to.
+     * @param stack The render stack.
+     * @param rendered The composite states written so far.
+     * @throws IOException If writing to the sink fails.
+     */
+    private void beginFrame(int state, Appendable out, RenderStack stack, BitSet rendered) throws IOException {
+        if (compositeStates.get(state)) {
+            if (rendered.get(state)) {
+                return;
+            }
+            rendered.set(state);
+            out.append("state S").append(Integer.toString(state)).append(" {\n");
+        }
+        stack.push(state, innerStateStart[state], edgeStart[state]);
+    }
+
+    /**
+     * Writes the states of this graph in the same order as {@link StateNode#render(Appendable)}, starting at the
+     * first state.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    private void renderStates(Appendable out) throws IOException {
+        index();
+        var stack = new RenderStack();
+        var rendered = new BitSet(stateCount);
+        beginFrame(0, out, stack, rendered);
+
+        while (stack.size > 0) {
+            var top = stack.size - 1;
+            var state = stack.states[top];
+
+            if (stack.innerStates[top] >= 0 && stack.innerStates[top] < innerStateStart[state + 1]) {
+                beginFrame(sortedInnerStates[stack.innerStates[top]++], out, stack, rendered);
+            } else if (stack.innerStates[top] >= 0) {
+                stack.innerStates[top] = -1;
+                if (compositeStates.get(state)) {
+                    out.append("}\n");
+                }
+            } else if (stack.edges[top] < edgeStart[state + 1]) {
+                var e = sortedEdges[stack.edges[top]++];
+                if (stack.edges[top] == edgeStart[state + 1]) {
+                    // Nothing is left to write for this state, which keeps the stack flat for long sequences.
+                    stack.size--;
+                }
+
+                var target = edgeTargets[e];
+                renderName(out, state, startStates.get(state));
+                out.append(" --> ");
+                renderName(out, target, endStates.get(target));
+                if (edgeTriggers[e] != NO_TRIGGER) {
+                    out.append(": ").append(triggers.get(edgeTriggers[e]).text());
+                }
+                out.append('\n');
+
+                beginFrame(target, out, stack, rendered);
+            } else {
+                stack.size--;
+            }
+        }
+    }
+
+    /**
+     * Writes this state diagram to the given sink as expected by PlantUML.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    @Override
+    public void render(Appendable out) throws IOException {
+        out.append("@startuml\n");
+        out.append("hide empty description\n");
+        out.append("state ").append(name).append(" {\n");
+        if (stateCount > 0) {
+            renderStates(out);
+        }
+        out.append("}\n");
+        out.append("@enduml\n");
+    }
+
+    /**
+     * Counts the states and transitions of this state diagram.
+     * @return The statistics of the state diagram.
+     */
+    @Override
+    public GraphStatistics statistics() {
+        var maxDepth = 0;
+        if (stateCount > 0) {
+            index();
+            // The number of composite states every state is written in: inner states are written inside their
+            // composite state, the targets of transitions next to the source.
+            var levels = new int[stateCount];
+            Arrays.fill(levels, -1);
+            var stack = new int[stateCount];
+            var size = 0;
+            levels[0] = 0;
+            stack[size++] = 0;
+            while (size > 0) {
+                var state = stack[--size];
+                var level = levels[state];
+                if (compositeStates.get(state)) {
+                    maxDepth = Math.max(maxDepth, level + 1);
+                }
+                for (var i = innerStateStart[state]; i < innerStateStart[state + 1]; i++) {
+                    var innerState = sortedInnerStates[i];
+                    if (levels[innerState] < 0) {
+                        levels[innerState] = level + 1;
+                        stack[size++] = innerState;
+                    }
+                }
+                for (var i = edgeStart[state]; i < edgeStart[state + 1]; i++) {
+                    var target = edgeTargets[sortedEdges[i]];
+                    if (levels[target] < 0) {
+                        levels[target] = level;
+                        stack[size++] = target;
+                    }
+                }
+            }
+        }
+        return new GraphStatistics(stateCount, edgeCount, compositeStates.cardinality(), maxDepth);
+    }
+}
@@ -0,0 +1,897 @@
+package de.thm.swtp.statediagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A deterministic finite state machine over the triggers and guards of a state diagram, without composite states and
+ * empty transitions. {@link #determinize(CompactStateGraph)} flattens the hierarchy of a state diagram and builds the
+ * machine by subset construction, {@link #minimize()} reduces it to the unique minimal machine.
+ * <p>
+ * A state diagram accepts a sequence of triggers and guards if its top-level end state can be reached by taking them
+ * in order, with any number of empty transitions in between. Entering a composite state enters its start states,
+ * reaching an end state inside a composite state completes it and continues with the transitions of the composite
+ * state. Transitions with the same text are the same input. Missing transitions reject the input.
+ * <p>
+ * The state 0 is the start state. The states of a minimal machine are numbered in breadth-first order, taking the
+ * inputs in alphabetical order, so equivalent diagrams result in identical minimal machines.
+ */
+public class DeterministicStateMachine extends Node {
+
+    // Target of missing transitions.
+    public static final int NO_TRANSITION = -1;
+
+    private final String name;
+    // One symbol per input, sorted by text.
+    private final List<Symbol> symbols;
+    private final int stateCount;
+    private final BitSet acceptingStates;
+    // The transitions of every state as a range into the parallel arrays, sorted by input.
+    private final int[] transitionStart;
+    private final int[] transitionInputs;
+    private final int[] transitionTargets;
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int size = 0;
+
+        /**
+         * Appends a value.
+         * @param value The value.
+         */
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Returns a copy of the values.
+         * @return The values.
+         */
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Flattens a state diagram into a nondeterministic machine and builds the deterministic machine by subset
+     * construction. The states of the flattened machine are the states of the diagram, where a composite state
+     * stands for the composite state being completed, and an additional accepting state.
+     */
+    private static class SubsetConstruction {
+
+        private final CompactStateGraph graph;
+        private final int accept;
+        // The transitions of every state of the diagram as a range into an array of transition indices.
+        private final int[] edgeStart;
+        private final int[] edges;
+        // The start states inside every composite state as a range into an array of states.
+        private final int[] startStateStart;
+        private final int[] startStates;
+        // The composite state every state is written in or NO_PARENT for the top level.
+        private final int[] scopes;
+        // The input of every trigger of the diagram.
+        private final int[] inputs;
+        private final List<Symbol> symbols = new ArrayList<>();
+
+        // Members of the subset being built, one bit per state, which prevents adding a state twice. Not a BitSet, as
+        // clearing its highest bit scans the whole set.
+        private final long[] members;
+        private final IntList stack = new IntList();
+        private final IntList closure = new IntList();
+
+        // All subsets found so far, stored one after another, and a hash table of their indices.
+        private int[] pool = new int[1024];
+        private final IntList subsetStart = new IntList();
+        private int[] table = new int[1024];
+
+        /**
+         * Prepares the subset construction of a state diagram.
+         * @param graph The state diagram.
+         */
+        SubsetConstruction(CompactStateGraph graph) {
+            this.graph = graph;
+            var stateCount = graph.getStateCount();
+            accept = stateCount;
+            members = new long[(stateCount >> 6) + 1];
+
+            edgeStart = new int[stateCount + 1];
+            edges = new int[graph.getEdgeCount()];
+            for (var e = 0; e < graph.getEdgeCount(); e++) {
+                edgeStart[graph.getEdgeSource(e) + 1]++;
+            }
+            startStateStart = new int[stateCount + 1];
+            for (var s = 0; s < stateCount; s++) {
+                edgeStart[s + 1] += edgeStart[s];
+                if (graph.getParent(s) != CompactStateGraph.NO_PARENT && graph.isStartState(s)) {
+                    startStateStart[graph.getParent(s) + 1]++;
+                }
+            }
+            var next = Arrays.copyOf(edgeStart, stateCount);
+            for (var e = 0; e < graph.getEdgeCount(); e++) {
+                edges[next[graph.getEdgeSource(e)]++] = e;
+            }
+            for (var s = 0; s < stateCount; s++) {
+                startStateStart[s + 1] += startStateStart[s];
+            }
+            startStates = new int[startStateStart[stateCount]];
+            next = Arrays.copyOf(startStateStart, stateCount);
+            for (var s = 0; s < stateCount; s++) {
+                if (graph.getParent(s) != CompactStateGraph.NO_PARENT && graph.isStartState(s)) {
+                    startStates[next[graph.getParent(s)]++] = s;
+                }
+            }
+
+            scopes = findScopes();
+
+            // Triggers with the same text are the same input.
+            var triggers = graph.getTriggers();
+            var order = new Integer[triggers.size()];
+            for (var i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> triggers.get(i).text()));
+            inputs = new int[triggers.size()];
+            for (var i : order) {
+                var symbol = triggers.get(i);
+                if (symbols.isEmpty() || !symbols.get(symbols.size() - 1).text().equals(symbol.text())) {
+                    symbols.add(symbol);
+                }
+                inputs[i] = symbols.size() - 1;
+            }
+        }
+
+        /**
+         * Finds the composite state every state is written in, like the state diagram is rendered: inner states are
+         * written in their composite state, states reached by a transition in the scope of the transition's source.
+         * @return The scope of every state.
+         */
+        private int[] findScopes() {
+            var stateCount = graph.getStateCount();
+            var scopes = new int[stateCount];
+            var visited = new BitSet(stateCount);
+            var pending = new IntList();
+            var innerStates = new IntList[stateCount];
+            for (var s = 0; s < stateCount; s++) {
+                var parent = graph.getParent(s);
+                if (parent != CompactStateGraph.NO_PARENT) {
+                    if (innerStates[parent] == null) {
+                        innerStates[parent] = new IntList();
+                    }
+                    innerStates[parent].add(s);
+                }
+            }
+
+            if (stateCount > 0) {
+                scopes[0] = CompactStateGraph.NO_PARENT;
+                visited.set(0);
+                pending.add(0);
+            }
+            while (pending.size > 0) {
+                var state = pending.values[--pending.size];
+                if (innerStates[state] != null) {
+                    for (var i = 0; i < innerStates[state].size; i++) {
+                        var innerState = innerStates[state].values[i];
+                        if (!visited.get(innerState)) {
+                            visited.set(innerState);
+                            scopes[innerState] = state;
+                            pending.add(innerState);
+                        }
+                    }
+                }
+                for (var i = edgeStart[state]; i < edgeStart[state + 1]; i++) {
+                    var target = graph.getEdgeTarget(edges[i]);
+                    if (!graph.isEndState(target) && !visited.get(target)) {
+                        visited.set(target);
+                        scopes[target] = scopes[state];
+                        pending.add(target);
+                    }
+                }
+            }
+            return scopes;
+        }
+
+        /**
+         * Adds the states a transition of the diagram leads to to the stack, unless they are members already.
+         * @param source The state the transition starts at.
+         * @param edge The transition.
+         */
+        private void follow(int source, int edge) {
+            var target = graph.getEdgeTarget(edge);
+            if (graph.isEndState(target)) {
+                push(scopes[source] == CompactStateGraph.NO_PARENT ? accept : scopes[source]);
+            } else if (graph.isCompositeState(target)) {
+                for (var i = startStateStart[target]; i < startStateStart[target + 1]; i++) {
+                    push(startStates[i]);
+                }
+            } else {
+                push(target);
+            }
+        }
+
+        /**
+         * Pushes a state on the stack unless it is a member of the subset being built already.
+         * @param state The state.
+         */
+        private void push(int state) {
+            var bit = 1L << state;
+            if ((members[state >> 6] & bit) == 0) {
+                members[state >> 6] |= bit;
+                stack.add(state);
+            }
+        }
+
+        /**
+         * Completes the subset being built with all states reachable by empty transitions and clears it.
+         * @return The sorted members of the subset.
+         */
+        private int[] closeSubset() {
+            while (stack.size > 0) {
+                var state = stack.values[--stack.size];
+                closure.add(state);
+                if (state == accept) {
+                    continue;
+                }
+                for (var i = edgeStart[state]; i < edgeStart[state + 1]; i++) {
+                    if (graph.getEdgeTrigger(edges[i]) == CompactStateGraph.NO_TRIGGER) {
+                        follow(state, edges[i]);
+                    }
+                }
+            }
+
+            var subset = closure.toArray();
+            for (var state : subset) {
+                members[state >> 6] = 0;
+            }
+            closure.size = 0;
+            Arrays.sort(subset);
+            return subset;
+        }
+
+        /**
+         * Returns the index of a subset, adding it if it has not been found before.
+         * @param subset The sorted members of the subset.
+         * @return The index of the subset.
+         */
+        private int indexOf(int[] subset) {
+            var mask = table.length - 1;
+            for (var slot = slotOf(Arrays.hashCode(subset)); ; slot = (slot + 1) & mask) {
+                var index = table[slot] - 1;
+                if (index < 0) {
+                    break;
+                }
+                var start = subsetStart.values[index];
+                if (subsetStart.values[index + 1] == start + subset.length
+                        && Arrays.equals(pool, start, start + subset.length, subset, 0, subset.length)) {
+                    return index;
+                }
+            }
+
+            var index = subsetStart.size - 1;
+            var start = subsetStart.values[index];
+            if (start + subset.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, start + subset.length));
+            }
+            System.arraycopy(subset, 0, pool, start, subset.length);
+            subsetStart.add(start + subset.length);
+            if (index * 2 >= table.length) {
+                rehash();
+            }
+            insert(index);
+            return index;
+        }
+
+        /**
+         * Adds a subset to the hash table.
+         * @param index The index of the subset.
+         */
+        private void insert(int index) {
+            var mask = table.length - 1;
+            var start = subsetStart.values[index];
+            var hash = 1;
+            for (var i = start; i < subsetStart.values[index + 1]; i++) {
+                hash = 31 * hash + pool[i];
+            }
+            var slot = slotOf(hash);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+
+        /**
+         * Returns the first slot of the hash table to look for a subset in. The hash is spread over all bits first,
+         * as the hashes of similar subsets differ in the lowest bits only.
+         * @param hash The hash of the subset.
+         * @return The slot.
+         */
+        private int slotOf(int hash) {
+            return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(table.length));
+        }
+
+        /**
+         * Doubles the size of the hash table.
+         */
+        private void rehash() {
+            table = new int[table.length * 2];
+            for (var i = 0; i < subsetStart.size - 2; i++) {
+                insert(i);
+            }
+        }
+
+        /**
+         * Builds the deterministic machine. Only subsets reachable from the start state are built.
+         * @return The machine.
+         */
+        DeterministicStateMachine run() {
+            var accepting = new BitSet();
+            var transitionStart = new IntList();
+            var transitionInputs = new IntList();
+            var transitionTargets = new IntList();
+
+            // Targets of the transitions of the current subset by input.
+            var targets = new IntList[symbols.size()];
+            var usedInputs = new IntList();
+
+            subsetStart.add(0);
+            if (graph.getStateCount() > 0) {
+                push(0);
+            }
+            indexOf(closeSubset());
+
+            for (var index = 0; index < subsetStart.size - 1; index++) {
+                StateDiagramTransformer.stopIfInterrupted(index);
+                transitionStart.add(transitionTargets.size);
+                var subset = Arrays.copyOfRange(pool, subsetStart.values[index], subsetStart.values[index + 1]);
+
+                for (var state : subset) {
+                    if (state == accept) {
+                        accepting.set(index);
+                        continue;
+                    }
+                    for (var i = edgeStart[state]; i < edgeStart[state + 1]; i++) {
+                        var trigger = graph.getEdgeTrigger(edges[i]);
+                        if (trigger == CompactStateGraph.NO_TRIGGER) {
+                            continue;
+                        }
+                        var input = inputs[trigger];
+                        if (targets[input] == null) {
+                            targets[input] = new IntList();
+                        }
+                        if (targets[input].size == 0) {
+                            usedInputs.add(input);
+                        }
+                        targets[input].add(state);
+                        targets[input].add(edges[i]);
+                    }
+                }
+
+                Arrays.sort(usedInputs.values, 0, usedInputs.size);
+                for (var i = 0; i < usedInputs.size; i++) {
+                    var input = usedInputs.values[i];
+                    var list = targets[input];
+                    for (var j = 0; j < list.size; j += 2) {
+                        follow(list.values[j], list.values[j + 1]);
+                    }
+                    list.size = 0;
+                    transitionInputs.add(input);
+                    transitionTargets.add(indexOf(closeSubset()));
+                }
+                usedInputs.size = 0;
+            }
+            transitionStart.add(transitionTargets.size);
+
+            return new DeterministicStateMachine(graph.getName(), symbols, subsetStart.size - 1, accepting,
+                    transitionStart.toArray(), transitionInputs.toArray(), transitionTargets.toArray());
+        }
+    }
+
+    /**
+     * A partition of the numbers 0 to size - 1 into sets, which are refined by marking elements and splitting the
+     * marked from the unmarked elements of every set. The elements of a set are stored in a contiguous range, marked
+     * elements at its front.
+     */
+    private static class Partition {
+
+        private int setCount;
+        private final int[] elements;
+        private final int[] locations;
+        private final int[] sets;
+        private final int[] first;
+        private final int[] past;
+        private final int[] marked;
+        private final IntList touched = new IntList();
+
+        /**
+         * Creates a partition consisting of a single set.
+         * @param size The number of elements.
+         */
+        Partition(int size) {
+            elements = new int[size];
+            locations = new int[size];
+            sets = new int[size];
+            first = new int[size + 1];
+            past = new int[size + 1];
+            marked = new int[size + 1];
+            for (var i = 0; i < size; i++) {
+                elements[i] = i;
+                locations[i] = i;
+            }
+            setCount = size > 0 ? 1 : 0;
+            past[0] = size;
+        }
+
+        /**
+         * Replaces the sets by one set per key.
+         * @param keys The key of every element.
+         * @param keyCount The number of keys.
+         */
+        void groupBy(int[] keys, int keyCount) {
+            var start = new int[keyCount + 1];
+            for (var e = 0; e < elements.length; e++) {
+                start[keys[e] + 1]++;
+            }
+            for (var k = 0; k < keyCount; k++) {
+                start[k + 1] += start[k];
+            }
+            var next = Arrays.copyOf(start, keyCount);
+            for (var e = 0; e < elements.length; e++) {
+                elements[next[keys[e]]] = e;
+                locations[e] = next[keys[e]]++;
+            }
+
+            setCount = 0;
+            for (var k = 0; k < keyCount; k++) {
+                if (start[k] == start[k + 1]) {
+                    continue;
+                }
+                first[setCount] = start[k];
+                past[setCount] = start[k + 1];
+                for (var i = start[k]; i < start[k + 1]; i++) {
+                    sets[elements[i]] = setCount;
+                }
+                setCount++;
+            }
+        }
+
+        /**
+         * Marks an element that has not been marked since the last split.
+         * @param element The element.
+         */
+        void mark(int element) {
+            var set = sets[element];
+            var i = locations[element];
+            var j = first[set] + marked[set];
+            if (i < j) {
+                // Marked already.
+                return;
+            }
+            elements[i] = elements[j];
+            locations[elements[i]] = i;
+            elements[j] = element;
+            locations[element] = j;
+            if (marked[set]++ == 0) {
+                touched.add(set);
+            }
+        }
+
+        /**
+         * Splits every set with marked and unmarked elements. The smaller part becomes a new set.
+         */
+        void split() {
+            while (touched.size > 0) {
+                var set = touched.values[--touched.size];
+                var j = first[set] + marked[set];
+                if (j == past[set]) {
+                    marked[set] = 0;
+                    continue;
+                }
+
+                if (marked[set] <= past[set] - j) {
+                    first[setCount] = first[set];
+                    past[setCount] = j;
+                    first[set] = j;
+                } else {
+                    past[setCount] = past[set];
+                    first[setCount] = j;
+                    past[set] = j;
+                }
+                for (var i = first[setCount]; i < past[setCount]; i++) {
+                    sets[elements[i]] = setCount;
+                }
+                marked[set] = 0;
+                marked[setCount] = 0;
+                setCount++;
+            }
+        }
+    }
+
+    /**
+     * Creates a new machine.
+     * @param name The name of the machine, which is the name of the participant it is generated for.
+     * @param symbols One symbol per input, sorted by text.
+     * @param stateCount The number of states.
+     * @param acceptingStates The accepting states.
+     * @param transitionStart The first transition of every state, followed by the number of transitions.
+     * @param transitionInputs The input of every transition.
+     * @param transitionTargets The target of every transition.
+     */
+    private DeterministicStateMachine(String name, List<Symbol> symbols, int stateCount, BitSet acceptingStates,
+                                      int[] transitionStart, int[] transitionInputs, int[] transitionTargets) {
+        this.name = name;
+        this.symbols = List.copyOf(symbols);
+        this.stateCount = stateCount;
+        this.acceptingStates = acceptingStates;
+        this.transitionStart = transitionStart;
+        this.transitionInputs = transitionInputs;
+        this.transitionTargets = transitionTargets;
+    }
+
+    /**
+     * Flattens the hierarchy of a state diagram and builds the equivalent deterministic machine by subset
+     * construction.
+     * @param graph The state diagram.
+     * @return The deterministic machine, which is not necessarily minimal.
+     */
+    public static DeterministicStateMachine determinize(CompactStateGraph graph) {
+        return new SubsetConstruction(graph).run();
+    }
+
+    /**
+     * Returns the equivalent machine with the fewest states. States from which no accepting state can be reached are
+     * removed, the remaining states are merged by Hopcroft's partition refinement in the variant of Valmari and
+     * Lehtinen, which supports missing transitions and takes O(m log n) time for m transitions and n states.
+     * @return The minimal machine.
+     */
+    public DeterministicStateMachine minimize() {
+        // States from which an accepting state can be reached, found backwards. The start state is always kept.
+        var incomingStart = new int[stateCount + 1];
+        for (var target : transitionTargets) {
+            incomingStart[target + 1]++;
+        }
+        for (var s = 0; s < stateCount; s++) {
+            incomingStart[s + 1] += incomingStart[s];
+        }
+        var incoming = new int[transitionTargets.length];
+        var next = Arrays.copyOf(incomingStart, stateCount);
+        for (var s = 0; s < stateCount; s++) {
+            for (var t = transitionStart[s]; t < transitionStart[s + 1]; t++) {
+                incoming[next[transitionTargets[t]]++] = s;
+            }
+        }
+        var live = (BitSet) acceptingStates.clone();
+        var pending = new IntList();
+        for (var s = live.nextSetBit(0); s >= 0; s = live.nextSetBit(s + 1)) {
+            pending.add(s);
+        }
+        while (pending.size > 0) {
+            var state = pending.values[--pending.size];
+            for (var i = incomingStart[state]; i < incomingStart[state + 1]; i++) {
+                if (!live.get(incoming[i])) {
+                    live.set(incoming[i]);
+                    pending.add(incoming[i]);
+                }
+            }
+        }
+        if (stateCount > 0) {
+            live.set(0);
+        }
+
+        // Number the live states and their transitions consecutively.
+        var liveIndex = new int[stateCount];
+        var liveCount = 0;
+        for (var s = 0; s < stateCount; s++) {
+            liveIndex[s] = live.get(s) ? liveCount++ : -1;
+        }
+        var tails = new IntList();
+        var heads = new IntList();
+        var inputs = new IntList();
+        for (var s = 0; s < stateCount; s++) {
+            for (var t = transitionStart[s]; t < transitionStart[s + 1]; t++) {
+                if (live.get(s) && live.get(transitionTargets[t])) {
+                    tails.add(liveIndex[s]);
+                    heads.add(liveIndex[transitionTargets[t]]);
+                    inputs.add(transitionInputs[t]);
+                }
+            }
+        }
+        var transitionCount = tails.size;
+
+        // Transitions of every live state by head.
+        var headStart = new int[liveCount + 1];
+        for (var t = 0; t < transitionCount; t++) {
+            headStart[heads.values[t] + 1]++;
+        }
+        for (var s = 0; s < liveCount; s++) {
+            headStart[s + 1] += headStart[s];
+        }
+        var byHead = new int[transitionCount];
+        next = Arrays.copyOf(headStart, liveCount);
+        for (var t = 0; t < transitionCount; t++) {
+            byHead[next[heads.values[t]]++] = t;
+        }
+
+        // Blocks of equivalent states start out as accepting and other states, cords of transitions by input.
+        var blocks = new Partition(liveCount);
+        for (var s = 0; s < stateCount; s++) {
+            if (live.get(s) && acceptingStates.get(s)) {
+                blocks.mark(liveIndex[s]);
+            }
+        }
+        blocks.split();
+        var cords = new Partition(transitionCount);
+        cords.groupBy(Arrays.copyOf(inputs.values, transitionCount), symbols.size());
+
+        // Splits the blocks by the tails of every cord and the cords by the heads of every new block. The first
+        // block never has to be used as a splitter.
+        var b = 1;
+        var c = 0;
+        while (c < cords.setCount) {
+            for (var i = cords.first[c]; i < cords.past[c]; i++) {
+                blocks.mark(tails.values[cords.elements[i]]);
+            }
+            blocks.split();
+            c++;
+            while (b < blocks.setCount) {
+                for (var i = blocks.first[b]; i < blocks.past[b]; i++) {
+                    var state = blocks.elements[i];
+                    for (var j = headStart[state]; j < headStart[state + 1]; j++) {
+                        cords.mark(byHead[j]);
+                    }
+                }
+                cords.split();
+                b++;
+            }
+        }
+
+        return renumber(blocks, liveIndex);
+    }
+
+    /**
+     * Builds the machine whose states are the blocks of equivalent states, numbered in breadth-first order from
+     * the block of the start state.
+     * @param blocks The blocks of equivalent live states.
+     * @param liveIndex The index of every state among the live states or -1 if it is not live.
+     * @return The machine.
+     */
+    private DeterministicStateMachine renumber(Partition blocks, int[] liveIndex) {
+        var accepting = new BitSet();
+        var newTransitionStart = new IntList();
+        var newTransitionInputs = new IntList();
+        var newTransitionTargets = new IntList();
+        if (stateCount == 0) {
+            newTransitionStart.add(0);
+            return new DeterministicStateMachine(name, symbols, 0, accepting, newTransitionStart.toArray(),
+                    newTransitionInputs.toArray(), newTransitionTargets.toArray());
+        }
+
+        // Any state of a block represents the block.
+        var representatives = new int[blocks.setCount];
+        for (var s = 0; s < stateCount; s++) {
+            if (liveIndex[s] >= 0) {
+                representatives[blocks.sets[liveIndex[s]]] = s;
+            }
+        }
+
+        var newIndex = new int[blocks.setCount];
+        Arrays.fill(newIndex, -1);
+        var order = new IntList();
+        newIndex[blocks.sets[liveIndex[0]]] = 0;
+        order.add(blocks.sets[liveIndex[0]]);
+        for (var i = 0; i < order.size; i++) {
+            var state = representatives[order.values[i]];
+            newTransitionStart.add(newTransitionTargets.size);
+            if (acceptingStates.get(state)) {
+                accepting.set(i);
+            }
+            for (var t = transitionStart[state]; t < transitionStart[state + 1]; t++) {
+                var target = liveIndex[transitionTargets[t]];
+                if (target < 0) {
+                    continue;
+                }
+                var block = blocks.sets[target];
+                if (newIndex[block] < 0) {
+                    newIndex[block] = order.size;
+                    order.add(block);
+                }
+                newTransitionInputs.add(transitionInputs[t]);
+                newTransitionTargets.add(newIndex[block]);
+            }
+        }
+        newTransitionStart.add(newTransitionTargets.size);
+
+        return new DeterministicStateMachine(name, symbols, order.size, accepting, newTransitionStart.toArray(),
+                newTransitionInputs.toArray(), newTransitionTargets.toArray());
+    }
+
+    /**
+     * Returns the name of this machine.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the inputs of this machine.
+     * @return One symbol per input, sorted by text. Inputs are referred to by their index in this list.
+     */
+    public List<Symbol> getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the number of states.
+     * @return The number of states.
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Returns the number of transitions.
+     * @return The number of transitions.
+     */
+    public int getTransitionCount() {
+        return transitionTargets.length;
+    }
+
+    /**
+     * Returns the position of the first transition of a state. The transitions of a state end where the ones of the
+     * next state start and are sorted by input.
+     * @param state The state or the number of states for the end of the last range.
+     * @return The position.
+     */
+    int getTransitionStart(int state) {
+        return transitionStart[state];
+    }
+
+    /**
+     * Returns the input of a transition.
+     * @param position The position of the transition.
+     * @return The index of the input.
+     */
+    int getTransitionInput(int position) {
+        return transitionInputs[position];
+    }
+
+    /**
+     * Returns the state a transition leads to.
+     * @param position The position of the transition.
+     * @return The target.
+     */
+    int getTransitionTarget(int position) {
+        return transitionTargets[position];
+    }
+
+    /**
+     * Returns whether the machine may finish in a state.
+     * @param state The state.
+     * @return Whether the state is accepting.
+     */
+    public boolean isAccepting(int state) {
+        return acceptingStates.get(state);
+    }
+
+    /**
+     * Returns the state a state leads to on an input.
+     * @param state The state.
+     * @param input The index of the input.
+     * @return The target or {@link #NO_TRANSITION} if the input is rejected.
+     */
+    public int getTransition(int state, int input) {
+        var i = Arrays.binarySearch(transitionInputs, transitionStart[state], transitionStart[state + 1], input);
+        return i >= 0 ? transitionTargets[i] : NO_TRANSITION;
+    }
+
+    /**
+     * Returns the index of the input with the given text.
+     * @param text The text of the trigger or guard.
+     * @return The index or -1 if no transition has this text.
+     */
+    public int indexOf(String text) {
+        var low = 0;
+        var high = symbols.size() - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var c = symbols.get(middle).text().compareTo(text);
+            if (c == 0) {
+                return middle;
+            } else if (c < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether this machine accepts a sequence of triggers and guards.
+     * @param trace The texts of the triggers and guards, in order.
+     * @return Whether the sequence is accepted.
+     */
+    public boolean accepts(List<String> trace) {
+        var state = stateCount > 0 ? 0 : NO_TRANSITION;
+        for (var text : trace) {
+            var input = indexOf(text);
+            if (state == NO_TRANSITION || input < 0) {
+                return false;
+            }
+            state = getTransition(state, input);
+        }
+        return state != NO_TRANSITION && isAccepting(state);
+    }
+
+    /**
+     * Writes this machine to the given sink as a PlantUML state diagram without composite states.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    @Override
+    public void render(Appendable out) throws IOException {
+        out.append("@startuml\n");
+        out.append("hide empty description\n");
+        out.append("state ").append(name).append(" {\n");
+        if (stateCount > 0) {
+            out.append("[*] --> S0\n");
+        }
+        for (var s = 0; s < stateCount; s++) {
+            for (var t = transitionStart[s]; t < transitionStart[s + 1]; t++) {
+                out.append('S').append(Integer.toString(s)).append(" --> S")
+                        .append(Integer.toString(transitionTargets[t]))
+                        .append(": ").append(symbols.get(transitionInputs[t]).text()).append('\n');
+            }
+            if (isAccepting(s)) {
+                out.append('S').append(Integer.toString(s)).append(" --> [*]\n");
+            }
+        }
+        out.append("}\n");
+        out.append("@enduml\n");
+    }
+
+    /**
+     * Counts the states and transitions of this machine, which has no composite states.
+     * @return The statistics of the state machine.
+     */
+    @Override
+    public GraphStatistics statistics() {
+        return new GraphStatistics(stateCount, getTransitionCount(), 0, 0);
+    }
+
+    /**
+     * Writes the transition table of this machine as tab-separated values: a header with the columns 'state',
+     * 'accepting' and one column per input, followed by one row per state. Cells of rejected inputs are empty.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    public void renderTable(Appendable out) throws IOException {
+        out.append("state\taccepting");
+        for (var symbol : symbols) {
+            out.append('\t').append(symbol.text());
+        }
+        out.append('\n');
+
+        for (var s = 0; s < stateCount; s++) {
+            out.append('S').append(Integer.toString(s)).append('\t').append(Boolean.toString(isAccepting(s)));
+            var t = transitionStart[s];
+            for (var input = 0; input < symbols.size(); input++) {
+                out.append('\t');
+                if (t < transitionStart[s + 1] && transitionInputs[t] == input) {
+                    out.append('S').append(Integer.toString(transitionTargets[t++]));
+                }
+            }
+            out.append('\n');
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package de.thm.swtp.statediagram;
 
+import java.io.IOException;
+
 /**
  * Represents a state diagram node.
  */
@@ -19,19 +21,34 @@ public class DiagramNode extends Node {
     }
 
     /**
-     * Generates a string representation of this diagram node as expected by PlantUML.
-     * @return The string representation.
+     * Returns the name of this diagram, which is the name of the participant it was generated for.
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Writes this diagram node to the given sink as expected by PlantUML.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
      */
     @Override
-    public String toString() {
-        var s = new StringBuilder();
-        s.append("@startuml\n");
-        s.append("hide empty description\n");
-        s.append(String.format("state %s {\n", name));
-        s.append(firstState.toString());
-        s.append("}\n");
-        s.append("@enduml\n");
+    public void render(Appendable out) throws IOException {
+        out.append("@startuml\n");
+        out.append("hide empty description\n");
+        out.append("state ").append(name).append(" {\n");
+        firstState.render(out);
+        out.append("}\n");
+        out.append("@enduml\n");
+    }
 
-        return s.toString();
+    /**
+     * Counts the states and transitions of this diagram.
+     * @return The statistics of the state diagram.
+     */
+    @Override
+    public GraphStatistics statistics() {
+        return firstState.statistics();
     }
 }
@@ -0,0 +1,195 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import de.thm.swtp.sequencediagram.SequenceEvent.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the fragments of a sequence diagram whose states only depend on their own events: every alt, loop and opt
+ * block and every branch of an alt or opt block. The states of identical fragments only differ in their IDs, so the
+ * state diagram builder generates them once and shares them between all copies (hash-consing).
+ * <p>
+ * Fragments are hashed structurally over their events in a single pass, so finding a copy costs the same for
+ * every nesting depth and the events are only compared once the hashes match.
+ */
+class FragmentIndex {
+
+    // Odd multiplier of the polynomial hash, which is computed modulo 2^64.
+    private static final long BASE = 0x9E3779B97F4A7C15L;
+
+    private final List<SequenceEvent> events;
+    // Hashes of all prefixes of the events and the powers of the base, which hash any range in constant time.
+    private final long[] prefixHashes;
+    private final long[] powers;
+    // Blocks and branches by the index of the event opening them.
+    private final Map<Integer, Fragment> blocks = new HashMap<>();
+    private final Map<Integer, Fragment> branches = new HashMap<>();
+
+    /**
+     * A range of events which is transformed into a composite state of its own. Two fragments are equal if they
+     * are of the same kind and their events are equal, regardless of their position.
+     * <p>
+     * The events of a block include the events opening and closing it, as its guards and type are part of its
+     * states. The events of a branch exclude them, as its guard is on the transition leading to it.
+     * @param events All events of the sequence diagram.
+     * @param start The index of the first event of the fragment.
+     * @param end The index after the last event of the fragment, which is the next event to generate if the states
+     *            of the fragment are shared.
+     * @param branch Whether the fragment is a branch of an alt or opt block.
+     * @param hash The structural hash of the events of the fragment.
+     */
+    record Fragment(List<SequenceEvent> events, int start, int end, boolean branch, long hash) {
+
+        /**
+         * Returns whether the given object is a fragment of the same kind with equal events.
+         * @param o The object to compare with.
+         * @return Whether the fragments are structurally equal.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Fragment f) || f.branch != branch || f.hash != hash || f.end - f.start != end - start) {
+                return false;
+            }
+            for (var i = 0; i < end - start; i++) {
+                if (!f.events.get(f.start + i).equals(events.get(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the structural hash code of this fragment.
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) ^ (branch ? 1 : 0);
+        }
+    }
+
+    /**
+     * A block which has not been closed yet.
+     * @param start The index of the event opening the block.
+     * @param alt Whether the block is an alt block.
+     * @param branchStart The index of the event opening the current branch of the block or -1 for loops.
+     */
+    private record OpenBlock(int start, boolean alt, int branchStart) {
+    }
+
+    /**
+     * Creates the index of the given events.
+     * @param events The events of the sequence diagram.
+     */
+    private FragmentIndex(List<SequenceEvent> events) {
+        this.events = events;
+        prefixHashes = new long[events.size() + 1];
+        powers = new long[events.size() + 1];
+        powers[0] = 1;
+        for (var i = 0; i < events.size(); i++) {
+            prefixHashes[i + 1] = prefixHashes[i] * BASE + (events.get(i).hashCode() & 0xFFFFFFFFL) + 1;
+            powers[i + 1] = powers[i] * BASE;
+        }
+    }
+
+    /**
+     * Finds the blocks and branches of a sequence diagram. Blocks are closed the same way the state diagram builder
+     * closes them: an else only continues alt blocks and closes any other block. Blocks which are never closed are
+     * not fragments.
+     * @param events The events of the sequence diagram.
+     * @return The index of the fragments.
+     */
+    static FragmentIndex of(List<SequenceEvent> events) {
+        var index = new FragmentIndex(events);
+        var open = new ArrayDeque<OpenBlock>();
+
+        for (var i = 0; i < events.size(); i++) {
+            var event = events.get(i);
+            if (event instanceof GroupStartEvent g) {
+                var type = g.type();
+                open.push(new OpenBlock(i, type.equals("alt"), type.equals("alt") || type.equals("opt") ? i : -1));
+            } else if (event instanceof ElseEvent || event instanceof EndEvent) {
+                if (open.isEmpty()) {
+                    // Ignored by the builder as well.
+                    continue;
+                }
+                var block = open.pop();
+                if (block.branchStart() >= 0) {
+                    index.branches.put(block.branchStart(), index.fragment(block.branchStart() + 1, i, true));
+                }
+                if (block.alt() && event instanceof ElseEvent) {
+                    open.push(new OpenBlock(block.start(), true, i));
+                } else {
+                    index.blocks.put(block.start(), index.fragment(block.start(), i + 1, false));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Creates a fragment of the given events.
+     * @param start The index of the first event.
+     * @param end The index after the last event.
+     * @param branch Whether the fragment is a branch.
+     * @return The fragment.
+     */
+    private Fragment fragment(int start, int end, boolean branch) {
+        var hash = prefixHashes[end] - prefixHashes[start] * powers[end - start];
+        return new Fragment(events, start, end, branch, hash);
+    }
+
+    /**
+     * Selects disjoint fragments whose states can be generated independently of each other, in the order of their
+     * events. Fragments up to the maximum size are taken as a whole; the events of larger fragments are searched for
+     * smaller ones, starting with their branches. Fragments below the minimum size are left out.
+     * @param minEvents The minimum number of events of a selected fragment.
+     * @param maxEvents The maximum number of events of a selected fragment.
+     * @return The selected fragments.
+     */
+    List<Fragment> partition(int minEvents, int maxEvents) {
+        var selected = new ArrayList<Fragment>();
+        var i = 0;
+        while (i < events.size()) {
+            var fragment = blocks.get(i);
+            if (fragment == null || fragment.end() - fragment.start() > maxEvents) {
+                fragment = branches.get(i);
+            }
+            if (fragment == null || fragment.end() - fragment.start() > maxEvents) {
+                i++;
+                continue;
+            }
+
+            if (fragment.end() - fragment.start() >= minEvents) {
+                selected.add(fragment);
+            }
+            // After a branch, the event closing it may open the next branch.
+            i = fragment.end();
+        }
+        return selected;
+    }
+
+    /**
+     * Returns the alt, loop or opt block opened by the given event.
+     * @param index The index of the event.
+     * @return The block or null if the event does not open a block which is closed again.
+     */
+    Fragment block(int index) {
+        return blocks.get(index);
+    }
+
+    /**
+     * Returns the branch of an alt or opt block opened by the given event, which is either the event opening the
+     * block or an else continuing an alt block.
+     * @param index The index of the event.
+     * @return The branch or null if the event does not open a branch which is closed again.
+     */
+    Fragment branch(int index) {
+        return branches.get(index);
+    }
+}
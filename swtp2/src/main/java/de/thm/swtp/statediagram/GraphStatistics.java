@@ -0,0 +1,11 @@
+package de.thm.swtp.statediagram;
+
+/**
+ * The size of a generated state diagram.
+ * @param states The number of states, including start, end and composite states.
+ * @param edges The number of transitions.
+ * @param compositeStates The number of composite states.
+ * @param maxDepth The maximum number of composite states nested in each other, 0 for a flat diagram.
+ */
+public record GraphStatistics(int states, int edges, int compositeStates, int maxDepth) {
+}
@@ -0,0 +1,375 @@
+package de.thm.swtp.statediagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Generates the Java source code of an executable state machine from a {@link DeterministicStateMachine}. The
+ * hierarchy of the state diagram is already flattened by the machine, so the generated class only keeps the current
+ * state as an int and looks up every event in a dense transition table indexed by state and input. Inputs are int
+ * constants, the texts of triggers and guards are mapped to them by a string switch. Firing an event does not
+ * allocate and costs a single array lookup.
+ * <p>
+ * The table is stored in string constants, one char per cell, and decoded once when the class is initialized, since
+ * array initializers quickly exceed the size limit of a method. The generated code compiles with Java 8.
+ */
+public class JavaCodeGenerator {
+
+    // Inputs up to which the texts are mapped by a string switch, larger machines use a binary search. Keeps the
+    // method well below the size limit of a method.
+    private static final int MAX_SWITCH_INPUTS = 1000;
+    // Limits of the generated code: cells are chars, and every input and chunk costs some bytes in the class
+    // initializer.
+    private static final int MAX_STATES = Character.MAX_VALUE - 1;
+    private static final int MAX_INPUTS = 5000;
+    private static final long MAX_TABLE_SIZE = 1L << 26;
+    // Chars per string constant. Every char takes at most 3 bytes in the constant pool, which allows 65535 bytes.
+    private static final int CHUNK_SIZE = 16000;
+    // Names used by the generated class, which inputs must not be named after.
+    private static final Set<String> RESERVED_NAMES = Set.of("REJECTED", "STATE_COUNT", "INPUT_COUNT", "INPUTS",
+            "TRANSITIONS", "ACCEPTING");
+
+    private final DeterministicStateMachine machine;
+    private final String className;
+    private final List<String> inputNames;
+
+    /**
+     * Creates a new generator.
+     * @param machine The state machine to generate the code of.
+     * @throws IllegalStateException If the machine is too large for a Java class.
+     */
+    public JavaCodeGenerator(DeterministicStateMachine machine) {
+        var inputs = machine.getSymbols().size();
+        if (machine.getStateCount() > MAX_STATES || inputs > MAX_INPUTS
+                || (long) machine.getStateCount() * inputs > MAX_TABLE_SIZE) {
+            throw new IllegalStateException(String.format("State machine of %s with %d states and %d inputs is too "
+                    + "large for a Java class.", machine.getName(), machine.getStateCount(), inputs));
+        }
+        this.machine = machine;
+        this.className = classNameOf(machine.getName());
+        this.inputNames = inputNamesOf(machine.getSymbols());
+    }
+
+    /**
+     * Returns the name of the generated class.
+     * @return The name of the participant in upper camel case followed by 'StateMachine'.
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the name of the class generated for a participant.
+     * @param participant The name of the participant.
+     * @return The name of the participant in upper camel case followed by 'StateMachine'.
+     */
+    static String classNameOf(String participant) {
+        var name = new StringBuilder();
+        for (var word : wordsOf(participant)) {
+            name.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        if (name.length() > 0 && Character.isDigit(name.charAt(0))) {
+            name.insert(0, 'P');
+        }
+        return name.append("StateMachine").toString();
+    }
+
+    /**
+     * Returns unique constant names for the inputs of a state machine, e.g. INSERT_CARD for the trigger insertCard,
+     * SEND_REQUEST_PIN for the sent message '/ requestPin' and IF_NOT_PIN_OK for the guard '!(pinOK)'.
+     * @param symbols The inputs.
+     * @return The names in the order of the inputs.
+     */
+    static List<String> inputNamesOf(List<Symbol> symbols) {
+        var names = new ArrayList<String>(symbols.size());
+        var taken = new HashSet<>(RESERVED_NAMES);
+        for (var i = 0; i < symbols.size(); i++) {
+            var symbol = symbols.get(i);
+            var words = new ArrayList<String>();
+            if (symbol.kind() == Symbol.Kind.GUARD) {
+                words.add("if");
+            }
+            words.addAll(wordsOf(symbol.text()));
+            if (words.isEmpty() || Character.isDigit(words.get(0).charAt(0))) {
+                words.add(0, "input");
+            }
+
+            var name = String.join("_", words).toUpperCase(Locale.ROOT);
+            var unique = name;
+            for (var n = i; !taken.add(unique); n++) {
+                unique = name + "_" + n;
+            }
+            names.add(unique);
+        }
+        return names;
+    }
+
+    /**
+     * Splits a text into the words of an identifier. Letters and digits form words, which are split further at
+     * camel case humps. '/' is the word 'send' and '!' the word 'not', all other characters only separate words.
+     * @param text The text.
+     * @return The words.
+     */
+    private static List<String> wordsOf(String text) {
+        var words = new ArrayList<String>();
+        var word = new StringBuilder();
+        for (var i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            var isWordChar = c < 128 && Character.isLetterOrDigit(c);
+            var hump = isWordChar && Character.isUpperCase(c) && word.length() > 0
+                    && (Character.isLowerCase(word.charAt(word.length() - 1))
+                    || i + 1 < text.length() && Character.isLowerCase(text.charAt(i + 1)));
+            if ((!isWordChar || hump) && word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+            if (isWordChar) {
+                word.append(c);
+            } else if (c == '/') {
+                words.add("send");
+            } else if (c == '!') {
+                words.add("not");
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Writes the source code of the generated class, without a package declaration.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    public void render(Appendable out) throws IOException {
+        var symbols = machine.getSymbols();
+        var stateCount = machine.getStateCount();
+        var inputCount = symbols.size();
+
+        out.append("/**\n");
+        out.append(" * State machine of ").append(escapeComment(machine.getName()))
+                .append(", generated from its sequence diagram. Do not edit.\n");
+        out.append(" * <p>\n");
+        out.append(" * Every instance starts in state 0 and follows the inputs passed to {@link #fire(int)}. An input\n");
+        out.append(" * without a transition rejects the sequence for good. The sequence is complete if the machine\n");
+        out.append(" * is in an accepting state. Instances are not thread-safe.\n");
+        out.append(" */\n");
+        out.append("public final class ").append(className).append(" {\n\n");
+
+        out.append("    /** The state after an input without a transition. */\n");
+        out.append("    public static final int REJECTED = -1;\n");
+        out.append("    public static final int STATE_COUNT = ").append(Integer.toString(stateCount)).append(";\n");
+        out.append("    public static final int INPUT_COUNT = ").append(Integer.toString(inputCount)).append(";\n\n");
+        for (var i = 0; i < inputCount; i++) {
+            out.append("    /** ").append(escapeComment(symbols.get(i).text())).append(" */\n");
+            out.append("    public static final int ").append(inputNames.get(i)).append(" = ")
+                    .append(Integer.toString(i)).append(";\n");
+        }
+        if (inputCount > 0) {
+            out.append('\n');
+        }
+
+        // The texts of the inputs, sorted like the inputs.
+        out.append("    private static final String[] INPUTS = {");
+        for (var i = 0; i < inputCount; i++) {
+            out.append(i % 8 == 0 ? "\n            " : " ");
+            appendLiteral(out, symbols.get(i).text());
+            out.append(',');
+        }
+        out.append("\n    };\n");
+
+        // Cell (state, input) holds the target plus one, 0 if the input is rejected.
+        var transitions = new StringBuilder(stateCount * inputCount);
+        var accepting = new StringBuilder(stateCount);
+        for (var s = 0; s < stateCount; s++) {
+            for (var input = 0; input < inputCount; input++) {
+                transitions.append((char) (machine.getTransition(s, input) + 1));
+            }
+            accepting.append(machine.isAccepting(s) ? '1' : '0');
+        }
+        out.append("    private static final int[] TRANSITIONS = decode(new String[]{");
+        appendChunks(out, transitions);
+        out.append("}, STATE_COUNT * INPUT_COUNT, -1);\n");
+        out.append("    private static final int[] ACCEPTING = decode(new String[]{");
+        appendChunks(out, accepting);
+        out.append("}, STATE_COUNT, -'0');\n\n");
+
+        out.append("""
+                    private int state = STATE_COUNT > 0 ? 0 : REJECTED;
+
+                    private static int[] decode(String[] chunks, int length, int offset) {
+                        int[] values = new int[length];
+                        int i = 0;
+                        for (String chunk : chunks) {
+                            for (int j = 0; j < chunk.length(); j++) {
+                                values[i++] = chunk.charAt(j) + offset;
+                            }
+                        }
+                        return values;
+                    }
+
+                    /**
+                     * Returns the input with the given text.
+                     * @param text The text of a trigger or guard, as in the state diagram.
+                     * @return The input or REJECTED if no transition has this text.
+                     */
+                    public static int inputOf(String text) {
+                """);
+        if (inputCount <= MAX_SWITCH_INPUTS) {
+            out.append("        switch (text) {\n");
+            for (var i = 0; i < inputCount; i++) {
+                out.append("            case ");
+                appendLiteral(out, symbols.get(i).text());
+                out.append(": return ").append(inputNames.get(i)).append(";\n");
+            }
+            out.append("            default: return REJECTED;\n");
+            out.append("        }\n");
+        } else {
+            out.append("        int input = java.util.Arrays.binarySearch(INPUTS, text);\n");
+            out.append("        return input >= 0 ? input : REJECTED;\n");
+        }
+        out.append("""
+                    }
+
+                    /**
+                     * Returns the text of an input.
+                     * @param input The input.
+                     * @return The text of the trigger or guard.
+                     */
+                    public static String textOf(int input) {
+                        return INPUTS[input];
+                    }
+
+                    /**
+                     * Returns the state a state leads to on an input.
+                     * @param state A state or REJECTED.
+                     * @param input An input or REJECTED.
+                     * @return The target or REJECTED if the input is rejected.
+                     */
+                    public static int next(int state, int input) {
+                        if (state < 0 || input < 0) {
+                            return REJECTED;
+                        }
+                        return TRANSITIONS[state * INPUT_COUNT + input];
+                    }
+
+                    /**
+                     * Returns whether a sequence may end in a state.
+                     * @param state A state or REJECTED.
+                     * @return Whether the state is accepting.
+                     */
+                    public static boolean isAccepting(int state) {
+                        return state >= 0 && ACCEPTING[state] != 0;
+                    }
+
+                    /**
+                     * Takes the transition of the current state on an input.
+                     * @param input An input or REJECTED.
+                     * @return Whether the input was accepted.
+                     */
+                    public boolean fire(int input) {
+                        state = next(state, input);
+                        return state != REJECTED;
+                    }
+
+                    /**
+                     * Takes the transition of the current state on the input with the given text.
+                     * @param text The text of a trigger or guard.
+                     * @return Whether the input was accepted.
+                     */
+                    public boolean fire(String text) {
+                        return fire(inputOf(text));
+                    }
+
+                    /**
+                     * Returns the current state.
+                     * @return The state or REJECTED.
+                     */
+                    public int state() {
+                        return state;
+                    }
+
+                    /**
+                     * Returns whether the inputs so far form a complete sequence.
+                     * @return Whether the current state is accepting.
+                     */
+                    public boolean isAccepting() {
+                        return isAccepting(state);
+                    }
+
+                    /**
+                     * Returns to the start state.
+                     */
+                    public void reset() {
+                        state = STATE_COUNT > 0 ? 0 : REJECTED;
+                    }
+                }
+                """);
+    }
+
+    /**
+     * Writes a text as string constants of at most {@link #CHUNK_SIZE} chars, separated by commas.
+     * @param out The sink to write to.
+     * @param text The text.
+     * @throws IOException If writing to the sink fails.
+     */
+    private static void appendChunks(Appendable out, CharSequence text) throws IOException {
+        for (var start = 0; start < text.length(); start += CHUNK_SIZE) {
+            out.append("\n            ");
+            appendLiteral(out, text.subSequence(start, Math.min(start + CHUNK_SIZE, text.length())));
+            out.append(',');
+        }
+        if (text.length() > 0) {
+            out.append("\n    ");
+        }
+    }
+
+    /**
+     * Writes a Java string literal. Printable ASCII characters are written as they are, control characters as octal
+     * escapes and all others as Unicode escapes, so the source code is ASCII and never contains a line break inside a
+     * literal.
+     * @param out The sink to write to.
+     * @param text The content of the literal.
+     * @throws IOException If writing to the sink fails.
+     */
+    private static void appendLiteral(Appendable out, CharSequence text) throws IOException {
+        out.append('"');
+        for (var i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\%03o", (int) c));
+            } else if (c < 0x7f) {
+                out.append(c);
+            } else {
+                out.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * Makes a text safe to be written into a doc comment. Characters which could end the comment, start a tag or a
+     * Unicode escape and all non-ASCII characters are replaced by HTML entities, line breaks by spaces.
+     * @param text The text.
+     * @return The escaped text.
+     */
+    private static String escapeComment(String text) {
+        var s = new StringBuilder(text.length());
+        for (var i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c == '@' || c == '\\' || c >= 0x7f || c == '/' && i > 0 && text.charAt(i - 1) == '*') {
+                s.append("&#").append((int) c).append(';');
+            } else {
+                s.append(c < 0x20 ? ' ' : c);
+            }
+        }
+        return s.toString();
+    }
+}
@@ -1,16 +1,47 @@
 package de.thm.swtp.statediagram;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * A state node which contains a state machine itself (sub-automata).
  */
 public class MultiStateNode extends StateNode {
 
-    protected final ArrayList<StateNode> innerStates = new ArrayList<>();
-    // Whether this state has been added to the string representation of the state diagram already.
-    // Prevents infinite recursion.
-    private boolean added = false;
+    protected final List<StateNode> innerStates;
+    // Offset between the IDs the inner states are written with and their own IDs. Non-zero if the inner states are
+    // shared with a composite state generated for an identical fragment at a different position.
+    private final int innerOffset;
+    // The composite state this state is written as a reference to or null if its content is written.
+    private final MultiStateNode template;
+
+    /**
+     * Creates a new multi-state node.
+     * @param id The unique ID of this state.
+     */
+    public MultiStateNode(int id) {
+        super(id);
+        this.innerStates = new ArrayList<>();
+        this.innerOffset = 0;
+        this.template = null;
+    }
+
+    /**
+     * Creates a new multi-state node which shares the content of a complete composite state instead of holding
+     * a copy. The content is written with the IDs it would have had if it had been generated for this state.
+     * @param id The unique ID of this state.
+     * @param template The composite state to share the content of. Must have been generated for the same events
+     *                 and must not receive further inner states.
+     * @param reference Whether this state is written as a reference to the template instead of with the content.
+     */
+    public MultiStateNode(int id, MultiStateNode template, boolean reference) {
+        super(id);
+        this.innerStates = template.innerStates;
+        this.innerOffset = template.innerOffset + id - template.id;
+        this.template = reference ? template : null;
+    }
 
     /**
      * Adds a new state to the inner content of this multi-state.
@@ -21,25 +52,66 @@ public class MultiStateNode extends StateNode {
     }
 
     /**
-     * Returns a string representation of this state node as expected by PlantUML.
-     * @return The string representation of this state node.
+     * Returns whether this state is written as a reference to an identical composite state instead of with its
+     * content.
+     * @return Whether this state is a reference.
+     */
+    boolean isReference() {
+        return template != null;
+    }
+
+    /**
+     * Returns the states contained in this multi-state. A reference is written without them.
+     * @return The inner states.
      */
     @Override
-    public String toString() {
-        var s = new StringBuilder();
+    protected List<StateNode> getInnerStates() {
+        return template != null ? List.of() : innerStates;
+    }
 
-        if (!added) {
-            added = true;
+    /**
+     * Returns the offset added to the IDs of the inner states.
+     * @return The offset of the inner states.
+     */
+    @Override
+    protected int getInnerOffset() {
+        return innerOffset;
+    }
 
-            s.append(String.format("state S%s {\n", id));
-            for (var e : innerStates) {
-                s.append(e.toString());
-            }
-            s.append("}\n");
+    /**
+     * Writes the head of this state node as expected by PlantUML unless it has been written already.
+     * A reference is written as a simple state naming the composite state it shares the content of.
+     * @param out The sink to write to.
+     * @param offset The offset added to the ID of this state.
+     * @param rendered The IDs of the states whose content has been written by the current render so far. Prevents
+     *                 writing this state again for self-transitions.
+     * @return Whether the inner states and edges of this state should be written.
+     * @throws IOException If writing to the sink fails.
+     */
+    @Override
+    protected boolean beginRender(Appendable out, int offset, Set<Integer> rendered) throws IOException {
+        if (!rendered.add(id + offset)) {
+            return false;
+        }
 
-            s.append(super.toString());
+        out.append("state S").append(Integer.toString(id + offset));
+        if (template != null) {
+            out.append(" : same as S").append(Integer.toString(template.id + offset)).append('\n');
+        } else {
+            out.append(" {\n");
         }
+        return true;
+    }
 
-        return s.toString();
+    /**
+     * Closes the body of this state node after its inner states have been written.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    @Override
+    protected void endInnerStates(Appendable out) throws IOException {
+        if (template == null) {
+            out.append("}\n");
+        }
     }
 }
@@ -1,7 +1,38 @@
 package de.thm.swtp.statediagram;
 
+import java.io.IOException;
+
 /**
  * Abstract representation of a state node.
  */
 public abstract class Node {
+
+    /**
+     * Writes the PlantUML representation of this node to the given sink.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
+     */
+    public abstract void render(Appendable out) throws IOException;
+
+    /**
+     * Counts the states and transitions of this node and everything reachable from it.
+     * @return The statistics of the state diagram.
+     */
+    public abstract GraphStatistics statistics();
+
+    /**
+     * Generates a string representation of this node as expected by PlantUML.
+     * @return The string representation.
+     */
+    @Override
+    public String toString() {
+        var s = new StringBuilder();
+        try {
+            render(s);
+        } catch (IOException e) {
+            // StringBuilder never throws.
+            throw new IllegalStateException(e);
+        }
+        return s.toString();
+    }
 }
@@ -0,0 +1,123 @@
+package de.thm.swtp.statediagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the states and transitions of a single block or branch generated in advance, with IDs starting at 0, and
+ * replays them into the graph of the whole diagram once the first ID of the fragment is known. The replay makes the
+ * same calls in the same order as generating the fragment in place, so every graph receives identical states.
+ * <p>
+ * Every call is stored as four ints: the kind of call and its arguments.
+ */
+class RecordedGraph implements StateGraphSink {
+
+    // Source of the transition entering the fragment, which is replaced by the actual source when replaying.
+    static final int ENTRY = -1;
+
+    private static final int STATE = 0;
+    private static final int COMPOSITE_STATE = 1;
+    private static final int INNER_STATE = 2;
+    private static final int TRANSITION = 3;
+
+    private int[] calls = new int[64];
+    private int size = 0;
+    // The triggers of the recorded transitions, referred to by index.
+    private final List<Symbol> triggers = new ArrayList<>();
+    private int stateCount = 0;
+
+    /**
+     * Records a call.
+     * @param kind The kind of call.
+     * @param a The first argument.
+     * @param b The second argument.
+     * @param c The third argument.
+     */
+    private void record(int kind, int a, int b, int c) {
+        if (size + 4 > calls.length) {
+            calls = Arrays.copyOf(calls, calls.length * 2);
+        }
+        calls[size++] = kind;
+        calls[size++] = a;
+        calls[size++] = b;
+        calls[size++] = c;
+    }
+
+    /**
+     * Records a simple state.
+     * @param id The ID of the state.
+     * @param startState Whether the state is a start state.
+     * @param endState Whether the state is an end state.
+     */
+    @Override
+    public void addState(int id, boolean startState, boolean endState) {
+        record(STATE, id, startState ? 1 : 0, endState ? 1 : 0);
+        stateCount = id + 1;
+    }
+
+    /**
+     * Records a composite state.
+     * @param id The ID of the state.
+     */
+    @Override
+    public void addCompositeState(int id) {
+        record(COMPOSITE_STATE, id, 0, 0);
+        stateCount = id + 1;
+    }
+
+    /**
+     * Records a state added to the content of a composite state.
+     * @param compositeState The ID of the composite state.
+     * @param state The ID of the inner state.
+     */
+    @Override
+    public void addInnerState(int compositeState, int state) {
+        record(INNER_STATE, compositeState, state, 0);
+    }
+
+    /**
+     * Records a transition.
+     * @param source The ID of the state the transition starts at or {@link #ENTRY}.
+     * @param target The ID of the state the transition leads to.
+     * @param trigger The trigger or guard of the transition or null if it does not require an input (epsilon).
+     */
+    @Override
+    public void addTransition(int source, int target, Symbol trigger) {
+        var index = -1;
+        if (trigger != null) {
+            index = triggers.size();
+            triggers.add(trigger);
+        }
+        record(TRANSITION, source, target, index);
+    }
+
+    /**
+     * Returns the number of state IDs used by the fragment.
+     * @return The number of states.
+     */
+    int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Replays the recorded calls into another graph.
+     * @param graph The graph to add the states and transitions to.
+     * @param firstId The ID the first state of the fragment gets in the graph.
+     * @param entrySource The ID of the state the transition entering the fragment starts at.
+     */
+    void replay(StateGraphSink graph, int firstId, int entrySource) {
+        for (var i = 0; i < size; i += 4) {
+            var a = calls[i + 1];
+            var b = calls[i + 2];
+            var c = calls[i + 3];
+            switch (calls[i]) {
+                case STATE -> graph.addState(a + firstId, b != 0, c != 0);
+                case COMPOSITE_STATE -> graph.addCompositeState(a + firstId);
+                case INNER_STATE -> graph.addInnerState(a + firstId, b + firstId);
+                default -> graph.addTransition(a == ENTRY ? entrySource : a + firstId, b + firstId,
+                        c >= 0 ? triggers.get(c) : null);
+            }
+        }
+    }
+}
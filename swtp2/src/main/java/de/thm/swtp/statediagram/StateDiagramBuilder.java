@@ -0,0 +1,640 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import de.thm.swtp.sequencediagram.SequenceEvent.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the state diagram of a single participant from the events of a sequence diagram, one event at a time.
+ * Several builders can be fed from a single pass over the events. States are referred to by their IDs and written
+ * to a {@link StateGraphSink}, so the same builder produces object graphs as well as compact graphs.
+ */
+class StateDiagramBuilder {
+
+    private final String targetParticipant;
+    private final StateGraphSink graph;
+    private final SymbolTable symbols;
+    // Hands out the state IDs of the diagram being generated.
+    private final StateIdAllocator stateIds = new StateIdAllocator();
+    // Blocks (the diagram itself, loops and branches of alt/opt blocks) that are currently open, innermost on top.
+    // Used instead of recursion so the nesting depth is only limited by the heap.
+    private final Deque<Block> blocks = new ArrayDeque<>();
+    // Trigger of the last message. The state it leads to depends on the following event, so it is only
+    // generated once that event is known. Null if there is no such message.
+    private Symbol pendingTrigger;
+    private int idleState;
+    // Subgraphs of top-level blocks reused from a previous transformation or null if nothing is reused.
+    private final SubgraphCache subgraphs;
+    // Key and first ID of the top-level block currently being generated, which is added to the subgraphs once it is
+    // closed. Null if there is no such block.
+    private SubgraphCache.Key groupKey;
+    // Fragments of the sequence diagram whose states are shared between identical copies or null if nothing is
+    // shared. Sharing requires a StateNodeGraph, like reusing subgraphs.
+    private final FragmentIndex fragments;
+    // The states generated for every distinct fragment so far, by fragment.
+    private final Map<FragmentIndex.Fragment, SubgraphCache.Subgraph> sharedFragments = new HashMap<>();
+    // Blocks generated from their events which are added to the shared fragments once they are closed, innermost on
+    // top.
+    private final Deque<OpenFragment> openFragments = new ArrayDeque<>();
+    // The branch opened by the event currently being generated or null if it does not open a branch.
+    private FragmentIndex.Fragment openingBranch;
+    // The index of the next event to generate, which skips the events of a shared branch.
+    private int nextEvent;
+    // Whether the states of identical fragments are shared, which requires fragments and a StateNodeGraph.
+    private final boolean shareFragments;
+    // Blocks and branches whose states have been generated in advance, by fragment identity, as the transition
+    // entering a block depends on the message before it.
+    private final Map<FragmentIndex.Fragment, RecordedGraph> prebuilt;
+
+    /**
+     * A block whose states are currently being generated from its events.
+     * @param fragment The fragment of the block.
+     * @param wrapperState The composite state wrapping all states of the block.
+     * @param depth The number of open blocks when the block was opened.
+     */
+    private record OpenFragment(FragmentIndex.Fragment fragment, int wrapperState, int depth) {
+    }
+
+    /**
+     * A block of the sequence diagram whose events are currently being transformed.
+     */
+    private static class Block {
+
+        // The state the next generated state is appended to.
+        protected int currentState;
+
+        /**
+         * Creates a new block.
+         * @param currentState The state the first generated state of this block is appended to.
+         */
+        Block(int currentState) {
+            this.currentState = currentState;
+        }
+    }
+
+    /**
+     * A single branch of an alt or opt block.
+     */
+    private static class Branch extends Block {
+
+        private final int branchState;
+        private final int baseState;
+        private final int endState;
+        // Whether this branch belongs to an alt block and can therefore be followed by further branches.
+        private final boolean alternative;
+        // The fragment of this branch or null if its states are not shared.
+        private final FragmentIndex.Fragment fragment;
+        // Whether the content of the branch state is shared with an identical branch generated before, in which
+        // case the events of the branch are skipped.
+        private final boolean shared;
+
+        /**
+         * Creates a new branch.
+         * @param branchState The composite state wrapping the content of this branch.
+         * @param startState The start state inside the branch state.
+         * @param baseState The state the branch is appended to.
+         * @param endState The state the branch leads to once it is finished.
+         * @param alternative Whether this branch belongs to an alt block.
+         */
+        Branch(int branchState, int startState, int baseState, int endState, boolean alternative) {
+            this(branchState, startState, baseState, endState, alternative, null, false);
+        }
+
+        /**
+         * Creates a new branch whose states are shared with identical branches.
+         * @param branchState The composite state wrapping the content of this branch.
+         * @param startState The start state inside the branch state.
+         * @param baseState The state the branch is appended to.
+         * @param endState The state the branch leads to once it is finished.
+         * @param alternative Whether this branch belongs to an alt block.
+         * @param fragment The fragment of this branch or null if its states are not shared.
+         * @param shared Whether the content of the branch state is shared with a branch generated before.
+         */
+        Branch(int branchState, int startState, int baseState, int endState, boolean alternative,
+               FragmentIndex.Fragment fragment, boolean shared) {
+            super(startState);
+            this.branchState = branchState;
+            this.baseState = baseState;
+            this.endState = endState;
+            this.alternative = alternative;
+            this.fragment = fragment;
+            this.shared = shared;
+        }
+    }
+
+    /**
+     * The body of a loop block.
+     */
+    private static class Loop extends Block {
+
+        private final int innerWrapperState;
+        private final int innerEndState;
+        private final int exitState;
+        private final String guard;
+
+        /**
+         * Creates a new loop body.
+         * @param innerWrapperState The composite state wrapping the body of the loop.
+         * @param currentState The state the first generated state of the body is appended to.
+         * @param innerEndState The end state inside the inner wrapper state.
+         * @param exitState The state the loop leads to once the guard does not hold anymore.
+         * @param guard The guard of the loop.
+         */
+        Loop(int innerWrapperState, int currentState, int innerEndState, int exitState, String guard) {
+            super(currentState);
+            this.innerWrapperState = innerWrapperState;
+            this.innerEndState = innerEndState;
+            this.exitState = exitState;
+            this.guard = guard;
+        }
+    }
+
+    /**
+     * What a {@link StateDiagramBuilder} reuses instead of generating it from the events.
+     *
+     * @param subgraphs The subgraphs of a previous transformation or null if nothing should be reused.
+     * @param fragments The fragments of the sequence diagram or null if nothing should be shared. Events must be
+     *                  generated with {@link #generate(int, SequenceEvent)} for fragments to be shared.
+     * @param prebuilt  The states of the blocks and branches generated in advance, by fragment identity. Their events
+     *                  are skipped by {@link #generate(int, SequenceEvent)}.
+     */
+    record Reuse(SubgraphCache subgraphs, FragmentIndex fragments,
+                 Map<FragmentIndex.Fragment, RecordedGraph> prebuilt) {
+
+        // Generates every state from the events.
+        static final Reuse NONE = new Reuse(null, null, Map.of());
+    }
+
+    /**
+     * Creates a new builder without generating any states.
+     *
+     * @param targetParticipant The code of the participant to generate the state diagram for.
+     * @param graph             The graph to write the states and transitions to.
+     * @param symbols           The table to intern triggers and guards in.
+     * @param reuse             What is reused instead of generated.
+     */
+    private StateDiagramBuilder(String targetParticipant, StateGraphSink graph, SymbolTable symbols, Reuse reuse) {
+        this.targetParticipant = targetParticipant;
+        this.graph = graph;
+        this.symbols = symbols;
+        this.subgraphs = reuse.subgraphs();
+        this.fragments = reuse.fragments();
+        this.prebuilt = reuse.prebuilt();
+        shareFragments = fragments != null && graph instanceof StateNodeGraph;
+        idleState = RecordedGraph.ENTRY;
+    }
+
+    /**
+     * Creates a new builder for the state diagram of the given participant.
+     *
+     * @param targetParticipant The code of the participant to generate the state diagram for.
+     * @param graph             The graph to write the states and transitions to. Must be a {@link StateNodeGraph}
+     *                          if subgraphs are reused or fragments are shared, as only state objects can be shared.
+     * @param symbols           The table to intern triggers and guards in.
+     * @param reuse             What is reused instead of generated.
+     * @return The builder.
+     */
+    static StateDiagramBuilder forDiagram(String targetParticipant, StateGraphSink graph, SymbolTable symbols,
+                                          Reuse reuse) {
+        var builder = new StateDiagramBuilder(targetParticipant, graph, symbols, reuse);
+        var startState = builder.newState(true, false);
+        builder.idleState = builder.newState();
+        graph.addTransition(startState, builder.idleState, null);
+
+        builder.blocks.push(new Block(builder.idleState));
+        return builder;
+    }
+
+    /**
+     * Creates a builder for the states of a single block or branch, which are generated in advance with IDs starting
+     * at 0 and inserted into the state diagram of the participant later. The events of the fragment must be passed
+     * to {@link #generate(SequenceEvent)}, followed by {@link #finishFragment()}.
+     *
+     * @param targetParticipant The code of the participant to generate the state diagram for.
+     * @param graph             The graph to record the states and transitions in.
+     * @param symbols           The table to intern triggers and guards in.
+     * @param fragment          The block or branch.
+     * @return The builder.
+     */
+    static StateDiagramBuilder forFragment(String targetParticipant, RecordedGraph graph, SymbolTable symbols,
+                                           FragmentIndex.Fragment fragment) {
+        var builder = new StateDiagramBuilder(targetParticipant, graph, symbols, Reuse.NONE);
+        var previous = fragment.start() > 0 ? fragment.events().get(fragment.start() - 1) : null;
+
+        if (fragment.branch()) {
+            // Entered from the base state of its block like in generateBranch, which adds the transition leaving it.
+            var guard = previous instanceof GroupStartEvent g ? g.guard() : ((ElseEvent) previous).guard();
+            var branchState = builder.newCompositeState();
+            var startState = builder.newInnerState(branchState, true, false);
+            graph.addTransition(RecordedGraph.ENTRY, branchState, symbols.guard(guard));
+            builder.blocks.push(new Branch(branchState, startState, RecordedGraph.ENTRY, RecordedGraph.ENTRY, false));
+        } else {
+            // Only a message right before the block is still pending, every other event generates its states.
+            builder.blocks.push(new Block(RecordedGraph.ENTRY));
+            if (previous instanceof MessageEvent m) {
+                builder.pendingTrigger = symbols.trigger(m.label(), m.from().equals(targetParticipant));
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a new state with the next free ID.
+     *
+     * @return The ID of the new state.
+     */
+    private int newState() {
+        return newState(false, false);
+    }
+
+    /**
+     * Creates a new start or end state with the next free ID.
+     *
+     * @param startState Whether the state is a start state.
+     * @param endState   Whether the state is an end state.
+     * @return The ID of the new state.
+     */
+    private int newState(boolean startState, boolean endState) {
+        var id = stateIds.next();
+        graph.addState(id, startState, endState);
+        return id;
+    }
+
+    /**
+     * Creates a new composite state with the next free ID.
+     *
+     * @return The ID of the new composite state.
+     */
+    private int newCompositeState() {
+        var id = stateIds.next();
+        graph.addCompositeState(id);
+        return id;
+    }
+
+    /**
+     * Creates a new start or end state with the next free ID inside a composite state.
+     *
+     * @param compositeState The composite state to add the state to.
+     * @param startState     Whether the state is a start state.
+     * @param endState       Whether the state is an end state.
+     * @return The ID of the new state.
+     */
+    private int newInnerState(int compositeState, boolean startState, boolean endState) {
+        var id = newState(startState, endState);
+        graph.addInnerState(compositeState, id);
+        return id;
+    }
+
+    /**
+     * Appends a state to the current state of the innermost block. The edge carries the trigger of the pending
+     * message if there is one.
+     *
+     * @param state The state to append.
+     */
+    private void appendState(int state) {
+        var block = blocks.peek();
+        assert block != null;
+        graph.addTransition(block.currentState, state, pendingTrigger);
+        pendingTrigger = null;
+        block.currentState = state;
+    }
+
+    /**
+     * Generates the state the pending message leads to if it is not followed by a grouping.
+     */
+    private void generatePendingState() {
+        if (pendingTrigger != null) {
+            appendState(newState());
+        }
+    }
+
+    /**
+     * Generates state diagram for a sequence diagram message (par1 --> par2: trigger).
+     *
+     * @param m The message.
+     */
+    private void generateMessage(MessageEvent m) {
+        generatePendingState();
+
+        pendingTrigger = symbols.trigger(m.label(), m.from().equals(targetParticipant));
+    }
+
+    /**
+     * Generates the states of a grouping and opens its first block.
+     *
+     * @param g The grouping start.
+     */
+    private void generateGrouping(GroupStartEvent g) {
+        switch (g.type()) {
+            case "alt" -> generateAlt(g);
+            case "loop" -> generateLoop(g);
+            case "opt" -> generateOpt(g);
+            default -> throw new IllegalStateException(String.format("Group type %s not implemented", g.type()));
+        }
+    }
+
+    /**
+     * Generates state diagram for a sequence diagram loop block (loop [con] [events] end).
+     *
+     * @param g The grouping start of the loop.
+     */
+    private void generateLoop(GroupStartEvent g) {
+        var outerWrapperState = newCompositeState();
+        var outerStartState = newInnerState(outerWrapperState, true, false);
+
+        var innerWrapperState = newCompositeState();
+        graph.addTransition(outerStartState, innerWrapperState, null);
+        var innerStartState = newInnerState(innerWrapperState, true, false);
+        var innerEndState = newState(false, true);
+        var exitState = newState(false, true);
+
+        var currentState = newState();
+        graph.addTransition(innerStartState, currentState, null);
+
+        appendState(outerWrapperState);
+        blocks.push(new Loop(innerWrapperState, currentState, innerEndState, exitState, g.guard()));
+    }
+
+    /**
+     * Generates state diagram for a sequence diagram opt block (opt [con] [events] end).
+     *
+     * @param g The grouping start of the opt block.
+     */
+    private void generateOpt(GroupStartEvent g) {
+        var wrapperState = newCompositeState();
+        var startState = newInnerState(wrapperState, true, false);
+        var endState = newState(false, true);
+
+        graph.addTransition(startState, endState, symbols.negatedGuard(g.guard()));
+
+        appendState(wrapperState);
+        generateBranch(startState, endState, g.guard(), false);
+    }
+
+    /**
+     * Generates state diagram for a sequence diagram alt block.
+     *
+     * @param g The grouping start of the alt block.
+     */
+    private void generateAlt(GroupStartEvent g) {
+        var wrapperState = newCompositeState();
+
+        var startState = newInnerState(wrapperState, true, false);
+        var baseState = newState();
+        graph.addTransition(startState, baseState, null);
+        var endState = newState(false, true);
+
+        appendState(wrapperState);
+        generateBranch(baseState, endState, g.guard(), true);
+    }
+
+    /**
+     * Opens a single branch of an alt or opt block.
+     *
+     * @param baseState   The state to append this branch to.
+     * @param endState    The state the branch leads to once it is finished.
+     * @param guard       The guard of the branch.
+     * @param alternative Whether the branch belongs to an alt block.
+     */
+    private void generateBranch(int baseState, int endState, String guard, boolean alternative) {
+        var fragment = openingBranch;
+        openingBranch = null;
+        var template = fragment != null && shareFragments ? sharedFragments.get(fragment) : null;
+        if (template != null) {
+            var branchState = shareFragment(template);
+            graph.addTransition(baseState, branchState, symbols.guard(guard));
+            blocks.push(new Branch(branchState, branchState, baseState, endState, alternative, fragment, true));
+            // Only the else or end closing the branch is left to generate.
+            nextEvent = fragment.end();
+            return;
+        }
+        var recorded = fragment != null ? prebuilt.get(fragment) : null;
+        if (recorded != null) {
+            // The recording includes the transition entering the branch and its inner end state.
+            var branchState = insertFragment(recorded, baseState);
+            if (shareFragments) {
+                addSharedFragment(fragment, branchState);
+            }
+            blocks.push(new Branch(branchState, branchState, baseState, endState, alternative, fragment, true));
+            nextEvent = fragment.end();
+            return;
+        }
+
+        var branchState = newCompositeState();
+        var currentState = newInnerState(branchState, true, false);
+        graph.addTransition(baseState, branchState, symbols.guard(guard));
+
+        blocks.push(new Branch(branchState, currentState, baseState, endState, alternative, fragment, false));
+    }
+
+    /**
+     * Adds a composite state sharing the states of an identical fragment generated before.
+     *
+     * @param template The states of the identical fragment.
+     * @return The ID of the new composite state.
+     */
+    private int shareFragment(SubgraphCache.Subgraph template) {
+        var id = stateIds.count();
+        ((StateNodeGraph) graph).addFragmentCopy(id, template.wrapperState(), template.stateCount());
+        stateIds.skip(template.stateCount());
+        return id;
+    }
+
+    /**
+     * Inserts the states of a block or branch generated in advance.
+     *
+     * @param recorded    The states of the fragment.
+     * @param entrySource The state the transition entering the fragment starts at.
+     * @return The ID of the composite state wrapping the fragment.
+     */
+    private int insertFragment(RecordedGraph recorded, int entrySource) {
+        var id = stateIds.count();
+        recorded.replay(graph, id, entrySource);
+        stateIds.skip(recorded.getStateCount());
+        return id;
+    }
+
+    /**
+     * Keeps the states of a fragment generated from its events, so identical fragments can share them.
+     *
+     * @param fragment     The fragment.
+     * @param wrapperState The composite state wrapping all states of the fragment.
+     */
+    private void addSharedFragment(FragmentIndex.Fragment fragment, int wrapperState) {
+        var state = (MultiStateNode) ((StateNodeGraph) graph).getState(wrapperState);
+        sharedFragments.put(fragment, new SubgraphCache.Subgraph(state, stateIds.count() - wrapperState));
+    }
+
+    /**
+     * Closes the innermost block on an else or end of a grouping. An else inside an alt block opens its next branch.
+     *
+     * @param g The else or end event.
+     */
+    private void closeBlock(SequenceEvent g) {
+        if (blocks.size() == 1) {
+            // There is no grouping to close.
+            return;
+        }
+
+        generatePendingState();
+        var block = blocks.pop();
+
+        if (block instanceof Loop l) {
+            graph.addTransition(l.currentState, l.innerEndState, null);
+
+            graph.addTransition(l.innerWrapperState, l.innerWrapperState, symbols.guard(l.guard));
+            graph.addTransition(l.innerWrapperState, l.exitState, symbols.negatedGuard(l.guard));
+        } else if (block instanceof Branch b) {
+            if (!b.shared) {
+                var innerEndState = newState(false, true);
+                graph.addTransition(b.currentState, innerEndState, null);
+                if (b.fragment != null && shareFragments) {
+                    addSharedFragment(b.fragment, b.branchState);
+                }
+            }
+
+            graph.addTransition(b.branchState, b.endState, null);
+
+            if (b.alternative && g instanceof ElseEvent e) {
+                generateBranch(b.baseState, b.endState, e.guard(), true);
+            }
+        }
+
+        var open = openFragments.peek();
+        if (open != null && open.depth() == blocks.size() && shareFragments) {
+            openFragments.pop();
+            addSharedFragment(open.fragment(), open.wrapperState());
+        }
+        cacheGroup();
+    }
+
+    /**
+     * Keeps the states of the top-level block for the next transformation once the block is finished.
+     */
+    private void cacheGroup() {
+        if (blocks.size() == 1 && groupKey != null) {
+            // The top-level block is finished, its wrapper state is the current state of the diagram.
+            var wrapperState = (MultiStateNode) ((StateNodeGraph) graph).getState(blocks.peek().currentState);
+            subgraphs.put(groupKey, new SubgraphCache.Subgraph(wrapperState, stateIds.count() - groupKey.firstId()));
+            groupKey = null;
+        }
+    }
+
+    /**
+     * Starts a top-level block. If the same block has been generated by a previous transformation, its states are
+     * reused and the events of the block must be skipped. Otherwise, the events of the block must be generated and
+     * the resulting states are kept for the next transformation.
+     *
+     * @param group The block.
+     * @return Whether the states of the block were reused.
+     */
+    boolean reuseGroup(SubgraphCache.Group group) {
+        var key = new SubgraphCache.Key(targetParticipant, stateIds.count(), group.events());
+        var subgraph = subgraphs.get(key);
+        if (subgraph == null) {
+            groupKey = key;
+            return false;
+        }
+
+        ((StateNodeGraph) graph).addReusedState(key.firstId(), subgraph.wrapperState(), subgraph.stateCount());
+        stateIds.skip(subgraph.stateCount());
+        appendState(key.firstId());
+        return true;
+    }
+
+    /**
+     * Generates the states for a single event of the sequence diagram.
+     *
+     * @param event The event.
+     */
+    void generate(SequenceEvent event) {
+        if (event instanceof MessageEvent m) {
+            generateMessage(m);
+        } else if (event instanceof GroupStartEvent g) {
+            generateGrouping(g);
+        } else {
+            closeBlock(event);
+        }
+    }
+
+    /**
+     * Generates the states for the event at the given index of the sequence diagram. If the event opens a block or
+     * branch identical to one generated before or generated in advance, its states are shared or inserted and its
+     * events must be skipped.
+     *
+     * @param index The index of the event.
+     * @param event The event.
+     * @return The index of the next event to generate.
+     */
+    int generate(int index, SequenceEvent event) {
+        nextEvent = index + 1;
+        if (fragments != null) {
+            var block = event instanceof GroupStartEvent ? fragments.block(index) : null;
+            if (block != null) {
+                var template = shareFragments ? sharedFragments.get(block) : null;
+                if (template != null) {
+                    appendState(shareFragment(template));
+                    cacheGroup();
+                    return block.end();
+                }
+                var recorded = prebuilt.get(block);
+                if (recorded != null) {
+                    // The recording starts with the transition carrying the pending trigger.
+                    var current = blocks.peek();
+                    current.currentState = insertFragment(recorded, current.currentState);
+                    pendingTrigger = null;
+                    if (shareFragments) {
+                        addSharedFragment(block, current.currentState);
+                    }
+                    cacheGroup();
+                    return block.end();
+                }
+                if (shareFragments) {
+                    openFragments.push(new OpenFragment(block, stateIds.count(), blocks.size()));
+                }
+            }
+            openingBranch = fragments.branch(index);
+        }
+
+        generate(event);
+        openingBranch = null;
+        return nextEvent;
+    }
+
+    /**
+     * Finishes the states of a branch generated in advance after all its events have been generated. The else or end
+     * closing the branch is not part of it, so its inner end state is generated here.
+     */
+    void finishFragment() {
+        if (blocks.size() == 1 && blocks.peek() instanceof Branch b) {
+            generatePendingState();
+            var innerEndState = newState(false, true);
+            graph.addTransition(b.currentState, innerEndState, null);
+        }
+    }
+
+    /**
+     * Finishes the state diagram after all events have been generated.
+     *
+     * @throws IllegalStateException If a grouping has not been closed.
+     */
+    void finish() {
+        if (blocks.size() > 1) {
+            throw new IllegalStateException("Grouping is missing an end");
+        }
+
+        var block = blocks.peek();
+        assert block != null;
+        if (pendingTrigger != null || block.currentState == idleState) {
+            // Like every message, an empty diagram leads to a state of its own.
+            appendState(newState());
+        }
+
+        var endState = newState(false, true);
+        graph.addTransition(block.currentState, endState, null);
+    }
+}
@@ -1,20 +1,99 @@
 package de.thm.swtp.statediagram;
 
-import net.sourceforge.plantuml.sequencediagram.*;
-
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
- * Transforms a given sequence diagram into a semantically equivalent state diagram.
+ * Transforms a given sequence diagram into semantically equivalent state diagrams, one for each target participant.
  */
 public class StateDiagramTransformer {
 
-    private final SequenceDiagram sequenceDiagram;
-    private final String targetParticipantName;
-    private Iterator<Event> eventIterator;
-    private Event currentEvent;
-    private Participant targetParticipant;
+    // Target participant name which selects every participant of the sequence diagram.
+    public static final String ALL_PARTICIPANTS = "*";
+    // Number of events a single task generates at most when transforming in parallel. Smaller diagrams are always
+    // transformed sequentially.
+    private static final int PARALLEL_TASK_EVENTS = 4096;
+    // Blocks and branches with less than this fraction of the events of a task are generated in place when
+    // transforming in parallel, as recording and inserting them costs more than generating them.
+    private static final int MIN_FRAGMENT_FRACTION = 256;
+
+    private final SequenceDiagramModel sequenceDiagram;
+    private final List<String> targetParticipantNames;
+    private final SubgraphCache subgraphs;
+    private final boolean optimize;
+    // Number of events a single task generates at most or 0 to transform sequentially.
+    private final int taskEvents;
+
+    /**
+     * How a {@link StateDiagramTransformer} generates the state diagrams.
+     *
+     * @param subgraphs  The subgraphs of the previous transformation or null if nothing should be reused. Ignored when
+     *                   optimizing, as optimized diagrams do not share states. Reusing subgraphs transforms
+     *                   sequentially.
+     * @param optimize   Whether redundant empty edges and wrapper states should be removed, see
+     *                   {@link StateGraphOptimizer}.
+     * @param taskEvents The number of events a single task generates at most when transforming large diagrams on the
+     *                   common {@link ForkJoinPool} or 0 to transform sequentially.
+     */
+    public record Options(SubgraphCache subgraphs, boolean optimize, int taskEvents) {
+
+        // Sequential transformation without reusing subgraphs or optimizing.
+        public static final Options DEFAULT = new Options(null, false, 0);
+
+        /**
+         * Returns these options with the given subgraphs.
+         *
+         * @param subgraphs The subgraphs of the previous transformation or null if nothing should be reused.
+         * @return The new options.
+         */
+        public Options withSubgraphs(SubgraphCache subgraphs) {
+            return new Options(subgraphs, optimize, taskEvents);
+        }
+
+        /**
+         * Returns these options with optimizing switched on or off.
+         *
+         * @param optimize Whether redundant empty edges and wrapper states should be removed.
+         * @return The new options.
+         */
+        public Options withOptimize(boolean optimize) {
+            return new Options(subgraphs, optimize, taskEvents);
+        }
+
+        /**
+         * Returns these options with parallel transformation of large diagrams switched on or off. The generated
+         * diagrams are identical to the ones of a sequential transformation.
+         *
+         * @param parallel Whether large diagrams should be transformed on the common {@link ForkJoinPool}.
+         * @return The new options.
+         */
+        public Options withParallel(boolean parallel) {
+            return withTaskEvents(parallel ? PARALLEL_TASK_EVENTS : 0);
+        }
+
+        /**
+         * Returns these options with the given size of parallel tasks.
+         *
+         * @param taskEvents The number of events a single task generates at most or 0 to transform sequentially.
+         * @return The new options.
+         */
+        public Options withTaskEvents(int taskEvents) {
+            return new Options(subgraphs, optimize, taskEvents);
+        }
+    }
 
     /**
      * Creates a new StateDiagramTransformer which transformers the given sequence diagram into a semantically
@@ -24,223 +103,370 @@ public class StateDiagramTransformer {
      * @param targetParticipantName All messages that do not deal with this participant will be ignored.
      */
     public StateDiagramTransformer(SequenceDiagram sequenceDiagram, String targetParticipantName) {
-        this.sequenceDiagram = sequenceDiagram;
-        this.targetParticipantName = targetParticipantName;
+        this(sequenceDiagram, List.of(targetParticipantName));
     }
 
     /**
-     * Reads the next event of the provided sequence diagram.
+     * Creates a new StateDiagramTransformer which transformers the given sequence diagram into one state diagram
+     * for each of the given participants.
+     *
+     * @param sequenceDiagram        The sequence diagram to be transformed.
+     * @param targetParticipantNames The participants to generate state diagrams for. {@link #ALL_PARTICIPANTS}
+     *                               selects every participant of the sequence diagram.
      */
-    private void nextEvent() {
-        if (eventIterator.hasNext()) {
-            currentEvent = eventIterator.next();
-        } else {
-            currentEvent = null;
-        }
+    public StateDiagramTransformer(SequenceDiagram sequenceDiagram, List<String> targetParticipantNames) {
+        this(SequenceDiagramModel.of(sequenceDiagram), targetParticipantNames, Options.DEFAULT);
     }
 
     /**
-     * Generates state diagram for a sequence diagram message (par1 --> par2: trigger).
+     * Creates a new StateDiagramTransformer which transformers the given sequence diagram into one state diagram
+     * for each of the given participants.
      *
-     * @param target The state node to append to.
-     * @return The next state node to append to.
+     * @param sequenceDiagram        The sequence diagram to be transformed, read by any parser.
+     * @param targetParticipantNames The participants to generate state diagrams for. {@link #ALL_PARTICIPANTS}
+     *                               selects every participant of the sequence diagram.
+     * @param options                How the state diagrams are generated.
      */
-    private StateNode generateMessage(StateNode target) {
-        var m = (Message) currentEvent;
-
-        nextEvent();
+    public StateDiagramTransformer(SequenceDiagramModel sequenceDiagram, List<String> targetParticipantNames,
+                                   Options options) {
+        this.sequenceDiagram = sequenceDiagram;
+        this.targetParticipantNames = targetParticipantNames;
+        this.subgraphs = options.optimize() ? null : options.subgraphs();
+        this.optimize = options.optimize();
+        this.taskEvents = options.taskEvents();
+    }
 
-        var trigger = m.getLabel().get(0).toString();
-        if (m.getParticipant1().equals(targetParticipant)) {
-            trigger = String.format("/ %s", trigger);
+    /**
+     * Looks up the target participants in the sequence diagram.
+     *
+     * @return The codes of the target participants without duplicates.
+     * @throws IllegalStateException If a target participant does not exist.
+     */
+    private List<String> findTargetParticipants() {
+        var participants = new LinkedHashSet<String>();
+        for (var name : targetParticipantNames) {
+            if (name.equals(ALL_PARTICIPANTS)) {
+                participants.addAll(sequenceDiagram.participants());
+                continue;
+            }
+
+            if (!sequenceDiagram.participants().contains(name)) {
+                throw new IllegalStateException("Could not find participant with name " + name);
+            }
+            participants.add(name);
         }
+        return new ArrayList<>(participants);
+    }
 
-        var s = generateState();
-        target.addEdge(trigger, s);
+    /**
+     * Generates the states of some blocks and branches of every participant in a fork/join task. The fragments are
+     * split in halves until a task covers few enough events.
+     */
+    private static class FragmentTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<FragmentIndex.Fragment> fragments;
+        private final List<String> participants;
+        private final int taskEvents;
+        // Set once the transformation was interrupted, the tasks then stop at the next fragment or event.
+        private final AtomicBoolean cancelled;
+        // The recorded states by fragment and participant, filled by the tasks.
+        private final RecordedGraph[][] recorded;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates a new task.
+         *
+         * @param fragments    All fragments to generate, in the order of their events.
+         * @param participants The participants to generate the states of.
+         * @param taskEvents   The number of events a single task generates at most.
+         * @param cancelled    The flag telling the tasks to stop.
+         * @param recorded     The array to store the recorded states in.
+         * @param from         The index of the first fragment of this task.
+         * @param to           The index after the last fragment of this task.
+         */
+        FragmentTask(List<FragmentIndex.Fragment> fragments, List<String> participants, int taskEvents,
+                     AtomicBoolean cancelled, RecordedGraph[][] recorded, int from, int to) {
+            this.fragments = fragments;
+            this.participants = participants;
+            this.taskEvents = taskEvents;
+            this.cancelled = cancelled;
+            this.recorded = recorded;
+            this.from = from;
+            this.to = to;
+        }
 
-        return s;
+        /**
+         * Generates the fragments of this task or splits it in halves.
+         */
+        @Override
+        protected void compute() {
+            // The events between the fragments are generated in place, so they only roughly count.
+            var events = fragments.get(to - 1).end() - fragments.get(from).start();
+            if (to - from > 1 && events > taskEvents) {
+                var middle = (from + to) >>> 1;
+                invokeAll(new FragmentTask(fragments, participants, taskEvents, cancelled, recorded, from, middle),
+                        new FragmentTask(fragments, participants, taskEvents, cancelled, recorded, middle, to));
+                return;
+            }
+
+            for (var i = from; i < to; i++) {
+                var fragment = fragments.get(i);
+                for (var j = 0; j < participants.size(); j++) {
+                    var graph = new RecordedGraph();
+                    var builder = StateDiagramBuilder.forFragment(participants.get(j), graph, SymbolTable.shared(),
+                            fragment);
+                    for (var e = fragment.start(); e < fragment.end(); e++) {
+                        if (((e - fragment.start()) & 1023) == 0 && cancelled.get()) {
+                            return;
+                        }
+                        builder.generate(fragment.events().get(e));
+                    }
+                    builder.finishFragment();
+                    recorded[i][j] = graph;
+                }
+            }
+        }
     }
 
     /**
-     * Generates the next state node based on the current event.
-     *
-     * @return A newly generated state node.
+     * Stops a transformation whose thread was interrupted, e.g. because a request of the server timed out. The flag
+     * is only checked every 1024 steps.
+     * @param step The number of the current step, e.g. the index of the event.
+     * @throws CancellationException If the current thread was interrupted.
      */
-    private StateNode generateState() {
-        if (currentEvent instanceof GroupingStart g) {
-            return switch (g.getTitle()) {
-                case "alt" -> generateAlt();
-                case "loop" -> generateLoop();
-                case "opt" -> generateOpt();
-                default ->
-                        throw new IllegalStateException(String.format("Group type %s not implemented", g.getTitle()));
-            };
-        } else {
-            return new StateNode();
+    static void stopIfInterrupted(int step) {
+        if ((step & 1023) == 0 && Thread.interrupted()) {
+            throw new CancellationException("Transformation was interrupted.");
         }
     }
 
     /**
-     * Generates state diagram for a sequence diagram loop block (loop [con] [events] end).
+     * Generates the states of independent blocks and branches of every participant in advance, in parallel. Blocks
+     * and branches small enough for a task are taken as a whole, larger ones are searched for smaller ones.
      *
-     * @return The next state node to append to.
+     * @param fragments    The fragments of the sequence diagram.
+     * @param participants The participants to generate the states of.
+     * @return The recorded states by fragment identity, for every participant.
      */
-    private StateNode generateLoop() {
-        var outerWrapperState = new MultiStateNode();
-        var outerStartState = new StateNode(true, false);
-        outerWrapperState.addInnerState(outerStartState);
-
-        var innerWrapperState = new MultiStateNode();
-        outerStartState.addEmptyEdge(innerWrapperState);
-        var innerStartState = new StateNode(true, false);
-        innerWrapperState.addInnerState(innerStartState);
-        var innerEndState = new StateNode(false, true);
-        var exitState = new StateNode(false, true);
-
-        var guard = ((Grouping) currentEvent).getComment();
-        nextEvent();
-        var currentState = new StateNode();
-        innerStartState.addEmptyEdge(currentState);
-        while (!(currentEvent instanceof Grouping g && (g.getType() == GroupingType.END || g.getType() == GroupingType.ELSE))) {
-            currentState = generate(currentState);
+    private List<Map<FragmentIndex.Fragment, RecordedGraph>> prebuild(FragmentIndex fragments,
+                                                                      List<String> participants) {
+        var events = sequenceDiagram.events().size();
+        // A few tasks per thread even out blocks of different sizes.
+        var maxEvents = Math.max(taskEvents, events / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        var selected = fragments.partition(taskEvents / MIN_FRAGMENT_FRACTION, maxEvents);
+        var recorded = new RecordedGraph[selected.size()][participants.size()];
+        if (!selected.isEmpty()) {
+            // Unlike invoke, waiting for the submitted task can be interrupted. The tasks themselves run on the common
+            // pool and are told to stop, as they do not see the interrupt of this thread.
+            var cancelled = new AtomicBoolean();
+            var task = ForkJoinPool.commonPool().submit(
+                    new FragmentTask(selected, participants, taskEvents, cancelled, recorded, 0, selected.size()));
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                cancelled.set(true);
+                throw new CancellationException("Transformation was interrupted.");
+            } catch (ExecutionException e) {
+                var cause = e.getCause();
+                if (cause instanceof RuntimeException r) {
+                    throw r;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(cause);
+            }
         }
 
-        nextEvent();
-
-        currentState.addEmptyEdge(innerEndState);
-
-        innerWrapperState.addEdge(guard, innerWrapperState);
-        innerWrapperState.addEdge("!(" + guard + ")", exitState);
-
-        return outerWrapperState;
+        var prebuilt = new ArrayList<Map<FragmentIndex.Fragment, RecordedGraph>>();
+        for (var j = 0; j < participants.size(); j++) {
+            var graphs = new IdentityHashMap<FragmentIndex.Fragment, RecordedGraph>();
+            for (var i = 0; i < selected.size(); i++) {
+                graphs.put(selected.get(i), recorded[i][j]);
+            }
+            prebuilt.add(graphs);
+        }
+        return prebuilt;
     }
 
     /**
-     * Generates state diagram for a sequence diagram opt block (opt [con] [events] end).
+     * Generates the state diagrams of all target participants into the given graphs. The events of the sequence
+     * diagram are only walked once, regardless of the number of participants. When transforming in parallel, the
+     * states of large blocks and branches are generated in advance and inserted in the order of their events, so
+     * the state IDs are the same as when transforming sequentially.
      *
-     * @return The next state node to append to.
+     * @param newGraph       Creates the graph of a participant from its name.
+     * @param shareFragments Whether the states of identical blocks and branches are generated once and shared,
+     *                       which requires {@link StateNodeGraph}s. Ignored when optimizing.
+     * @param <G>            The type of the graphs.
+     * @return The generated graphs by participant name, in the order of the target participants.
+     * @throws IllegalStateException If a target participant does not exist or the diagram contains unsupported
+     *                               groupings.
      */
-    private StateNode generateOpt() {
-        var wrapperState = new MultiStateNode();
-        var startState = new StateNode(true, false);
-        wrapperState.addInnerState(startState);
-        var endState = new StateNode(false, true);
-
-        startState.addEdge("!(" + ((Grouping) currentEvent).getComment() + ")", endState);
+    private <G extends StateGraphSink> Map<String, G> build(Function<String, G> newGraph, boolean shareFragments) {
+        var events = sequenceDiagram.events();
+        var participants = findTargetParticipants();
+        var parallel = taskEvents > 0 && subgraphs == null && events.size() > taskEvents;
+        var fragments = (shareFragments && !optimize) || parallel ? FragmentIndex.of(events) : null;
+        var prebuilt = parallel ? prebuild(fragments, participants) : null;
+        var graphs = new LinkedHashMap<String, G>();
+        var builders = new ArrayList<StateDiagramBuilder>();
+        // The diagrams are only written to their graphs once they are complete and optimized.
+        var optimizers = new ArrayList<StateGraphOptimizer>();
+        for (var p : participants) {
+            var graph = newGraph.apply(p);
+            graphs.put(p, graph);
+            Map<FragmentIndex.Fragment, RecordedGraph> recorded = parallel ? prebuilt.get(builders.size()) : Map.of();
+            if (optimize) {
+                var optimizer = new StateGraphOptimizer();
+                optimizers.add(optimizer);
+                builders.add(StateDiagramBuilder.forDiagram(p, optimizer, SymbolTable.shared(),
+                        new StateDiagramBuilder.Reuse(null, fragments, recorded)));
+            } else {
+                builders.add(StateDiagramBuilder.forDiagram(p, graph, SymbolTable.shared(),
+                        new StateDiagramBuilder.Reuse(subgraphs, fragments, recorded)));
+            }
+        }
 
-        generateBranch(startState, endState);
+        if (subgraphs == null && fragments == null) {
+            for (var i = 0; i < events.size(); i++) {
+                stopIfInterrupted(i);
+                for (var b : builders) {
+                    b.generate(events.get(i));
+                }
+            }
+        } else {
+            Map<Integer, SubgraphCache.Group> groups = Map.of();
+            if (subgraphs != null) {
+                subgraphs.beginTransformation();
+                groups = SubgraphCache.findGroups(events);
+            }
+            // Index of the first event each builder still has to generate. Events of reused blocks, shared
+            // fragments and fragments generated in advance are skipped.
+            var next = new int[builders.size()];
+            for (var i = 0; i < events.size(); i++) {
+                stopIfInterrupted(i);
+                var group = groups.get(i);
+                for (var j = 0; j < builders.size(); j++) {
+                    if (i < next[j]) {
+                        continue;
+                    }
+                    if (group != null && builders.get(j).reuseGroup(group)) {
+                        next[j] = group.end() + 1;
+                    } else {
+                        next[j] = builders.get(j).generate(i, events.get(i));
+                    }
+                }
+            }
+        }
 
-        nextEvent();
+        for (var b : builders) {
+            b.finish();
+        }
+        if (optimize) {
+            var i = 0;
+            for (var graph : graphs.values()) {
+                var optimizer = optimizers.get(i++);
+                optimizer.optimize();
+                optimizer.writeTo(graph);
+            }
+        }
+        return graphs;
+    }
 
-        return wrapperState;
+    /**
+     * Transforms the given sequence diagram to a state diagram for every target participant. The events of the
+     * sequence diagram are only walked once, regardless of the number of participants. Identical alt, loop and opt
+     * blocks and branches share their states, which are written with the IDs of every copy.
+     *
+     * @return The generated state diagrams by participant name, in the order of the target participants.
+     * @throws IllegalStateException If a target participant does not exist or the diagram contains unsupported
+     *                               groupings.
+     */
+    public Map<String, DiagramNode> transformAll() {
+        return toDiagramNodes(build(p -> new StateNodeGraph(), true));
     }
 
     /**
-     * Generates a new state node and appends it to the given target state node.
+     * Transforms the given sequence diagram to a state diagram for every target participant in which every copy of
+     * an identical alt, loop or opt block or branch is written as a reference to the first one instead of with its
+     * content. The diagrams describe the same behaviour in less space. Subgraphs are not reused.
      *
-     * @param target The state node to append the newly generated state to.
-     * @return The next state node to append to.
+     * @return The generated state diagrams by participant name, in the order of the target participants.
+     * @throws IllegalStateException If a target participant does not exist or the diagram contains unsupported
+     *                               groupings.
      */
-    private StateNode generate(StateNode target) {
-        if (currentEvent instanceof Message) {
-            return generateMessage(target);
-        } else {
-            var s = generateState();
-            target.addEmptyEdge(s);
-            return s;
+    public Map<String, DiagramNode> transformAllShared() {
+        if (subgraphs != null || optimize || taskEvents > 0) {
+            // Every copy refers to the first one, which must be generated from its events, so this is sequential.
+            return new StateDiagramTransformer(sequenceDiagram, targetParticipantNames, Options.DEFAULT)
+                    .transformAllShared();
         }
+        return toDiagramNodes(build(p -> new StateNodeGraph(true), true));
     }
 
     /**
-     * Generates a single branch of an alt or opt block.
+     * Turns the graphs of the participants into state diagrams.
      *
-     * @param baseState The state to append this branch to.
-     * @param endState  The next state to append to.
+     * @param graphs The graphs by participant name.
+     * @return The state diagrams by participant name, in the same order.
      */
-    private void generateBranch(StateNode baseState, StateNode endState) {
-        var branchState = new MultiStateNode();
-        var currentState = new StateNode(true, false);
-        branchState.addInnerState(currentState);
-        baseState.addEdge(((Grouping) currentEvent).getComment(), branchState);
-
-        nextEvent();
-
-        while (!(currentEvent instanceof Grouping g && (g.getType() == GroupingType.END || g.getType() == GroupingType.ELSE))) {
-            currentState = generate(currentState);
+    private static Map<String, DiagramNode> toDiagramNodes(Map<String, StateNodeGraph> graphs) {
+        var stateDiagrams = new LinkedHashMap<String, DiagramNode>();
+        for (var e : graphs.entrySet()) {
+            stateDiagrams.put(e.getKey(), e.getValue().toDiagramNode(e.getKey()));
         }
-
-        var innerEndState = new StateNode(false, true);
-        currentState.addEmptyEdge(innerEndState);
-
-        branchState.addEmptyEdge(endState);
+        return stateDiagrams;
     }
 
     /**
-     * Generates state diagram for a sequence diagram alt block.
+     * Transforms the given sequence diagram to a compact state diagram for every target participant, which needs a
+     * fraction of the memory of {@link #transformAll()} and renders the same. Subgraphs are not reused.
      *
-     * @return The next state to append to.
+     * @return The generated state diagrams by participant name, in the order of the target participants.
+     * @throws IllegalStateException If a target participant does not exist or the diagram contains unsupported
+     *                               groupings.
      */
-    private StateNode generateAlt() {
-        var wrapperState = new MultiStateNode();
-
-        var startState = new StateNode(true, false);
-        wrapperState.addInnerState(startState);
-        var baseState = new StateNode();
-        startState.addEmptyEdge(baseState);
-        var endState = new StateNode(false, true);
-
-        while (!(currentEvent instanceof GroupingLeaf g && g.getType() == GroupingType.END)) {
-            generateBranch(baseState, endState);
+    public Map<String, CompactStateGraph> transformAllCompact() {
+        if (subgraphs != null) {
+            return new StateDiagramTransformer(sequenceDiagram, targetParticipantNames,
+                    new Options(null, optimize, taskEvents)).transformAllCompact();
         }
-
-        nextEvent();
-
-        return wrapperState;
+        return build(CompactStateGraph::new, false);
     }
 
     /**
-     * Generates a new state diagram based on the given sequence diagram.
+     * Transforms the given sequence diagram to the minimal deterministic state machine of every target participant.
+     * The hierarchy of the state diagrams is flattened, so the machines consist of simple states only.
      *
-     * @return The generated state diagram.
+     * @return The generated state machines by participant name, in the order of the target participants.
+     * @throws IllegalStateException If a target participant does not exist or the diagram contains unsupported
+     *                               groupings.
      */
-    private DiagramNode generateDiagram() {
-        var startState = new StateNode(true, false);
-        var idleState = new StateNode();
-        startState.addEmptyEdge(idleState);
-        var target = generate(idleState);
-
-        var stateDiagram = new DiagramNode(startState, targetParticipant.getCode());
-
-        while (currentEvent != null) {
-            target = generate(target);
+    public Map<String, DeterministicStateMachine> transformAllMinimal() {
+        var machines = new LinkedHashMap<String, DeterministicStateMachine>();
+        for (var e : transformAllCompact().entrySet()) {
+            machines.put(e.getKey(), DeterministicStateMachine.determinize(e.getValue()).minimize());
         }
-
-        var endState = new StateNode(false, true);
-        target.addEmptyEdge(endState);
-
-        return stateDiagram;
+        return machines;
     }
 
     /**
-     * Transforms the given sequence diagram to a state diagram and returns it.
+     * Transforms the given sequence diagram to a state diagram and returns it. If several target participants
+     * were given, the state diagram of the first one is returned.
      *
      * @return The generated state diagram.
+     * @throws IllegalStateException If the target participant does not exist or the diagram contains unsupported
+     *                               groupings.
      */
     public DiagramNode transform() {
-        try {
-            targetParticipant = sequenceDiagram.participants()
-                    .stream()
-                    .filter(p -> p.getCode().equals(targetParticipantName))
-                    .findFirst()
-                    .orElseThrow();
-            eventIterator = sequenceDiagram.events().iterator();
-            nextEvent();
-
-            return generateDiagram();
-        } catch (NoSuchElementException e) {
-            System.out.println("Could not find participant with name " + targetParticipantName);
-            System.exit(1);
-            return null;
+        var stateDiagrams = transformAll();
+        if (stateDiagrams.isEmpty()) {
+            throw new IllegalStateException("Sequence diagram has no participants");
         }
+        return stateDiagrams.values().iterator().next();
     }
 }
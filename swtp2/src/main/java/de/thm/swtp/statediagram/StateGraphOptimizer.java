@@ -0,0 +1,388 @@
+package de.thm.swtp.statediagram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Removes structural overhead from a generated state diagram without changing the sequences of triggers and guards
+ * it accepts. The states are collected like by any other {@link StateGraphSink}, simplified by {@link #optimize()}
+ * and then written to another sink with new consecutive IDs.
+ * <p>
+ * The following rewrites are applied until none of them matches anymore:
+ * <ul>
+ *     <li>A simple state whose only transition is an empty edge is bypassed, its incoming edges lead to the target
+ *     of the empty edge instead. Removes e.g. the state following the last message of a block.</li>
+ *     <li>A simple state reached by the only transition of another state, an empty edge, is merged into that state.
+ *     Removes e.g. the idle state at the start of every diagram and the base state of alt blocks.</li>
+ *     <li>A composite state with a single inner state, a single incoming edge and a single exit is flattened: its
+ *     content is moved into the surrounding state and its exit leads to the transitions of the composite state.
+ *     Removes the outer wrapper state of loops and the wrapper states of alt and opt branches.</li>
+ * </ul>
+ * A transition to an end state completes the composite state the transition is written in, so the rewrites keep
+ * track of the composite state (the scope) every state belongs to. Each sweep over the states takes linear time
+ * and only rewrites states no other rewrite of the same sweep touched.
+ */
+class StateGraphOptimizer implements StateGraphSink {
+
+    // The states in the order they were added, followed by the states created while flattening.
+    private List<State> states = new ArrayList<>();
+
+    /**
+     * A state of the diagram being optimized.
+     */
+    private static class State {
+
+        private boolean startState;
+        private final boolean endState;
+        private final boolean compositeState;
+        private State parent;
+        private final List<State> innerStates = new ArrayList<>();
+        private List<Transition> edges = new ArrayList<>();
+        // Everything below is recomputed at the start of every sweep. End states do not track their incoming edges.
+        private final List<Transition> incoming = new ArrayList<>();
+        // The composite state whose transitions to end states complete it. Null for the top level of the diagram.
+        private State scope;
+        // Transitions to end states written in this composite state.
+        private final List<Transition> exits = new ArrayList<>();
+        private boolean visited;
+        // Whether a rewrite of the current sweep changed this state or its edges.
+        private boolean touched;
+        // Whether a rewrite of the current sweep changed the states inside this composite state.
+        private boolean regionChanged;
+        private boolean removed;
+        private int newId;
+
+        /**
+         * Creates a new state.
+         * @param startState Whether the state is a start state.
+         * @param endState Whether the state is an end state.
+         * @param compositeState Whether the state is a composite state.
+         */
+        State(boolean startState, boolean endState, boolean compositeState) {
+            this.startState = startState;
+            this.endState = endState;
+            this.compositeState = compositeState;
+        }
+
+        /**
+         * Returns whether this is a simple state outside of any composite state, which may be removed.
+         * @return Whether this state may be removed.
+         */
+        boolean isRemovable() {
+            return !startState && !endState && !compositeState && parent == null;
+        }
+    }
+
+    /**
+     * A transition whose states are changed by the rewrites.
+     */
+    private static class Transition {
+
+        private State source;
+        private State target;
+        private final Symbol trigger;
+
+        /**
+         * Creates a new transition.
+         * @param source The state the transition starts at.
+         * @param target The state the transition leads to.
+         * @param trigger The trigger or guard of the transition or null if it does not require an input (epsilon).
+         */
+        Transition(State source, State target, Symbol trigger) {
+            this.source = source;
+            this.target = target;
+            this.trigger = trigger;
+        }
+    }
+
+    /**
+     * Stores a new state under its ID.
+     * @param id The ID of the state.
+     * @param state The state.
+     */
+    private void put(int id, State state) {
+        if (id != states.size()) {
+            throw new IllegalArgumentException("State IDs must be added consecutively");
+        }
+        states.add(state);
+    }
+
+    /**
+     * Adds a simple state.
+     * @param id The ID of the state.
+     * @param startState Whether the state is a start state.
+     * @param endState Whether the state is an end state.
+     */
+    @Override
+    public void addState(int id, boolean startState, boolean endState) {
+        put(id, new State(startState, endState, false));
+    }
+
+    /**
+     * Adds a composite state.
+     * @param id The ID of the state.
+     */
+    @Override
+    public void addCompositeState(int id) {
+        put(id, new State(false, false, true));
+    }
+
+    /**
+     * Adds a state to the content of a composite state.
+     * @param compositeState The ID of the composite state.
+     * @param state The ID of the inner state.
+     */
+    @Override
+    public void addInnerState(int compositeState, int state) {
+        var composite = states.get(compositeState);
+        var inner = states.get(state);
+        composite.innerStates.add(inner);
+        inner.parent = composite;
+    }
+
+    /**
+     * Adds an edge between two states.
+     * @param source The ID of the state the transition starts at.
+     * @param target The ID of the state the transition leads to.
+     * @param trigger The trigger or guard of the transition or null if it does not require an input (epsilon).
+     */
+    @Override
+    public void addTransition(int source, int target, Symbol trigger) {
+        var state = states.get(source);
+        state.edges.add(new Transition(state, states.get(target), trigger));
+    }
+
+    /**
+     * Returns the number of states of the diagram.
+     * @return The number of states.
+     */
+    int getStateCount() {
+        return states.size();
+    }
+
+    /**
+     * Applies the rewrites until none of them matches anymore.
+     */
+    void optimize() {
+        if (states.isEmpty()) {
+            return;
+        }
+
+        var changed = true;
+        while (changed) {
+            analyze();
+            changed = false;
+            // States created by this sweep are appended to the list and touched, so they are skipped.
+            for (var i = 0; i < states.size(); i++) {
+                var state = states.get(i);
+                if (!state.removed && (flatten(state) || bypass(state) || merge(state))) {
+                    changed = true;
+                }
+            }
+            states = new ArrayList<>(states.stream().filter(s -> !s.removed).toList());
+        }
+    }
+
+    /**
+     * Computes the incoming edges, scopes and exits of all states reachable from the first state.
+     */
+    private void analyze() {
+        for (var s : states) {
+            s.incoming.clear();
+            s.exits.clear();
+            s.visited = false;
+            s.touched = false;
+            s.regionChanged = false;
+        }
+
+        var stack = new ArrayDeque<State>();
+        visit(states.get(0), null, stack);
+        while (!stack.isEmpty()) {
+            var state = stack.pop();
+            for (var innerState : state.innerStates) {
+                visit(innerState, state, stack);
+            }
+            for (var e : state.edges) {
+                if (e.target.endState) {
+                    if (state.scope != null) {
+                        state.scope.exits.add(e);
+                    }
+                } else {
+                    e.target.incoming.add(e);
+                    visit(e.target, state.scope, stack);
+                }
+            }
+        }
+    }
+
+    /**
+     * Assigns a scope to a state and pushes it on the stack unless it has been visited already.
+     * @param state The state.
+     * @param scope The composite state the state belongs to or null for the top level.
+     * @param stack The stack of states whose edges have yet to be visited.
+     */
+    private static void visit(State state, State scope, Deque<State> stack) {
+        if (!state.visited) {
+            state.visited = true;
+            state.scope = scope;
+            stack.push(state);
+        }
+    }
+
+    /**
+     * Marks the inner states of a scope as changed, which prevents flattening it until the next sweep.
+     * @param scope The scope or null for the top level.
+     */
+    private static void changeRegion(State scope) {
+        if (scope != null) {
+            scope.regionChanged = true;
+        }
+    }
+
+    /**
+     * Bypasses a simple state whose only transition is an empty edge. If the target of the edge is not an end state,
+     * the state must have a single incoming edge, so no state is reached (and written) twice.
+     * @param state The state to bypass.
+     * @return Whether the state has been bypassed.
+     */
+    private boolean bypass(State state) {
+        if (state.touched || !state.isRemovable() || state.edges.size() != 1) {
+            return false;
+        }
+        var edge = state.edges.get(0);
+        var target = edge.target;
+        if (edge.trigger != null || target == state) {
+            return false;
+        }
+        if (!target.endState && (state.incoming.size() != 1 || target.touched)) {
+            return false;
+        }
+        for (var e : state.incoming) {
+            if (e.source.touched) {
+                return false;
+            }
+        }
+
+        for (var e : state.incoming) {
+            e.target = target;
+            e.source.touched = true;
+        }
+        target.touched = !target.endState;
+        state.removed = true;
+        changeRegion(state.scope);
+        return true;
+    }
+
+    /**
+     * Merges the target of the only transition of a state into the state if the transition is an empty edge and the
+     * target a simple state only reached by it.
+     * @param state The state to merge the target into.
+     * @return Whether the target has been merged.
+     */
+    private boolean merge(State state) {
+        if (state.touched || state.endState || state.compositeState || state.edges.size() != 1) {
+            return false;
+        }
+        var edge = state.edges.get(0);
+        var target = edge.target;
+        if (edge.trigger != null || target == state || target.touched || !target.isRemovable()
+                || target.incoming.size() != 1) {
+            return false;
+        }
+
+        state.edges = target.edges;
+        for (var e : state.edges) {
+            e.source = state;
+        }
+        state.touched = true;
+        target.touched = true;
+        target.removed = true;
+        changeRegion(state.scope);
+        return true;
+    }
+
+    /**
+     * Flattens a composite state with a single inner state, a single incoming edge and a single exit. The incoming
+     * edge leads to the inner state instead and the exit to a new state taking over the transitions of the composite
+     * state. If the composite state only leads to an end state, it may have any number of exits, which lead to that
+     * end state instead.
+     * @param state The composite state to flatten.
+     * @return Whether the state has been flattened.
+     */
+    private boolean flatten(State state) {
+        if (!state.compositeState || state.touched || state.regionChanged || state.parent != null
+                || state.innerStates.size() != 1 || state.incoming.size() != 1 || state.exits.isEmpty()) {
+            return false;
+        }
+        var innerState = state.innerStates.get(0);
+        var entry = state.incoming.get(0);
+        if (!innerState.startState || innerState.touched || entry.source == state || entry.source.touched) {
+            return false;
+        }
+        for (var e : state.exits) {
+            if (e.source.touched) {
+                return false;
+            }
+        }
+
+        var onlyEdge = state.edges.size() == 1 ? state.edges.get(0) : null;
+        var join = onlyEdge != null && onlyEdge.trigger == null && onlyEdge.target.endState ? onlyEdge.target : null;
+        if (join == null && state.exits.size() != 1) {
+            return false;
+        }
+
+        if (join == null) {
+            join = new State(false, false, false);
+            join.edges = state.edges;
+            for (var e : join.edges) {
+                e.source = join;
+            }
+            join.touched = true;
+            states.add(join);
+        }
+
+        entry.target = innerState;
+        entry.source.touched = true;
+        innerState.startState = false;
+        innerState.parent = null;
+        innerState.touched = true;
+        for (var e : state.exits) {
+            e.target = join;
+            e.source.touched = true;
+        }
+        state.touched = true;
+        state.removed = true;
+        changeRegion(state.scope);
+        return true;
+    }
+
+    /**
+     * Writes the states and transitions to another sink, numbering the states consecutively.
+     * @param graph The sink to write to.
+     */
+    void writeTo(StateGraphSink graph) {
+        for (var i = 0; i < states.size(); i++) {
+            var state = states.get(i);
+            state.newId = i;
+            if (state.compositeState) {
+                graph.addCompositeState(i);
+            } else {
+                graph.addState(i, state.startState, state.endState);
+            }
+        }
+
+        for (var state : states) {
+            for (var innerState : state.innerStates) {
+                graph.addInnerState(state.newId, innerState.newId);
+            }
+        }
+
+        for (var state : states) {
+            for (var e : state.edges) {
+                graph.addTransition(state.newId, e.target.newId, e.trigger);
+            }
+        }
+    }
+}
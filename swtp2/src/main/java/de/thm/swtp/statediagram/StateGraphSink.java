@@ -0,0 +1,37 @@
+package de.thm.swtp.statediagram;
+
+/**
+ * Receives the states and transitions of a state diagram while it is generated. States are identified by their IDs,
+ * which are handed out consecutively starting at 0. The first state is the start state of the diagram.
+ */
+public interface StateGraphSink {
+
+    /**
+     * Adds a simple state.
+     * @param id The ID of the state.
+     * @param startState Whether the state is a start state.
+     * @param endState Whether the state is an end state.
+     */
+    void addState(int id, boolean startState, boolean endState);
+
+    /**
+     * Adds a composite state, which contains a state machine itself.
+     * @param id The ID of the state.
+     */
+    void addCompositeState(int id);
+
+    /**
+     * Adds a state to the content of a composite state.
+     * @param compositeState The ID of the composite state.
+     * @param state The ID of the inner state.
+     */
+    void addInnerState(int compositeState, int state);
+
+    /**
+     * Adds a transition between two states.
+     * @param source The ID of the state the transition starts at.
+     * @param target The ID of the state the transition leads to.
+     * @param trigger The trigger or guard of the transition or null if it does not require an input (epsilon).
+     */
+    void addTransition(int source, int target, Symbol trigger);
+}
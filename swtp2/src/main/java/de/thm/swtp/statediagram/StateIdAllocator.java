@@ -0,0 +1,50 @@
+package de.thm.swtp.statediagram;
+
+/**
+ * Hands out the IDs of the states of a single state diagram. Every transformation uses its own allocator, so
+ * transformations running at the same time do not influence each other and always produce the same IDs.
+ */
+public class StateIdAllocator {
+
+    // Holds next state ID. Increased on every allocation.
+    private int nextId;
+
+    /**
+     * Creates a new allocator which starts at ID 0.
+     */
+    public StateIdAllocator() {
+        this(0);
+    }
+
+    /**
+     * Creates a new allocator which starts at the given ID.
+     * @param firstId The first ID to hand out.
+     */
+    public StateIdAllocator(int firstId) {
+        this.nextId = firstId;
+    }
+
+    /**
+     * Returns a new, unused state ID.
+     * @return The state ID.
+     */
+    public int next() {
+        return nextId++;
+    }
+
+    /**
+     * Marks the given number of IDs as handed out without returning them.
+     * @param count The number of IDs to skip.
+     */
+    public void skip(int count) {
+        nextId += count;
+    }
+
+    /**
+     * Returns the number of IDs handed out so far, including IDs skipped by the first ID.
+     * @return The number of allocated IDs.
+     */
+    public int count() {
+        return nextId;
+    }
+}
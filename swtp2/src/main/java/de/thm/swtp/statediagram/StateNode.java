@@ -1,14 +1,21 @@
 package de.thm.swtp.statediagram;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Represents a state of a state machine.
  */
 public class StateNode extends Node {
 
-    // The state's unique ID. Automatically assigned on instantiation.
-    protected int id;
+    // The state's unique ID within its state diagram.
+    protected final int id;
     // Whether this state is the start or end state of a state machine. Used to represent it differently
     // in the generated state diagram code.
     private final boolean startState;
@@ -16,23 +23,47 @@ public class StateNode extends Node {
     // List of all edges this state has to other states.
     private final ArrayList<Edge> edges = new ArrayList<>();
 
-    // Holds next state ID. Increased in constructor.
-    public static int stateIdCounter = 0;
+    /**
+     * A state whose inner states and edges are currently being written by {@link #render(Appendable)}, or which is
+     * visited by {@link #statistics()}.
+     */
+    private static class RenderFrame {
+
+        private final StateNode state;
+        // Added to the IDs of the state and its transition targets, see {@link #getInnerOffset()}.
+        private final int offset;
+        // Index of the next inner state and edge to write.
+        private int innerState = 0;
+        private int edge = 0;
+        private boolean innerStatesWritten = false;
+
+        /**
+         * Creates a new render frame.
+         * @param state The state to write.
+         * @param offset The offset added to the IDs of the state and its transition targets.
+         */
+        RenderFrame(StateNode state, int offset) {
+            this.state = state;
+            this.offset = offset;
+        }
+    }
 
     /**
      * Creates a new state node.
+     * @param id The unique ID of this state.
      */
-    public StateNode() {
-        this(false, false);
+    public StateNode(int id) {
+        this(id, false, false);
     }
 
     /**
      * Creates a new state node.
+     * @param id The unique ID of this state.
      * @param startState Whether this state is a start state.
      * @param endState Whether this state is an end state.
      */
-    public StateNode(boolean startState, boolean endState) {
-        this.id = stateIdCounter++;
+    public StateNode(int id, boolean startState, boolean endState) {
+        this.id = id;
         this.startState = startState;
         this.endState = endState;
     }
@@ -54,6 +85,14 @@ public class StateNode extends Node {
         edges.add(new Edge(node));
     }
 
+    /**
+     * Returns the unique ID of this state.
+     * @return The ID.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Returns whether this state is a start state.
      * @return Whether this state is a start state.
@@ -71,73 +110,168 @@ public class StateNode extends Node {
     }
 
     /**
-     * Generates string representation of a state transition from this state to another state as expected by PlantUML.
-     * @param state The state to generate a transition to.
-     * @return The StringBuilder the transition was writen to.
+     * Writes the name of this state as used in a transition, which is [*] for start and end states.
+     * @param out The sink to write to.
+     * @param pseudoState Whether this state is represented by the [*] pseudo state.
+     * @param offset The offset added to the ID of this state.
+     * @throws IOException If writing to the sink fails.
      */
-    private StringBuilder generateStateHead(StateNode state) {
-        var s = new StringBuilder();
-
-        if (isStartState()) {
-            s.append("[*]");
+    private void renderName(Appendable out, boolean pseudoState, int offset) throws IOException {
+        if (pseudoState) {
+            out.append("[*]");
         } else {
-            s.append(String.format("S%s", id));
+            out.append('S').append(Integer.toString(id + offset));
         }
-        s.append(" --> ");
-        if (state.isEndState()) {
-            s.append("[*]");
-        } else {
-            s.append(String.format("S%s", state.id));
+    }
+
+    /**
+     * Writes a state transition from this state to another state as expected by PlantUML.
+     * @param out The sink to write to.
+     * @param offset The offset added to the IDs of both states.
+     * @param state The state to generate a transition to.
+     * @param trigger The trigger which causes this transition or null if there is none.
+     * @throws IOException If writing to the sink fails.
+     */
+    protected void renderTransition(Appendable out, int offset, StateNode state, String trigger) throws IOException {
+        renderName(out, isStartState(), offset);
+        out.append(" --> ");
+        state.renderName(out, state.isEndState(), offset);
+        if (trigger != null) {
+            out.append(": ").append(trigger);
         }
+        out.append('\n');
+    }
 
-        return s;
+    /**
+     * Returns the states contained in this state.
+     * @return The inner states.
+     */
+    protected List<StateNode> getInnerStates() {
+        return List.of();
     }
 
     /**
-     * Generates a state transition without a trigger.
-     * @param state The state to generate a transition to.
-     * @return The string representation of this transition.
+     * Returns the offset added to the IDs of the inner states, relative to the offset of this state. Inner states
+     * shared with an identical composite state keep their own IDs and are written with the IDs they would have had
+     * in this state.
+     * @return The offset of the inner states.
      */
-    protected String generateState(StateNode state) {
-        var s = generateStateHead(state);
-        s.append("\n");
+    protected int getInnerOffset() {
+        return 0;
+    }
 
-        return s.toString();
+    /**
+     * Writes everything that precedes the inner states and edges of this state.
+     * @param out The sink to write to.
+     * @param offset The offset added to the ID of this state.
+     * @param rendered The IDs of the states whose content has been written by the current render so far.
+     * @return Whether the inner states and edges of this state should be written.
+     * @throws IOException If writing to the sink fails.
+     */
+    protected boolean beginRender(Appendable out, int offset, Set<Integer> rendered) throws IOException {
+        return true;
     }
 
     /**
-     * Generates a state transition with a trigger.
-     * @param state The state to generate a transition to.
-     * @param trigger The trigger which causes this transition.
-     * @return The string representation of this transition.
+     * Writes everything that follows the inner states of this state.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
      */
-    protected String generateState(StateNode state, String trigger) {
-        var s = generateStateHead(state);
-        s.append(": ");
-        s.append(trigger);
-        s.append("\n");
+    protected void endInnerStates(Appendable out) throws IOException {
+    }
 
-        return s.toString();
+    /**
+     * Starts writing the given state and pushes it on the render stack if its content has to be written.
+     * @param state The state to write.
+     * @param offset The offset added to the ID of the state.
+     * @param out The sink to write to.
+     * @param stack The render stack.
+     * @param rendered The IDs of the states whose content has been written by the current render so far.
+     * @throws IOException If writing to the sink fails.
+     */
+    private static void beginFrame(StateNode state, int offset, Appendable out, Deque<RenderFrame> stack,
+                                   Set<Integer> rendered) throws IOException {
+        if (state.beginRender(out, offset, rendered)) {
+            stack.push(new RenderFrame(state, offset));
+        }
     }
 
     /**
-     * Generates a string representation as expected by PlantUML of all states including and following this state.
-     * @return The PlantUML string representation.
+     * Writes all states including and following this state to the given sink as expected by PlantUML.
+     * Uses an explicit stack instead of recursion, so the length and depth of the diagram are only limited by the heap.
+     * Rendering does not modify the states, so a diagram can be written any number of times.
+     * @param out The sink to write to.
+     * @throws IOException If writing to the sink fails.
      */
     @Override
-    public String toString() {
-        var s = new StringBuilder();
+    public void render(Appendable out) throws IOException {
+        var stack = new ArrayDeque<RenderFrame>();
+        var rendered = new HashSet<Integer>();
+        beginFrame(this, 0, out, stack, rendered);
 
-        for (var e : edges) {
-            var representation = e.getStringRepresentation();
-            if (representation != null) {
-                s.append(generateState(e.getState(), representation));
+        while (!stack.isEmpty()) {
+            var frame = stack.peek();
+            var state = frame.state;
+            var innerStates = state.getInnerStates();
+
+            if (frame.innerState < innerStates.size()) {
+                beginFrame(innerStates.get(frame.innerState++), frame.offset + state.getInnerOffset(), out, stack,
+                        rendered);
+            } else if (!frame.innerStatesWritten) {
+                frame.innerStatesWritten = true;
+                state.endInnerStates(out);
+            } else if (frame.edge < state.edges.size()) {
+                var e = state.edges.get(frame.edge++);
+                if (frame.edge == state.edges.size()) {
+                    // Nothing is left to write for this state, which keeps the stack flat for long sequences.
+                    stack.pop();
+                }
+                state.renderTransition(out, frame.offset, e.getState(), e.getStringRepresentation());
+                beginFrame(e.getState(), frame.offset, out, stack, rendered);
             } else {
-                s.append(generateState(e.getState()));
+                stack.pop();
             }
-            s.append(e.getState());
         }
+    }
 
-        return s.toString();
+    /**
+     * Counts the states and transitions reachable from this state, visiting every state once.
+     * @return The statistics of the state diagram.
+     */
+    @Override
+    public GraphStatistics statistics() {
+        // The number of composite states every visited state is written in by the ID it is written with: inner
+        // states are written inside their composite state, the targets of transitions next to the source. Shared
+        // inner states are visited once for every composite state they are written in.
+        var levels = new HashMap<Integer, Integer>();
+        var stack = new ArrayDeque<RenderFrame>();
+        levels.put(id, 0);
+        stack.push(new RenderFrame(this, 0));
+        var edgeCount = 0;
+        var compositeStates = 0;
+        var maxDepth = 0;
+        while (!stack.isEmpty()) {
+            var frame = stack.pop();
+            var state = frame.state;
+            var level = levels.get(state.id + frame.offset);
+            var innerStates = state.getInnerStates();
+            if (state instanceof MultiStateNode m && !m.isReference()) {
+                compositeStates++;
+                maxDepth = Math.max(maxDepth, level + 1);
+            }
+            var innerOffset = frame.offset + state.getInnerOffset();
+            for (var innerState : innerStates) {
+                if (levels.putIfAbsent(innerState.id + innerOffset, level + 1) == null) {
+                    stack.push(new RenderFrame(innerState, innerOffset));
+                }
+            }
+            edgeCount += state.edges.size();
+            for (var e : state.edges) {
+                if (levels.putIfAbsent(e.getState().id + frame.offset, level) == null) {
+                    stack.push(new RenderFrame(e.getState(), frame.offset));
+                }
+            }
+        }
+        return new GraphStatistics(levels.size(), edgeCount, compositeStates, maxDepth);
     }
 }
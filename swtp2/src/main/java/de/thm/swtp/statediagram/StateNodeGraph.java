@@ -0,0 +1,139 @@
+package de.thm.swtp.statediagram;
+
+import java.util.ArrayList;
+
+/**
+ * Builds a state diagram out of {@link StateNode} objects.
+ */
+class StateNodeGraph implements StateGraphSink {
+
+    // The states by ID. IDs of states inside reused and shared composite states are null.
+    private final ArrayList<StateNode> states = new ArrayList<>();
+    // Whether copies of identical fragments are written as references to the first one instead of with their content.
+    private final boolean referenceFragments;
+
+    /**
+     * Creates a new graph which writes every fragment with its content.
+     */
+    StateNodeGraph() {
+        this(false);
+    }
+
+    /**
+     * Creates a new graph.
+     * @param referenceFragments Whether copies of identical fragments are written as references to the first one.
+     */
+    StateNodeGraph(boolean referenceFragments) {
+        this.referenceFragments = referenceFragments;
+    }
+
+    /**
+     * Stores a new state under its ID.
+     * @param state The state.
+     */
+    private void put(StateNode state) {
+        if (state.getId() != states.size()) {
+            throw new IllegalArgumentException("State IDs must be added consecutively");
+        }
+        states.add(state);
+    }
+
+    /**
+     * Adds a simple state.
+     * @param id The ID of the state.
+     * @param startState Whether the state is a start state.
+     * @param endState Whether the state is an end state.
+     */
+    @Override
+    public void addState(int id, boolean startState, boolean endState) {
+        put(new StateNode(id, startState, endState));
+    }
+
+    /**
+     * Adds a composite state.
+     * @param id The ID of the state.
+     */
+    @Override
+    public void addCompositeState(int id) {
+        put(new MultiStateNode(id));
+    }
+
+    /**
+     * Adds a state to the content of a composite state.
+     * @param compositeState The ID of the composite state.
+     * @param state The ID of the inner state.
+     */
+    @Override
+    public void addInnerState(int compositeState, int state) {
+        ((MultiStateNode) states.get(compositeState)).addInnerState(states.get(state));
+    }
+
+    /**
+     * Adds an edge between two states.
+     * @param source The ID of the state the transition starts at.
+     * @param target The ID of the state the transition leads to.
+     * @param trigger The trigger or guard of the transition or null if it does not require an input (epsilon).
+     */
+    @Override
+    public void addTransition(int source, int target, Symbol trigger) {
+        if (trigger != null) {
+            states.get(source).addEdge(trigger.text(), states.get(target));
+        } else {
+            states.get(source).addEmptyEdge(states.get(target));
+        }
+    }
+
+    /**
+     * Adds a composite state whose content is shared with a composite state of a previous transformation.
+     * Transitions from and to the new state are independent of the previous one.
+     * @param id The ID of the state.
+     * @param template The composite state to share the content of.
+     * @param stateCount The number of IDs used by the composite state and its content.
+     */
+    void addReusedState(int id, MultiStateNode template, int stateCount) {
+        addSharedState(id, template, stateCount, false);
+    }
+
+    /**
+     * Adds a composite state whose content is shared with an identical fragment generated before in the same
+     * diagram. It is written as a reference to that fragment if this graph shares fragments in its output.
+     * @param id The ID of the state.
+     * @param template The composite state to share the content of.
+     * @param stateCount The number of IDs used by the composite state and its content.
+     */
+    void addFragmentCopy(int id, MultiStateNode template, int stateCount) {
+        addSharedState(id, template, stateCount, referenceFragments);
+    }
+
+    /**
+     * Adds a composite state whose content is shared with another composite state.
+     * @param id The ID of the state.
+     * @param template The composite state to share the content of.
+     * @param stateCount The number of IDs used by the composite state and its content.
+     * @param reference Whether the state is written as a reference to the template.
+     */
+    private void addSharedState(int id, MultiStateNode template, int stateCount, boolean reference) {
+        put(new MultiStateNode(id, template, reference));
+        for (var i = 1; i < stateCount; i++) {
+            states.add(null);
+        }
+    }
+
+    /**
+     * Returns the state with the given ID.
+     * @param id The ID.
+     * @return The state.
+     */
+    StateNode getState(int id) {
+        return states.get(id);
+    }
+
+    /**
+     * Returns the generated state diagram.
+     * @param name The name of the diagram.
+     * @return The state diagram.
+     */
+    DiagramNode toDiagramNode(String name) {
+        return new DiagramNode(states.get(0), name);
+    }
+}
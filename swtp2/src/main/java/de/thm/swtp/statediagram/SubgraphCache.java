@@ -0,0 +1,139 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import de.thm.swtp.sequencediagram.SequenceEvent.*;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the subgraphs of the top-level alt, loop and opt blocks of the previous transformation of a sequence
+ * diagram, so transforming the diagram again after an edit only rebuilds the blocks that changed.
+ * <p>
+ * A subgraph is reused if the events of its block, the participant and the ID of its first state are unchanged,
+ * which makes the reused states identical to the ones that would have been generated. Subgraphs not used by a
+ * transformation are dropped before the next one. Not thread-safe, use one cache per sequence diagram.
+ */
+public class SubgraphCache {
+
+    private Map<Key, Subgraph> previous = new HashMap<>();
+    private Map<Key, Subgraph> current = new HashMap<>();
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Identifies the subgraph of a block.
+     * @param participant The participant the subgraph was generated for.
+     * @param firstId The ID of the first state of the subgraph.
+     * @param events The events of the block.
+     */
+    record Key(String participant, int firstId, List<SequenceEvent> events) {
+    }
+
+    /**
+     * The states generated for a block.
+     * @param wrapperState The state wrapping all states of the block.
+     * @param stateCount The number of state IDs allocated for the block.
+     */
+    record Subgraph(MultiStateNode wrapperState, int stateCount) {
+    }
+
+    /**
+     * A top-level block of a sequence diagram.
+     * @param end The index of the event closing the block.
+     * @param events The events of the block.
+     */
+    record Group(int end, List<SequenceEvent> events) {
+    }
+
+    /**
+     * Starts a new transformation. Subgraphs neither used nor generated by the previous one are dropped.
+     */
+    void beginTransformation() {
+        previous = current;
+        current = new HashMap<>();
+    }
+
+    /**
+     * Looks up the subgraph of a block.
+     * @param key The key of the subgraph.
+     * @return The subgraph or null if it is not cached.
+     */
+    Subgraph get(Key key) {
+        var subgraph = current.get(key);
+        if (subgraph == null) {
+            subgraph = previous.remove(key);
+        }
+
+        if (subgraph == null) {
+            misses++;
+            return null;
+        }
+        current.put(key, subgraph);
+        hits++;
+        return subgraph;
+    }
+
+    /**
+     * Stores the subgraph of a block.
+     * @param key The key of the subgraph.
+     * @param subgraph The subgraph.
+     */
+    void put(Key key, Subgraph subgraph) {
+        current.put(key, subgraph);
+    }
+
+    /**
+     * Returns the number of blocks whose subgraph has been reused.
+     * @return The number of hits.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of blocks whose subgraph had to be generated.
+     * @return The number of misses.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Finds the top-level blocks of a sequence diagram. Blocks are closed the same way the state diagram builder
+     * closes them: an else only continues alt blocks and closes any other block.
+     * @param events The events of the sequence diagram.
+     * @return The blocks by the index of the event opening them.
+     */
+    static Map<Integer, Group> findGroups(List<SequenceEvent> events) {
+        var groups = new HashMap<Integer, Group>();
+        // Whether each open block is an alt block, innermost on top.
+        var open = new ArrayDeque<Boolean>();
+        var start = 0;
+
+        for (var i = 0; i < events.size(); i++) {
+            var event = events.get(i);
+            if (event instanceof GroupStartEvent g) {
+                if (open.isEmpty()) {
+                    start = i;
+                }
+                open.push(g.type().equals("alt"));
+            } else if (event instanceof ElseEvent || event instanceof EndEvent) {
+                if (open.isEmpty()) {
+                    // Ignored by the builder as well.
+                    continue;
+                }
+                var alt = open.pop();
+                if (alt && event instanceof ElseEvent) {
+                    open.push(true);
+                }
+                if (open.isEmpty()) {
+                    groups.put(start, new Group(i, List.copyOf(events.subList(start, i + 1))));
+                }
+            }
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,21 @@
+package de.thm.swtp.statediagram;
+
+/**
+ * An interned trigger or guard of a transition. Symbols are handed out by a {@link SymbolTable}, which returns the
+ * same instance for the same text and kind.
+ * @param id The ID of the symbol, unique within its symbol table.
+ * @param kind Whether the symbol is a trigger or a guard.
+ * @param text The text of the symbol as written in the state diagram.
+ */
+public record Symbol(int id, Kind kind, String text) {
+
+    /**
+     * What a symbol stands for.
+     */
+    public enum Kind {
+        // A message received or sent by the participant.
+        TRIGGER,
+        // The condition of a branch or loop.
+        GUARD
+    }
+}
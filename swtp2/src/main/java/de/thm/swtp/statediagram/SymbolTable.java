@@ -0,0 +1,143 @@
+package de.thm.swtp.statediagram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns the triggers and guards of generated transitions. Identical labels share one {@link Symbol} across all
+ * state diagrams generated with the same table, which saves both the memory of the duplicates and building their
+ * text again for every message. Thread-safe, so one table can serve batch and server mode.
+ * <p>
+ * To bound the memory of long-running processes, a table stops interning once it holds its maximum number of
+ * symbols. Further symbols are created per use and counted as misses.
+ */
+public class SymbolTable {
+
+    private static final int DEFAULT_MAX_SIZE = 1 << 20;
+    private static final SymbolTable SHARED = new SymbolTable(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private final AtomicInteger nextId = new AtomicInteger();
+    // Symbols by kind and text. Every symbol is created here.
+    private final ConcurrentHashMap<String, Symbol> triggers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Symbol> guards = new ConcurrentHashMap<>();
+    // Symbols by the label they are built from, so their text does not have to be built for every lookup.
+    private final ConcurrentHashMap<String, Symbol> sentTriggers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Symbol> negatedGuards = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new, empty symbol table.
+     * @param maxSize The maximum number of interned symbols.
+     */
+    public SymbolTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the table shared by all transformations of this JVM.
+     * @return The shared symbol table.
+     */
+    public static SymbolTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the symbol for a text, creating it if necessary.
+     * @param symbols The symbols of the kind by text.
+     * @param kind The kind of the symbol.
+     * @param text The text of the symbol.
+     * @return The symbol.
+     */
+    private Symbol intern(ConcurrentHashMap<String, Symbol> symbols, Symbol.Kind kind, String text) {
+        var symbol = symbols.get(text);
+        if (symbol != null) {
+            return symbol;
+        }
+        if (size() >= maxSize) {
+            return new Symbol(nextId.getAndIncrement(), kind, text);
+        }
+        return symbols.computeIfAbsent(text, t -> new Symbol(nextId.getAndIncrement(), kind, t));
+    }
+
+    /**
+     * Looks up a symbol by the label it is built from.
+     * @param byLabel The symbols by label.
+     * @param symbols The symbols of the kind by text.
+     * @param kind The kind of the symbol.
+     * @param label The label.
+     * @param format The format building the text of the symbol from the label.
+     * @return The symbol.
+     */
+    private Symbol lookup(ConcurrentHashMap<String, Symbol> byLabel, ConcurrentHashMap<String, Symbol> symbols,
+                          Symbol.Kind kind, String label, String format) {
+        var symbol = byLabel.get(label);
+        if (symbol != null) {
+            hits.increment();
+            return symbol;
+        }
+
+        misses.increment();
+        symbol = intern(symbols, kind, format == null ? label : String.format(format, label));
+        if (byLabel != symbols && size() < maxSize) {
+            byLabel.putIfAbsent(label, symbol);
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the trigger of a message.
+     * @param label The label of the message.
+     * @param sent Whether the message is sent by the participant, which makes it an action (/ label).
+     * @return The symbol.
+     */
+    public Symbol trigger(String label, boolean sent) {
+        return sent
+                ? lookup(sentTriggers, triggers, Symbol.Kind.TRIGGER, label, "/ %s")
+                : lookup(triggers, triggers, Symbol.Kind.TRIGGER, label, null);
+    }
+
+    /**
+     * Returns the guard of a branch or loop.
+     * @param guard The condition or null if there is none.
+     * @return The symbol or null if there is no condition.
+     */
+    public Symbol guard(String guard) {
+        return guard == null ? null : lookup(guards, guards, Symbol.Kind.GUARD, guard, null);
+    }
+
+    /**
+     * Returns the negation of a guard (!(guard)).
+     * @param guard The condition. Null is written as 'null'.
+     * @return The symbol.
+     */
+    public Symbol negatedGuard(String guard) {
+        return lookup(negatedGuards, guards, Symbol.Kind.GUARD, String.valueOf(guard), "!(%s)");
+    }
+
+    /**
+     * Returns the number of interned symbols.
+     * @return The number of symbols.
+     */
+    public int size() {
+        return triggers.size() + guards.size();
+    }
+
+    /**
+     * Returns the number of lookups that found an existing symbol.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to build the text of a symbol.
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,273 @@
+package de.thm.swtp.watch;
+
+import de.thm.swtp.TransformationPipeline;
+import de.thm.swtp.batch.BatchTransformer;
+import de.thm.swtp.sequencediagram.DiagramBlock;
+import de.thm.swtp.statediagram.SubgraphCache;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches sequence diagrams and transforms them again whenever they are saved. Only the changed diagrams of the
+ * changed files are transformed, reusing the states of their unchanged top-level blocks, and an output file is only written if the
+ * generated state diagram actually differs from the one written before.
+ */
+public class DiagramWatcher {
+
+    // Time to wait for further changes before transforming, editors often write a file several times when saving.
+    private static final long SETTLE_MILLIS = 100;
+
+    private final TransformationPipeline pipeline;
+    private final Path directory;
+    // Whether the subdirectories of the directory are watched as well.
+    private final boolean recursive;
+    private final Predicate<Path> isInput;
+    private final Function<Path, Path> outputOf;
+    private final Map<Path, WatchedDiagram> diagrams = new HashMap<>();
+
+    /**
+     * The state kept for a single watched sequence diagram between two transformations.
+     */
+    private static class WatchedDiagram {
+
+        // Content of every diagram of the file when it was last transformed, by diagram name.
+        private final Map<String, String> codes = new HashMap<>();
+        private final Map<String, SubgraphCache> subgraphs = new HashMap<>();
+        // PlantUML code of the state diagrams last written by output file.
+        private final Map<Path, String> written = new HashMap<>();
+    }
+
+    /**
+     * Creates a new watcher.
+     * @param pipeline The pipeline used to transform the sequence diagrams.
+     * @param directory The directory the sequence diagrams are located in.
+     * @param recursive Whether sequence diagrams in subdirectories are watched as well.
+     * @param isInput Decides whether a file in the directory is a watched sequence diagram.
+     * @param outputOf Returns the file the state diagram of a sequence diagram is written to.
+     */
+    public DiagramWatcher(TransformationPipeline pipeline, Path directory, boolean recursive, Predicate<Path> isInput,
+                          Function<Path, Path> outputOf) {
+        this.pipeline = pipeline;
+        this.directory = directory.normalize();
+        this.recursive = recursive;
+        this.isInput = isInput;
+        this.outputOf = outputOf;
+    }
+
+    /**
+     * Creates a watcher for a single sequence diagram.
+     * @param pipeline The pipeline used to transform the sequence diagram.
+     * @param input The sequence diagram.
+     * @param output The file to write the state diagram to.
+     * @return The watcher.
+     */
+    public static DiagramWatcher forFile(TransformationPipeline pipeline, Path input, Path output) {
+        var file = input.normalize();
+        var directory = file.getParent() != null ? file.getParent() : Paths.get(".");
+        return new DiagramWatcher(pipeline, directory, false, file::equals, f -> output);
+    }
+
+    /**
+     * Creates a watcher for all sequence diagrams matching a directory or glob, like the batch mode does.
+     * @param pipeline The pipeline used to transform the sequence diagrams.
+     * @param directoryOrGlob A directory or a glob like diagrams/**&#47;*.puml.
+     * @param outputDirectory The directory to write the state diagrams to. Files inside it are never transformed.
+     * @return The watcher.
+     */
+    public static DiagramWatcher forBatch(TransformationPipeline pipeline, String directoryOrGlob, Path outputDirectory) {
+        var base = BatchTransformer.baseDirectoryOf(directoryOrGlob).normalize();
+        var matcher = BatchTransformer.inputMatcherOf(directoryOrGlob);
+        var outputs = outputDirectory.normalize();
+        var batch = new BatchTransformer(pipeline, base, outputs, 1);
+
+        return new DiagramWatcher(pipeline, base, true,
+                f -> f.startsWith(base) && !f.startsWith(outputs) && matcher.matches(base.relativize(f)),
+                batch::outputPathOf);
+    }
+
+    /**
+     * Transforms the diagrams of a sequence diagram file that changed since they were last transformed and writes
+     * the state diagrams that differ from the ones written before.
+     * @param input The sequence diagram file.
+     * @return The files that were written.
+     * @throws IOException If a file could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    public List<Path> update(Path input) throws IOException {
+        List<DiagramBlock> blocks;
+        try (var phase = pipeline.getMetrics().start("read")) {
+            blocks = DiagramBlock.read(input);
+        } catch (NoSuchFileException e) {
+            // Deleted, its outputs are kept.
+            diagrams.remove(input);
+            return List.of();
+        }
+
+        var diagram = diagrams.computeIfAbsent(input, i -> new WatchedDiagram());
+        var names = blocks.stream().map(DiagramBlock::name).collect(Collectors.toSet());
+        diagram.codes.keySet().retainAll(names);
+        diagram.subgraphs.keySet().retainAll(names);
+
+        var written = new ArrayList<Path>();
+        for (var block : blocks) {
+            if (block.code().equals(diagram.codes.get(block.name()))) {
+                continue;
+            }
+            var subgraphs = diagram.subgraphs.computeIfAbsent(block.name(), n -> new SubgraphCache());
+            try {
+                update(diagram, subgraphs, block.code(), TransformationPipeline.blockPathOf(outputOf.apply(input),
+                        blocks, block), written);
+            } catch (IllegalStateException e) {
+                throw blocks.size() > 1
+                        ? new IllegalStateException("Diagram " + block.name() + ": " + e.getMessage(), e)
+                        : e;
+            }
+            diagram.codes.put(block.name(), block.code());
+        }
+        return written;
+    }
+
+    /**
+     * Transforms a single diagram of a sequence diagram file and writes the state diagrams that differ from the
+     * ones written before.
+     * @param diagram The state kept for the file.
+     * @param subgraphs The states of the top-level blocks of the diagram.
+     * @param code The PlantUML code of the diagram.
+     * @param blockOutput The file the state diagrams of the diagram are written to.
+     * @param written The files that were written, the files written by this method are added.
+     * @throws IOException If a file could not be written.
+     * @throws IllegalStateException If parsing, validation or the transformation fails.
+     */
+    private void update(WatchedDiagram diagram, SubgraphCache subgraphs, String code, Path blockOutput,
+                        List<Path> written) throws IOException {
+        for (var e : pipeline.transform(code, subgraphs).entrySet()) {
+            var participantOutput = pipeline.outputPathOf(blockOutput, e.getKey());
+            for (var outputType : pipeline.getOutputTypes()) {
+                var output = pipeline.formatPathOf(participantOutput, outputType);
+                var stateDiagramCode = pipeline.toSource(e.getValue(), outputType);
+                if (stateDiagramCode.equals(diagram.written.get(output)) && Files.exists(output)) {
+                    // Rendering an image is expensive, so unchanged state diagrams are not written again.
+                    continue;
+                }
+
+                var parent = output.toAbsolutePath().getParent();
+                Files.createDirectories(parent);
+                try (var out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                    pipeline.write(stateDiagramCode, outputType, out);
+                }
+                diagram.written.put(output, stateDiagramCode);
+                written.add(output);
+            }
+        }
+    }
+
+    /**
+     * Transforms a sequence diagram if it changed and prints the outcome.
+     * @param input The sequence diagram.
+     */
+    private void updateAndReport(Path input) {
+        try {
+            for (var output : update(input)) {
+                System.out.printf("OK    %s -> %s%n", input, output);
+            }
+        } catch (IOException e) {
+            System.out.printf("FAIL  %s: Could not save file%n", input);
+        } catch (RuntimeException e) {
+            System.out.printf("FAIL  %s: %s%n", input, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /**
+     * Lists the watched sequence diagrams inside a directory.
+     * @param start The directory.
+     * @return The sequence diagrams in a stable order.
+     * @throws IOException If the directory could not be read.
+     */
+    private List<Path> findInputs(Path start) throws IOException {
+        try (Stream<Path> files = Files.walk(start, recursive ? Integer.MAX_VALUE : 1)) {
+            return files.filter(Files::isRegularFile)
+                    .map(Path::normalize)
+                    .filter(isInput)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Registers a directory and, if the watcher is recursive, all of its subdirectories.
+     * @param watchService The watch service to register with.
+     * @param start The directory.
+     * @throws IOException If a directory could not be registered.
+     */
+    private void register(WatchService watchService, Path start) throws IOException {
+        try (Stream<Path> directories = Files.walk(start, recursive ? Integer.MAX_VALUE : 0)) {
+            for (var d : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator) {
+                d.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+
+    /**
+     * Transforms all watched sequence diagrams and then keeps transforming them whenever they change.
+     * Errors are printed and do not stop watching. Only returns if the directory cannot be watched anymore.
+     * @throws IOException If the directory could not be watched.
+     * @throws InterruptedException If the thread is interrupted while waiting for changes.
+     */
+    public void run() throws IOException, InterruptedException {
+        try (var watchService = directory.getFileSystem().newWatchService()) {
+            register(watchService, directory);
+            for (var input : findInputs(directory)) {
+                updateAndReport(input);
+            }
+
+            while (true) {
+                var key = watchService.take();
+                var changed = new TreeSet<Path>();
+                do {
+                    var watched = (Path) key.watchable();
+                    for (var event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            // Events were lost, compare every sequence diagram with its last transformed content.
+                            changed.addAll(findInputs(directory));
+                            continue;
+                        }
+
+                        var path = watched.resolve((Path) event.context()).normalize();
+                        if (recursive && event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            register(watchService, path);
+                            changed.addAll(findInputs(path));
+                        } else if (isInput.test(path)) {
+                            changed.add(path);
+                        }
+                    }
+                    if (!key.reset() && watched.equals(directory)) {
+                        return;
+                    }
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                for (var input : changed) {
+                    updateAndReport(input);
+                }
+            }
+        }
+    }
+}
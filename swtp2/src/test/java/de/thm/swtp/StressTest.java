@@ -0,0 +1,92 @@
+package de.thm.swtp;
+
+import de.thm.swtp.generator.DiagramGenerator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the whole command line tool on growing generated diagrams. Every run is a new JVM with the same fixed heap and
+ * a small stack, so a diagram which needs memory growing faster than its size or recursion as deep as its nesting
+ * fails the run. Excluded from the regular tests, run with {@code ./gradlew stressTest}.
+ */
+@Tag("stress")
+class StressTest {
+
+    // The limits of every run, independent of the size of the diagram.
+    private static final String MAX_HEAP = "-Xmx512m";
+    private static final String STACK_SIZE = "-Xss512k";
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Transforms a generated diagram for all participants with {@link Main} in a new JVM and checks it succeeded.
+     * @return The wall-clock time of the run in milliseconds.
+     */
+    private long runMain(DiagramGenerator generator, String name) throws IOException, InterruptedException {
+        var sequenceDiagram = directory.resolve(name + ".puml");
+        var classDiagram = directory.resolve(name + "-class.puml");
+        Files.writeString(sequenceDiagram, generator.sequenceDiagram());
+        Files.writeString(classDiagram, generator.classDiagram());
+
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var command = List.of(java, MAX_HEAP, STACK_SIZE, "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "-s", sequenceDiagram.toString(), "-c", classDiagram.toString(),
+                "-o", directory.resolve(name + "-state.puml").toString(), "-p", "*");
+        var start = System.nanoTime();
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        var exitCode = process.waitFor();
+        var time = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(output.contains("StackOverflowError"), name + " overflowed the stack");
+        assertFalse(output.contains("OutOfMemoryError"), name + " ran out of memory");
+        assertEquals(0, exitCode, name + ": " + output);
+        assertTrue(Files.exists(directory.resolve(name + "-state-" + DiagramGenerator.participant(0) + ".puml")));
+        System.out.printf("%s: %d ms%n", name, time);
+        return time;
+    }
+
+    @Test
+    public void testLinearTime() throws IOException, InterruptedException {
+        // Starting the JVM and PlantUML is not part of the transformation.
+        var baseline = runMain(new DiagramGenerator(5, 1, 0, 1), "baseline");
+
+        var sizes = new int[]{25_000, 50_000, 100_000, 200_000, 400_000};
+        var times = new long[sizes.length];
+        for (var i = 0; i < sizes.length; i++) {
+            var time = runMain(new DiagramGenerator(5, sizes[i], 3, 3), "messages-" + sizes[i]);
+            times[i] = Math.max(time - baseline, 100);
+        }
+
+        // 16 times the messages take about 16 times as long if the time grows linearly, 256 times if quadratically.
+        var growth = (double) times[times.length - 1] / times[0];
+        var sizeGrowth = (double) sizes[sizes.length - 1] / sizes[0];
+        assertTrue(growth < sizeGrowth * 2, String.format("Time grew %.1f times for %.0f times the messages",
+                growth, sizeGrowth));
+    }
+
+    @Test
+    public void testDeepNesting() throws IOException, InterruptedException {
+        for (var depth : new int[]{1_000, 5_000, 20_000}) {
+            runMain(new DiagramGenerator(3, 1, depth, 1), "depth-" + depth);
+        }
+        runMain(new DiagramGenerator(3, 20_000, 2_000, 2), "depth-2000-fan-out-2");
+    }
+
+    @Test
+    public void testWideBlocks() throws IOException, InterruptedException {
+        for (var fanOut : new int[]{100, 1_000, 10_000}) {
+            runMain(new DiagramGenerator(10, 50_000, 2, fanOut), "fan-out-" + fanOut);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.thm.swtp;
+
+import de.thm.swtp.cache.ResultCache;
+import de.thm.swtp.statediagram.BinaryStateGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformationPipelineTest {
+
+    private static final String SEQUENCE_DIAGRAM =
+            """
+            @startuml
+            participant User
+            participant GasPump
+            User --> GasPump: insertCard
+            loop fueling
+                GasPump --> User: startFuel
+            end
+            @enduml
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testOutputTypes() throws IOException {
+        var cache = new ResultCache(directory.resolve("cache"), 64 * 1024 * 1024);
+        var pipeline = new TransformationPipeline("GasPump", "uml, image,svg,png", null, cache);
+        assertEquals(List.of("uml", "png", "svg"), pipeline.getOutputTypes());
+
+        var uml = directory.resolve("single.puml");
+        new TransformationPipeline("GasPump", "uml", null).run(SEQUENCE_DIAGRAM, uml);
+
+        // Every format is written next to the output with its own extension.
+        var output = directory.resolve("state.out");
+        pipeline.run(SEQUENCE_DIAGRAM, output);
+        assertFalse(Files.exists(output));
+        assertEquals(Files.readString(uml), Files.readString(directory.resolve("state.puml")));
+        var png = Files.readAllBytes(directory.resolve("state.png"));
+        assertEquals("PNG", new String(png, 1, 3, StandardCharsets.US_ASCII));
+        var svg = Files.readAllBytes(directory.resolve("state.svg"));
+        assertTrue(new String(svg, StandardCharsets.UTF_8).contains("<svg"));
+
+        // Every format is cached on its own.
+        pipeline.run(SEQUENCE_DIAGRAM, output);
+        assertEquals(3, cache.getHits());
+        assertArrayEquals(png, Files.readAllBytes(directory.resolve("state.png")));
+        var outputs = new TransformationPipeline("GasPump", "svg,table", null, cache,
+                TransformationPipeline.Reduction.MINIMIZE).renderAll(SEQUENCE_DIAGRAM);
+        assertEquals(List.of("svg", "table"), List.copyOf(outputs.keySet()));
+        assertTrue(new String(outputs.get("table").get("GasPump"), StandardCharsets.UTF_8).contains("insertCard"));
+
+        var e = assertThrows(IllegalStateException.class, () -> new TransformationPipeline("GasPump", "uml,pdf", null));
+        assertEquals("Invalid output type 'pdf'. Must be 'uml', 'image', 'png', 'svg', 'table', 'java' or 'binary', "
+                + "or a comma-separated list of them.", e.getMessage());
+
+        // Only tables and Java classes alone imply minimizing, other outputs are never minimized implicitly.
+        assertEquals(List.of("table", "java"), new TransformationPipeline("GasPump", "table,java", null)
+                .getOutputTypes());
+        e = assertThrows(IllegalStateException.class, () -> new TransformationPipeline("GasPump", "uml,table", null));
+        assertEquals("Tables and Java classes are written for the minimal state machines and can only be combined "
+                + "with other output types when minimizing.", e.getMessage());
+        e = assertThrows(IllegalStateException.class, () -> new TransformationPipeline("GasPump", "java", null, null,
+                TransformationPipeline.Reduction.OPTIMIZE));
+        assertEquals("Tables and Java classes are written for the minimal state machines and cannot be combined "
+                + "with shared fragments or optimization.", e.getMessage());
+    }
+
+    @Test
+    public void testInterruptedTransform() throws IOException {
+        var cache = new ResultCache(directory.resolve("cache"), 64 * 1024 * 1024);
+        var pipeline = new TransformationPipeline("GasPump", "uml", null, cache);
+
+        // Interruptions are not cached as failures of the diagram.
+        Thread.currentThread().interrupt();
+        assertThrows(CancellationException.class, () -> pipeline.render(SEQUENCE_DIAGRAM));
+        assertFalse(Thread.currentThread().isInterrupted());
+        var uml = new String(pipeline.render(SEQUENCE_DIAGRAM).get("GasPump"), StandardCharsets.UTF_8);
+        assertTrue(uml.contains("insertCard"));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testBinaryOutput() throws IOException {
+        var output = directory.resolve("state.out");
+        new TransformationPipeline("GasPump", "uml,binary", null).run(SEQUENCE_DIAGRAM, output);
+        var graph = BinaryStateGraph.open(directory.resolve("state.stg"));
+        assertEquals("GasPump", graph.getName());
+        assertFalse(graph.isDeterministic());
+        // Every transition is written as one line of the PlantUML code.
+        var uml = Files.readString(directory.resolve("state.puml"));
+        assertEquals(uml.split("-->", -1).length - 1, graph.getEdgeCount());
+
+        var machine = new TransformationPipeline("GasPump", "binary", null, null,
+                TransformationPipeline.Reduction.MINIMIZE).render(SEQUENCE_DIAGRAM).get("GasPump");
+        assertTrue(BinaryStateGraph.of(ByteBuffer.wrap(machine)).isDeterministic());
+
+        var e = assertThrows(IllegalStateException.class, () -> new TransformationPipeline("GasPump", "binary", null,
+                null, TransformationPipeline.Reduction.SHARE));
+        assertEquals("Binary state graphs cannot be written with shared fragments.", e.getMessage());
+    }
+}
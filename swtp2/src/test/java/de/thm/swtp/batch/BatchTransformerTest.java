@@ -0,0 +1,124 @@
+package de.thm.swtp.batch;
+
+import de.thm.swtp.TransformationPipeline;
+import de.thm.swtp.sequencediagram.DiagramBlock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchTransformerTest {
+
+    @TempDir
+    Path directory;
+
+    private void writeSequenceDiagram(Path path, String message) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, String.format("""
+                @startuml
+                participant User
+                participant GasPump
+                User --> GasPump: %s
+                @enduml
+                """, message));
+    }
+
+    @Test
+    public void testBatch() throws IOException, InterruptedException {
+        var input = directory.resolve("in");
+        var output = directory.resolve("out");
+        writeSequenceDiagram(input.resolve("a.puml"), "insertCard");
+        writeSequenceDiagram(input.resolve("sub/b.puml"), "pinCode");
+        Files.writeString(input.resolve("sub/broken.puml"), "not a diagram");
+        Files.writeString(input.resolve("ignored.txt"), "not a diagram");
+
+        var inputs = BatchTransformer.findInputs(input.toString());
+        assertEquals(3, inputs.size());
+
+        var pipeline = new TransformationPipeline("GasPump", "uml", null);
+        var results = new BatchTransformer(pipeline, input, output, 2).run(inputs);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+        assertEquals(input.resolve("sub/broken.puml"), results.get(2).input());
+
+        assertEquals("""
+                @startuml
+                hide empty description
+                state GasPump {
+                [*] --> S1
+                S1 --> S2: pinCode
+                S2 --> [*]
+                }
+                @enduml
+                """, Files.readString(output.resolve("sub/b.puml")));
+        assertTrue(Files.exists(output.resolve("a.puml")));
+    }
+
+    @Test
+    public void testError() throws IOException, InterruptedException {
+        var input = directory.resolve("in");
+        writeSequenceDiagram(input.resolve("a.puml"), "insertCard");
+        writeSequenceDiagram(input.resolve("b.puml"), "pinCode");
+
+        var pipeline = new TransformationPipeline("GasPump", "uml", null) {
+            @Override
+            public void run(List<DiagramBlock> blocks, Path output) throws IOException {
+                if (blocks.get(0).code().contains("pinCode")) {
+                    throw new StackOverflowError();
+                }
+                super.run(blocks, output);
+            }
+        };
+        var results = new BatchTransformer(pipeline, input, directory.resolve("out"), 2)
+                .run(BatchTransformer.findInputs(input.toString()));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("java.lang.StackOverflowError", results.get(1).error());
+    }
+
+    @Test
+    public void testMultipleDiagrams() throws IOException, InterruptedException {
+        var input = directory.resolve("in");
+        var output = directory.resolve("out");
+        Files.createDirectories(input);
+        Files.writeString(input.resolve("a.puml"), """
+                @startuml card
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                @enduml
+                @startuml
+                participant User
+                participant GasPump
+                User --> GasPump: pinCode
+                @enduml
+                """);
+
+        var pipeline = new TransformationPipeline("GasPump", "uml", null);
+        var results = new BatchTransformer(pipeline, input, output, 2).run(BatchTransformer.findInputs(input.toString()));
+
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(Files.readString(output.resolve("a-card.puml")).contains("insertCard"));
+        assertTrue(Files.readString(output.resolve("a-2.puml")).contains("pinCode"));
+        assertFalse(Files.exists(output.resolve("a.puml")));
+    }
+
+    @Test
+    public void testGlob() throws IOException {
+        writeSequenceDiagram(directory.resolve("a.puml"), "insertCard");
+        writeSequenceDiagram(directory.resolve("sub/b.puml"), "pinCode");
+
+        var glob = directory + "/sub/*.puml";
+        assertEquals(directory.resolve("sub"), BatchTransformer.baseDirectoryOf(glob));
+        assertEquals(1, BatchTransformer.findInputs(glob).size());
+    }
+}
@@ -0,0 +1,99 @@
+package de.thm.swtp.cache;
+
+import de.thm.swtp.TransformationPipeline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testKey() {
+        assertEquals(ResultCache.key("a", "b"), ResultCache.key("a", "b"));
+        assertNotEquals(ResultCache.key("ab", ""), ResultCache.key("a", "b"));
+        assertNotEquals(ResultCache.key("a", null), ResultCache.key("a", ""));
+
+        // The tool version contains a hash of the code, so builds of the same release have different keys.
+        assertTrue(ResultCache.toolVersion().matches(".+\\+[0-9a-f]{64}/\\d+"), ResultCache.toolVersion());
+        assertEquals(ResultCache.key("a", "b"), ResultCache.keyOf(ResultCache.toolVersion(), "a", "b"));
+        assertNotEquals(ResultCache.keyOf("1.0-SNAPSHOT+0123/1", "a", "b"),
+                ResultCache.keyOf("1.0-SNAPSHOT+4567/1", "a", "b"));
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        var cache = new ResultCache(directory, 1024 * 1024);
+        var key = ResultCache.key("diagram");
+
+        assertNull(cache.get(key));
+        cache.put(key, ResultCache.Entry.success(Map.of("GasPump", "uml".getBytes(StandardCharsets.UTF_8))));
+
+        var entry = cache.get(key);
+        assertNotNull(entry);
+        assertTrue(entry.isSuccess());
+        assertArrayEquals("uml".getBytes(StandardCharsets.UTF_8), entry.outputs().get("GasPump"));
+
+        var failure = ResultCache.key("invalid");
+        cache.put(failure, ResultCache.Entry.failure("Class User does not exist."));
+        assertEquals("Class User does not exist.", new ResultCache(directory, 1024 * 1024).get(failure).error());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        var cache = new ResultCache(directory, 4096);
+        var output = new byte[1000];
+
+        for (var i = 0; i < 10; i++) {
+            cache.put(ResultCache.key("diagram" + i), ResultCache.Entry.success(Map.of("GasPump", output)));
+        }
+
+        long size;
+        try (var files = Files.walk(directory)) {
+            size = files.filter(f -> f.toString().endsWith(".entry")).mapToLong(f -> f.toFile().length()).sum();
+        }
+        assertTrue(size <= 4096);
+        assertNotNull(cache.get(ResultCache.key("diagram9")));
+        assertNull(cache.get(ResultCache.key("diagram0")));
+    }
+
+    @Test
+    public void testPipeline() throws IOException {
+        var cache = new ResultCache(directory.resolve("cache"), 1024 * 1024);
+        var code =
+                """
+                @startuml message
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                @enduml
+                """;
+
+        var pipeline = new TransformationPipeline("GasPump", "uml", null, cache);
+        var output = directory.resolve("state.puml");
+        pipeline.run(code, output);
+        var generated = Files.readString(output);
+        Files.delete(output);
+
+        pipeline.run(code, output);
+        assertEquals(generated, Files.readString(output));
+        assertEquals(1, cache.getHits());
+
+        var error = assertThrows(IllegalStateException.class, () -> new TransformationPipeline("Bank", "uml", null, cache).run(code, output));
+        assertEquals("Could not find participant with name Bank", error.getMessage());
+        assertThrows(IllegalStateException.class, () -> new TransformationPipeline("Bank", "uml", null, cache).run(code, output));
+        assertEquals(2, cache.getHits());
+    }
+}
@@ -0,0 +1,85 @@
+package de.thm.swtp.classdiagram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassIndexTest {
+
+    @Test
+    public void testInheritedMethods() {
+        var methods = new LinkedHashMap<String, Set<String>>();
+        methods.put("GasPump", Set.of("insertCard"));
+        methods.put("Device", Set.of("reset"));
+        methods.put("Terminal", Set.of("requestPin"));
+        methods.put("Machine", Set.of("powerOff"));
+        methods.put("User", Set.of());
+        var parents = Map.of(
+                "GasPump", List.of("Device", "Terminal"),
+                "Device", List.of("Machine"),
+                "Terminal", List.of("Machine"));
+        var index = new ClassIndex(methods, parents);
+
+        assertEquals(5, index.size());
+        var gasPump = index.get("GasPump");
+        assertEquals("GasPump", gasPump.getName());
+        assertEquals(List.of(index.get("Device"), index.get("Terminal")), gasPump.getParents());
+        // The common ancestor is created once.
+        assertSame(index.get("Device").getParents().get(0), index.get("Terminal").getParents().get(0));
+        for (var m : List.of("insertCard", "reset", "requestPin", "powerOff")) {
+            assertTrue(gasPump.existsMethod(m), m);
+        }
+        assertFalse(index.get("Device").existsMethod("requestPin"));
+        assertFalse(index.get("User").existsMethod("insertCard"));
+        assertNull(index.get("Bank"));
+    }
+
+    @Test
+    public void testCycle() {
+        var methods = new LinkedHashMap<String, Set<String>>();
+        methods.put("A", Set.of());
+        methods.put("B", Set.of());
+        methods.put("C", Set.of());
+        var parents = Map.of("A", List.of("B"), "B", List.of("C"), "C", List.of("A"));
+        var e = assertThrows(IllegalStateException.class, () -> new ClassIndex(methods, parents));
+        assertEquals("Inheritance cycle: A -> B -> C -> A", e.getMessage());
+
+        var self = assertThrows(IllegalStateException.class,
+                () -> new ClassIndex(Map.of("A", Set.of()), Map.of("A", List.of("A"))));
+        assertEquals("Inheritance cycle: A -> A", self.getMessage());
+    }
+
+    @Test
+    public void testLargeHierarchy() {
+        // A chain of 2,000 classes, each with 1,000 subclasses.
+        var methods = new LinkedHashMap<String, Set<String>>();
+        var parents = new HashMap<String, List<String>>();
+        for (var i = 0; i < 2_000; i++) {
+            methods.put("C" + i, Set.of("m" + i));
+            if (i > 0) {
+                parents.put("C" + i, List.of("C" + (i - 1)));
+            }
+        }
+        for (var i = 0; i < 1_000; i++) {
+            methods.put("Leaf" + i, Set.of());
+            parents.put("Leaf" + i, List.of("C" + i));
+        }
+        var index = new ClassIndex(methods, parents);
+
+        assertTrue(index.get("C1999").existsMethod("m0"));
+        assertTrue(index.get("Leaf999").existsMethod("m999"));
+        assertFalse(index.get("Leaf999").existsMethod("m1000"));
+    }
+
+    @Test
+    public void testExtractMethodName() {
+        assertEquals("myMethod", ClassIndex.extractMethodName("+void myMethod(int x, int y)"));
+        assertThrows(IllegalStateException.class, () -> ClassIndex.extractMethodName("()"));
+    }
+}
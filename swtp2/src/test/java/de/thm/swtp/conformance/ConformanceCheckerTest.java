@@ -0,0 +1,160 @@
+package de.thm.swtp.conformance;
+
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import de.thm.swtp.statediagram.DeterministicStateMachine;
+import de.thm.swtp.statediagram.StateDiagramTransformer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConformanceCheckerTest {
+
+    @TempDir
+    Path directory;
+
+    private DeterministicStateMachine createMachine() {
+        var events = List.<SequenceEvent>of(
+                new SequenceEvent.MessageEvent("User", "GasPump", "insertCard"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("User", "GasPump", "pay"),
+                new SequenceEvent.EndEvent());
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+        return new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"), StateDiagramTransformer.Options.DEFAULT)
+                .transformAllMinimal()
+                .get("GasPump");
+    }
+
+    @Test
+    public void testCheck() throws IOException, InterruptedException {
+        var traces = directory.resolve("traces.tsv");
+        Files.writeString(traces, """
+                # session\tevent
+                a\tinsertCard
+                a\t/ startFuel
+                a\tpay
+                a\t!(fueling)
+
+                b\tinsertCard\r
+                b\tpay
+                b\t/ startFuel
+                c\tinsertCard
+                a\tinsertCard
+                c\t/ startFuel
+                c\tpay
+                c\t!(fueling)""");
+
+        var report = new StringBuilder();
+        var summary = new ConformanceChecker(createMachine()).check(traces, 2, report);
+        assertEquals("""
+                session\tverdict\tevents\tline\tevent
+                a\trejected\t5\t11\tinsertCard
+                b\trejected\t3\t8\tpay
+                c\taccepted\t4\t\t
+                """, report.toString());
+        assertEquals(new ConformanceSummary(3, 1, 2, 0, 12), summary);
+        assertFalse(summary.isConformant());
+
+        Files.writeString(traces, "a\tinsertCard\nmissing tab\n");
+        var e = assertThrows(IllegalStateException.class,
+                () -> new ConformanceChecker(createMachine()).check(traces, 1, new StringBuilder()));
+        assertEquals("Line 2: expected a session and an event separated by a tab.", e.getMessage());
+    }
+
+    /**
+     * Returns the report line of a trace, following the transitions of the machine.
+     */
+    private String expectedResult(DeterministicStateMachine machine, String session, List<String> trace,
+                                  List<Integer> lines) {
+        var state = 0;
+        for (var i = 0; i < trace.size(); i++) {
+            var input = machine.indexOf(trace.get(i));
+            state = input < 0 ? -1 : machine.getTransition(state, input);
+            if (state < 0) {
+                return String.format("%s\trejected\t%d\t%d\t%s\n", session, trace.size(), lines.get(i),
+                        trace.get(i));
+            }
+        }
+        return String.format("%s\t%s\t%d\t\t\n", session, machine.isAccepting(state) ? "accepted" : "incomplete",
+                trace.size());
+    }
+
+    @Test
+    public void testInterleavedSessions() throws IOException, InterruptedException {
+        var machine = createMachine();
+        var texts = new ArrayList<String>();
+        machine.getSymbols().forEach(s -> texts.add(s.text()));
+        texts.add("unknown");
+
+        var random = new Random(0);
+        var traces = new ArrayList<List<String>>();
+        for (var session = 0; session < 2000; session++) {
+            var trace = new ArrayList<String>();
+            for (var i = random.nextInt(12); i >= 0; i--) {
+                // Mostly valid traces, which are only rejected late or not at all.
+                trace.add(random.nextInt(8) > 0
+                        ? List.of("insertCard", "/ startFuel", "pay", "fueling", "pay", "!(fueling)")
+                                .get(Math.min(trace.size(), 5))
+                        : texts.get(random.nextInt(texts.size())));
+            }
+            traces.add(trace);
+        }
+
+        // Up to 50 sessions are open at the same time, their events are interleaved at random.
+        var file = new StringBuilder();
+        var lines = new ArrayList<List<Integer>>();
+        traces.forEach(t -> lines.add(new ArrayList<>()));
+        var open = new ArrayList<Integer>();
+        var next = 0;
+        var line = 0;
+        while (next < traces.size() || !open.isEmpty()) {
+            while (next < traces.size() && open.size() < 50) {
+                open.add(next++);
+            }
+            Integer session = open.get(random.nextInt(open.size()));
+            var position = lines.get(session).size();
+            file.append("session").append(session).append('\t')
+                    .append(traces.get(session).get(position)).append('\n');
+            lines.get(session).add(++line);
+            if (position + 1 == traces.get(session).size()) {
+                open.remove(session);
+            }
+        }
+        var traceFile = directory.resolve("traces.tsv");
+        Files.writeString(traceFile, file);
+
+        // Sessions are reported in the order of their first event.
+        var order = new ArrayList<Integer>();
+        for (var session = 0; session < traces.size(); session++) {
+            order.add(session);
+        }
+        order.sort((a, b) -> Integer.compare(lines.get(a).get(0), lines.get(b).get(0)));
+        var expected = new StringBuilder("session\tverdict\tevents\tline\tevent\n");
+        for (var session : order) {
+            expected.append(expectedResult(machine, "session" + session, traces.get(session), lines.get(session)));
+        }
+
+        // Chunks split the sessions and even single events.
+        for (var chunkSize : new long[]{100, 1000, 1 << 20}) {
+            for (var workers : new int[]{1, 3, 4}) {
+                var report = new StringBuilder();
+                var checker = new ConformanceChecker(machine, chunkSize);
+                var summary = checker.check(traceFile, workers, report);
+                assertEquals(expected.toString(), report.toString(), "Chunk size " + chunkSize);
+                assertEquals(2000, summary.traces());
+                assertEquals(line, summary.events());
+                // Every chunk is read by a single worker, however many workers there are.
+                assertEquals(line, checker.getLinesRead());
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.thm.swtp.metrics;
+
+import de.thm.swtp.TransformationPipeline;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    private static final String SEQUENCE_DIAGRAM = """
+            @startuml
+            participant User
+            participant GasPump
+            User -> GasPump: insertCard
+            loop fueling
+            GasPump -> User: startFuel
+            end
+            @enduml
+            """;
+
+    @Test
+    public void testMetrics() throws IOException {
+        var metrics = new Metrics();
+        var pipeline = new TransformationPipeline("*", "uml", null, null, TransformationPipeline.Reduction.NONE,
+                metrics);
+        var outputs = pipeline.render(SEQUENCE_DIAGRAM);
+        pipeline.render(SEQUENCE_DIAGRAM);
+
+        var text = metrics.toText();
+        assertTrue(text.startsWith("phase"), text);
+        for (var phase : new String[]{"parse ", "transform ", "render "}) {
+            assertTrue(text.contains(phase), text);
+        }
+        assertFalse(text.contains("validate"), text);
+        assertTrue(text.contains("* calling thread only, without parallel workers\n"), text);
+
+        var outputBytes = 2 * (outputs.get("User").length + outputs.get("GasPump").length);
+        var json = metrics.toJson();
+        assertTrue(json.startsWith("{\"phases\":[{\"name\":\"parse\",\"count\":2,\"timeMillis\":"), json);
+        assertTrue(json.contains("{\"name\":\"render\",\"count\":4,"), json);
+        assertTrue(json.contains(",\"callingThreadAllocatedBytes\":"), json);
+        assertTrue(json.contains("\"stateDiagrams\":4,"), json);
+        assertTrue(json.endsWith(",\"outputBytes\":" + outputBytes + "}\n"), json);
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        var pipeline = new TransformationPipeline("GasPump", "uml", null);
+        pipeline.render(SEQUENCE_DIAGRAM);
+        assertSame(Metrics.disabled(), pipeline.getMetrics());
+        assertTrue(Metrics.disabled().toJson().startsWith("{\"phases\":[],\"stateDiagrams\":0,"));
+    }
+}
@@ -0,0 +1,77 @@
+package de.thm.swtp.sequencediagram;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagramBlockTest {
+
+    @TempDir
+    Path directory;
+
+    private List<String> namesOf(List<DiagramBlock> blocks) {
+        return blocks.stream().map(DiagramBlock::name).toList();
+    }
+
+    @Test
+    public void testSplit() {
+        var blocks = DiagramBlock.split("""
+                ' A comment outside of the diagrams.
+                @startuml login
+                User -> GasPump: insertCard
+                @enduml
+
+                  @startuml
+                User -> GasPump: pinCode
+                @enduml
+                @startuml(id=pay ment)
+                @enduml
+                @startuml login
+                @enduml
+                @startuml 2
+                @enduml
+                """);
+
+        assertEquals(List.of("login", "2", "pay_ment", "login-4", "2-5"), namesOf(blocks));
+        assertEquals("""
+                @startuml login
+                User -> GasPump: insertCard
+                @enduml
+                """, blocks.get(0).code());
+        assertEquals("""
+                  @startuml
+                User -> GasPump: pinCode
+                @enduml
+                """, blocks.get(1).code());
+    }
+
+    @Test
+    public void testNoDiagram() {
+        assertEquals(List.of(new DiagramBlock("1", "not a diagram")), DiagramBlock.split("not a diagram"));
+
+        var blocks = DiagramBlock.split("\uFEFF@startuml\nUser -> GasPump: insertCard\n");
+        assertEquals(List.of(new DiagramBlock("1", "@startuml\nUser -> GasPump: insertCard\n")), blocks);
+    }
+
+    @Test
+    public void testReadLargeFile() throws IOException {
+        // Larger than the size from which files are memory-mapped.
+        var code = new StringBuilder();
+        for (var i = 0; code.length() < 3 << 20; i++) {
+            code.append("@startuml\nUser -> GasPump: \u00e4nderung").append(i).append("\n@enduml\n");
+        }
+        var file = directory.resolve("large.puml");
+        Files.writeString(file, code);
+
+        var blocks = DiagramBlock.read(file);
+        assertEquals(DiagramBlock.split(code.toString()), blocks);
+        assertEquals("@startuml\nUser -> GasPump: \u00e4nderung7\n@enduml\n", blocks.get(7).code());
+        assertEquals(String.join("", blocks.stream().map(DiagramBlock::code).toList()), code.toString());
+    }
+}
@@ -0,0 +1,135 @@
+package de.thm.swtp.sequencediagram;
+
+import de.thm.swtp.TransformationPipeline;
+import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastSequenceParserTest {
+
+    private SequenceDiagramModel parseWithPlantUml(String code) {
+        return SequenceDiagramModel.of((SequenceDiagram) new SourceStringReader(code).getBlocks().get(0).getDiagram());
+    }
+
+    private void appendBlock(StringBuilder code, Random random, int depth) {
+        var events = random.nextInt(5);
+        for (var i = 0; i < events; i++) {
+            var indent = "    ".repeat(depth);
+            switch (depth > 3 ? 0 : random.nextInt(6)) {
+                case 0, 1 -> code.append(indent)
+                        .append(random.nextBoolean() ? "User" : "GasPump")
+                        .append(random.nextBoolean() ? " --> " : "->")
+                        .append(random.nextBoolean() ? "Bank" : "GasPump")
+                        .append(random.nextBoolean() ? ": " : " :")
+                        .append("message").append(random.nextInt(3)).append("(pin, 1)\n");
+                case 2 -> {
+                    code.append(indent).append("opt amount > ").append(random.nextInt(10)).append('\n');
+                    appendBlock(code, random, depth + 1);
+                    code.append(indent).append("end\n");
+                }
+                case 3 -> {
+                    code.append(indent).append("loop fueling\n");
+                    appendBlock(code, random, depth + 1);
+                    code.append(indent).append("end\n");
+                }
+                case 4 -> {
+                    code.append(indent).append("alt pinOK\n");
+                    appendBlock(code, random, depth + 1);
+                    for (var j = random.nextInt(3); j > 0; j--) {
+                        code.append(indent).append(random.nextBoolean() ? "else\n" : "else !pinOK\n");
+                        appendBlock(code, random, depth + 1);
+                    }
+                    code.append(indent).append("end\n");
+                }
+                default -> code.append(random.nextBoolean() ? "\n" : indent + "' comment\n");
+            }
+        }
+    }
+
+    @Test
+    public void testDifferential() {
+        for (var seed = 0; seed < 500; seed++) {
+            var random = new Random(seed);
+            var code = new StringBuilder("@startuml diagram\n");
+            if (random.nextBoolean()) {
+                code.append("participant GasPump\nparticipant User\n");
+            }
+            appendBlock(code, random, 0);
+            code.append("@enduml\n");
+
+            var fast = FastSequenceParser.parse(code.toString());
+            assertNotNull(fast, code.toString());
+            assertEquals(parseWithPlantUml(code.toString()), fast, code.toString());
+        }
+    }
+
+    @Test
+    public void testParse() {
+        var code =
+                """
+                text before the diagram is ignored
+                @startuml
+                participant User
+                User --> GasPump: insertCard
+                alt pinOK
+                    GasPump --> User: startFuel
+                else
+                    GasPump --> User: invalidPin
+                end
+                @enduml
+                """;
+
+        var sequenceDiagram = FastSequenceParser.parse(code);
+        assertEquals(new SequenceDiagramModel(List.of("User", "GasPump"), List.of(
+                new SequenceEvent.MessageEvent("User", "GasPump", "insertCard"),
+                new SequenceEvent.GroupStartEvent("alt", "pinOK"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.ElseEvent(null),
+                new SequenceEvent.MessageEvent("GasPump", "User", "invalidPin"),
+                new SequenceEvent.EndEvent())), sequenceDiagram);
+        assertEquals(parseWithPlantUml(code), sequenceDiagram);
+    }
+
+    @Test
+    public void testFallback() {
+        var unsupported = List.of(
+                "participant \"Gas Pump\" as GasPump",
+                "note left: comment",
+                "User ->x GasPump: insertCard",
+                "User -> GasPump",
+                "User -> GasPump: first\\nsecond",
+                "alt#Gold pinOK\nend",
+                "group transaction\nend",
+                "end",
+                "alt pinOK",
+                "!include common.puml");
+
+        for (var lines : unsupported) {
+            assertNull(FastSequenceParser.parse("@startuml\n" + lines + "\n@enduml\n"), lines);
+        }
+        assertNull(FastSequenceParser.parse("User -> GasPump: insertCard\n"));
+    }
+
+    @Test
+    public void testPlantUmlFallback() {
+        var code =
+                """
+                @startuml
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                note left: ignored
+                GasPump --> User: requestPin
+                @enduml
+                """;
+
+        assertNull(FastSequenceParser.parse(code));
+        assertEquals(FastSequenceParser.parse(code.replace("note left: ignored\n", "")),
+                TransformationPipeline.parseSequenceDiagram(code));
+    }
+}
@@ -0,0 +1,119 @@
+package de.thm.swtp.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformerServerTest {
+
+    private HttpResponse<String> post(TransformerServer server, Map<String, String> form) throws IOException, InterruptedException {
+        return post(server, form.entrySet()
+                .stream()
+                .map(e -> e.getKey() + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&")));
+    }
+
+    private HttpResponse<String> post(TransformerServer server, String body) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/transform"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testTransform() throws IOException, InterruptedException {
+        var server = new TransformerServer(0, 10_000, null);
+        server.start();
+
+        try {
+            var code =
+                    """
+                    @startuml message
+                    participant User
+                    participant GasPump
+                    User --> GasPump: insertCard
+                    @enduml
+                    """;
+
+            var response = post(server, Map.of("sequenceDiagram", code, "targetParticipant", "GasPump"));
+            assertEquals(200, response.statusCode());
+            assertEquals("""
+                    @startuml
+                    hide empty description
+                    state GasPump {
+                    [*] --> S1
+                    S1 --> S2: insertCard
+                    S2 --> [*]
+                    }
+                    @enduml
+                    """, response.body());
+
+            var error = post(server, Map.of("sequenceDiagram", code, "targetParticipant", "Bank"));
+            assertEquals(400, error.statusCode());
+            assertEquals("Could not find participant with name Bank", error.body());
+
+            var malformed = post(server, "sequenceDiagram=%zz");
+            assertEquals(400, malformed.statusCode());
+            assertTrue(malformed.body().startsWith("Malformed form encoding: "));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws IOException, InterruptedException {
+        var server = new TransformerServer(0, 200, null);
+        server.start();
+
+        try {
+            // Large enough to be transformed in parallel and to take far longer than the timeout, as the states of
+            // every block are generated for every participant.
+            var code = new StringBuilder("@startuml\n");
+            for (var p = 0; p < 64; p++) {
+                code.append("participant P").append(p).append('\n');
+            }
+            for (var i = 0; i < 200; i++) {
+                code.append("loop fueling\n");
+                for (var j = 0; j < 1000; j++) {
+                    code.append("P").append(j % 64).append(" --> P").append((j + 1) % 64).append(": startFuel\n");
+                }
+                code.append("end\n");
+            }
+            code.append("@enduml\n");
+
+            var response = post(server, Map.of("sequenceDiagram", code.toString(), "targetParticipant", "*"));
+            assertEquals(503, response.statusCode());
+            assertEquals("Transformation took longer than 200 ms", response.body());
+
+            // The interrupted transformation stops, including the blocks generated in advance on the common pool.
+            var start = System.nanoTime();
+            while (server.getRunningTransformations() > 0 || !ForkJoinPool.commonPool().isQuiescent()) {
+                assertTrue(System.nanoTime() - start < 1_000_000_000L, "Transformation did not stop");
+                Thread.sleep(10);
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testParseForm() {
+        var form = TransformerServer.parseForm("a=1+2&b=%40startuml&c");
+        assertEquals("1 2", form.get("a"));
+        assertEquals("@startuml", form.get("b"));
+        assertEquals("", form.get("c"));
+        assertThrows(IllegalStateException.class, () -> TransformerServer.parseForm("a=%zz"));
+    }
+}
@@ -0,0 +1,170 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.TransformationPipeline;
+import de.thm.swtp.generator.DiagramGenerator;
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryStateGraphTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] toBytes(CompactStateGraph graph) throws IOException {
+        var out = new ByteArrayOutputStream();
+        BinaryStateGraph.write(graph, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testStateDiagram() throws IOException {
+        var code = new DiagramGenerator(3, 3000, 4, 3).sequenceDiagram();
+        var participant = DiagramGenerator.participant(1);
+        var graph = new StateDiagramTransformer(TransformationPipeline.parseSequenceDiagram(code),
+                List.of(participant), StateDiagramTransformer.Options.DEFAULT)
+                .transformAllCompact()
+                .get(participant);
+
+        var file = directory.resolve("graph.stg");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            BinaryStateGraph.write(graph, channel);
+        }
+        var binary = BinaryStateGraph.open(file);
+        assertEquals(participant, binary.getName());
+        assertFalse(binary.isDeterministic());
+
+        assertEquals(graph.getStateCount(), binary.getStateCount());
+        for (var s = 0; s < graph.getStateCount(); s++) {
+            assertEquals(graph.getParent(s), binary.getParent(s));
+            assertEquals(graph.isStartState(s), binary.isStartState(s));
+            assertEquals(graph.isEndState(s), binary.isEndState(s));
+            assertEquals(graph.isCompositeState(s), binary.isCompositeState(s));
+        }
+        for (var s = 0; s <= graph.getStateCount(); s++) {
+            assertEquals(graph.getInnerStateStart(s), binary.getInnerStateStart(s));
+            assertEquals(graph.getEdgeStart(s), binary.getEdgeStart(s));
+        }
+        for (var i = 0; i < binary.getInnerStateCount(); i++) {
+            assertEquals(graph.getSortedInnerState(i), binary.getInnerState(i));
+        }
+
+        // Transitions are sorted by source, keeping the order of every state.
+        assertEquals(graph.getEdgeCount(), binary.getEdgeCount());
+        for (var i = 0; i < graph.getEdgeCount(); i++) {
+            var e = graph.getSortedEdge(i);
+            assertEquals(graph.getEdgeSource(e), binary.getEdgeSource(i));
+            assertEquals(graph.getEdgeTarget(e), binary.getEdgeTarget(i));
+            assertEquals(graph.getEdgeTrigger(e), binary.getEdgeTrigger(i));
+        }
+        assertEquals(graph.getTriggers().size(), binary.getTriggerCount());
+        for (var i = 0; i < binary.getTriggerCount(); i++) {
+            assertEquals(graph.getTriggers().get(i).text(), binary.getTriggerText(i));
+            assertEquals(graph.getTriggers().get(i).kind(), binary.getTriggerKind(i));
+        }
+
+        // Buffers keep their byte order.
+        var buffer = ByteBuffer.wrap(toBytes(graph));
+        assertEquals(graph.getEdgeCount(), BinaryStateGraph.of(buffer).getEdgeCount());
+        assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+    }
+
+    @Test
+    public void testStateMachine() throws IOException {
+        var events = List.<SequenceEvent>of(
+                new SequenceEvent.MessageEvent("User", "GasPump", "insertCard"),
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.EndEvent(),
+                new SequenceEvent.MessageEvent("User", "GasPump", "pay \u00e4"));
+        var machine = new StateDiagramTransformer(new SequenceDiagramModel(List.of("User", "GasPump"), events),
+                List.of("GasPump"), StateDiagramTransformer.Options.DEFAULT)
+                .transformAllMinimal()
+                .get("GasPump");
+
+        var out = new ByteArrayOutputStream();
+        BinaryStateGraph.write(machine, Channels.newChannel(out));
+        var binary = BinaryStateGraph.of(ByteBuffer.wrap(out.toByteArray()));
+        assertTrue(binary.isDeterministic());
+        assertEquals(machine.getStateCount(), binary.getStateCount());
+        assertEquals(machine.getTransitionCount(), binary.getEdgeCount());
+        assertEquals(0, binary.getInnerStateCount());
+
+        var texts = new ArrayList<String>();
+        for (var i = 0; i < binary.getTriggerCount(); i++) {
+            texts.add(binary.getTriggerText(i));
+        }
+        assertEquals(List.of("!(fueling)", "/ startFuel", "fueling", "insertCard", "pay \u00e4"), texts);
+        for (var s = 0; s < binary.getStateCount(); s++) {
+            assertEquals(s == 0, binary.isStartState(s));
+            assertEquals(machine.isAccepting(s), binary.isEndState(s));
+            assertEquals(BinaryStateGraph.NO_PARENT, binary.getParent(s));
+            for (var e = binary.getEdgeStart(s); e < binary.getEdgeStart(s + 1); e++) {
+                assertEquals(s, binary.getEdgeSource(e));
+                assertEquals(machine.getTransition(s, binary.getEdgeTrigger(e)), binary.getEdgeTarget(e));
+            }
+        }
+    }
+
+    @Test
+    public void testMillionTransitions() throws IOException {
+        var events = new ArrayList<SequenceEvent>();
+        for (var i = 0; i < 1_000_000; i++) {
+            events.add(new SequenceEvent.MessageEvent("User", "GasPump", "message" + (i % 100)));
+        }
+        var graph = new StateDiagramTransformer(new SequenceDiagramModel(List.of("User", "GasPump"), events),
+                List.of("GasPump"), StateDiagramTransformer.Options.DEFAULT)
+                .transformAllCompact()
+                .get("GasPump");
+        var file = directory.resolve("million.stg");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            BinaryStateGraph.write(graph, channel);
+        }
+
+        // Only the header is read when opening, the transitions are read from the mapping.
+        var binary = BinaryStateGraph.open(file);
+        assertEquals(1_000_002, binary.getEdgeCount());
+        var last = binary.getEdgeStart(1_000_001);
+        assertEquals(1_000_001, binary.getEdgeSource(last));
+        assertEquals(1_000_002, binary.getEdgeTarget(last));
+        assertEquals(BinaryStateGraph.NO_TRIGGER, binary.getEdgeTrigger(last));
+        assertEquals("message99", binary.getTriggerText(binary.getEdgeTrigger(binary.getEdgeStart(1_000_000))));
+    }
+
+    @Test
+    public void testInvalidFiles() throws IOException {
+        var graph = new CompactStateGraph("GasPump");
+        graph.addState(0, true, false);
+        graph.addState(1, false, true);
+        graph.addTransition(0, 1, null);
+        var bytes = toBytes(graph);
+        assertEquals(2, BinaryStateGraph.of(ByteBuffer.wrap(bytes)).getStateCount());
+
+        var e = assertThrows(IllegalStateException.class,
+                () -> BinaryStateGraph.of(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+        assertEquals("Binary state graph is truncated or corrupt.", e.getMessage());
+
+        var newer = bytes.clone();
+        newer[4] = 2;
+        e = assertThrows(IllegalStateException.class, () -> BinaryStateGraph.of(ByteBuffer.wrap(newer)));
+        assertEquals("Unsupported binary state graph version 2.", e.getMessage());
+
+        e = assertThrows(IllegalStateException.class, () -> BinaryStateGraph.of(ByteBuffer.wrap(new byte[64])));
+        assertEquals("Not a binary state graph.", e.getMessage());
+    }
+}
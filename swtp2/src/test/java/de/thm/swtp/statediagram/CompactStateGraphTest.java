@@ -0,0 +1,92 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactStateGraphTest {
+
+    @Test
+    public void testRendersLikeStateNodes() {
+        for (var seed = 0; seed < 1000; seed++) {
+            var events = new ArrayList<SequenceEvent>();
+            RandomEvents.add(events, new Random(seed), 3, false);
+            var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+            var transformer = new StateDiagramTransformer(sequenceDiagram, List.of("User", "GasPump"),
+                    StateDiagramTransformer.Options.DEFAULT);
+
+            var expected = transformer.transformAll();
+            var actual = transformer.transformAllCompact();
+            for (var name : expected.keySet()) {
+                assertEquals(expected.get(name).toString(), actual.get(name).toString());
+                assertEquals(expected.get(name).statistics(), actual.get(name).statistics());
+            }
+        }
+    }
+
+    @Test
+    public void testGraph() {
+        var graph = new CompactStateGraph("GasPump");
+        var startFuel = new SymbolTable(10).trigger("startFuel", true);
+        graph.addState(0, true, false);
+        graph.addCompositeState(1);
+        graph.addState(2, true, false);
+        graph.addInnerState(1, 2);
+        graph.addState(3, false, true);
+        graph.addTransition(0, 1, null);
+        graph.addTransition(2, 3, startFuel);
+        graph.addTransition(1, 1, startFuel);
+        graph.addTransition(1, 3, null);
+
+        assertEquals(4, graph.getStateCount());
+        assertEquals(new GraphStatistics(4, 4, 1, 1), graph.statistics());
+        assertEquals(1, graph.getParent(2));
+        assertEquals(CompactStateGraph.NO_PARENT, graph.getParent(1));
+        assertTrue(graph.isCompositeState(1));
+        assertEquals(List.of(startFuel), graph.getTriggers());
+        assertEquals(graph.getEdgeTrigger(1), graph.getEdgeTrigger(2));
+        assertEquals(CompactStateGraph.NO_TRIGGER, graph.getEdgeTrigger(0));
+        assertEquals("""
+                @startuml
+                hide empty description
+                state GasPump {
+                [*] --> S1
+                state S1 {
+                [*] --> [*]: / startFuel
+                }
+                S1 --> S1: / startFuel
+                S1 --> [*]
+                }
+                @enduml
+                """, graph.toString());
+        // Rendering does not change the graph.
+        assertEquals(graph.toString(), graph.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> graph.addState(5, false, false));
+        assertThrows(IllegalArgumentException.class, () -> graph.addInnerState(1, 2));
+    }
+
+    @Test
+    public void testMillionTransitions() {
+        var events = new ArrayList<SequenceEvent>();
+        for (var i = 0; i < 1_000_000; i++) {
+            events.add(new SequenceEvent.MessageEvent("User", "GasPump", "message" + (i % 100)));
+        }
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+
+        var graph = new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"),
+                StateDiagramTransformer.Options.DEFAULT)
+                .transformAllCompact()
+                .get("GasPump");
+        assertEquals(1_000_003, graph.getStateCount());
+        assertEquals(1_000_002, graph.getEdgeCount());
+        assertEquals(100, graph.getTriggers().size());
+        assertTrue(graph.toString().endsWith("S1000001 --> [*]\n}\n@enduml\n"));
+    }
+}
@@ -0,0 +1,126 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeterministicStateMachineTest {
+
+    /**
+     * Collects all accepted sequences of inputs up to the given length.
+     */
+    private void collectTraces(DeterministicStateMachine machine, int state, List<String> trace, int maxLength,
+                               Set<List<String>> traces) {
+        if (machine.isAccepting(state)) {
+            traces.add(List.copyOf(trace));
+        }
+        if (trace.size() == maxLength) {
+            return;
+        }
+        for (var input = 0; input < machine.getSymbols().size(); input++) {
+            var target = machine.getTransition(state, input);
+            if (target != DeterministicStateMachine.NO_TRANSITION) {
+                trace.add(machine.getSymbols().get(input).text());
+                collectTraces(machine, target, trace, maxLength, traces);
+                trace.remove(trace.size() - 1);
+            }
+        }
+    }
+
+    @Test
+    public void testMinimize() throws IOException {
+        var events = List.<SequenceEvent>of(
+                new SequenceEvent.MessageEvent("User", "GasPump", "insertCard"),
+                new SequenceEvent.GroupStartEvent("alt", null),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.ElseEvent(null),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "eject"),
+                new SequenceEvent.EndEvent(),
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("User", "GasPump", "pay"),
+                new SequenceEvent.EndEvent());
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+
+        var machine = new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"),
+                StateDiagramTransformer.Options.DEFAULT)
+                .transformAllMinimal()
+                .get("GasPump");
+        // Both branches start with the same trigger, which leads to a single state.
+        assertEquals("""
+                @startuml
+                hide empty description
+                state GasPump {
+                [*] --> S0
+                S0 --> S1: insertCard
+                S1 --> S2: / startFuel
+                S2 --> S3: / eject
+                S2 --> S4: pay
+                S3 --> S4: pay
+                S4 --> S5: !(fueling)
+                S4 --> S3: fueling
+                S5 --> [*]
+                }
+                @enduml
+                """, machine.toString());
+
+        var table = new StringBuilder();
+        machine.renderTable(table);
+        assertEquals("""
+                state\taccepting\t!(fueling)\t/ eject\t/ startFuel\tfueling\tinsertCard\tpay
+                S0\tfalse\t\t\t\t\tS1\t
+                S1\tfalse\t\t\tS2\t\t\t
+                S2\tfalse\t\tS3\t\t\t\tS4
+                S3\tfalse\t\t\t\t\t\tS4
+                S4\tfalse\tS5\t\t\tS3\t\t
+                S5\ttrue\t\t\t\t\t\t
+                """, table.toString());
+
+        assertTrue(machine.accepts(List.of("insertCard", "/ startFuel", "pay", "fueling", "pay", "!(fueling)")));
+        assertTrue(machine.accepts(List.of("insertCard", "/ startFuel", "/ eject", "pay", "!(fueling)")));
+        assertFalse(machine.accepts(List.of("insertCard", "/ startFuel", "pay")));
+        assertFalse(machine.accepts(List.of("insertCard", "/ eject")));
+        assertFalse(machine.accepts(List.of("unknown")));
+    }
+
+    @Test
+    public void testEquivalentMachines() {
+        for (var seed = 0; seed < 500; seed++) {
+            var events = new ArrayList<SequenceEvent>();
+            RandomEvents.add(events, new Random(seed), 2, true);
+            var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+            var graphs = new StateDiagramTransformer(sequenceDiagram, List.of("User", "GasPump"),
+                    StateDiagramTransformer.Options.DEFAULT)
+                    .transformAllCompact();
+            var optimizedGraphs = new StateDiagramTransformer(sequenceDiagram, List.of("User", "GasPump"),
+                StateDiagramTransformer.Options.DEFAULT.withOptimize(true))
+                    .transformAllCompact();
+
+            for (var name : graphs.keySet()) {
+                var machine = DeterministicStateMachine.determinize(graphs.get(name));
+                var minimal = machine.minimize();
+                var expected = new HashSet<List<String>>();
+                var actual = new HashSet<List<String>>();
+                collectTraces(machine, 0, new ArrayList<>(), 6, expected);
+                collectTraces(minimal, 0, new ArrayList<>(), 6, actual);
+                assertEquals(expected, actual, "Seed " + seed);
+                assertTrue(minimal.getStateCount() <= machine.getStateCount());
+
+                // Minimal machines are unique, so they do not depend on the form of the diagram.
+                assertEquals(minimal.toString(), minimal.minimize().toString(), "Seed " + seed);
+                assertEquals(minimal.toString(),
+                        DeterministicStateMachine.determinize(optimizedGraphs.get(name)).minimize().toString(),
+                        "Seed " + seed);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaCodeGeneratorTest {
+
+    @TempDir
+    Path directory;
+
+    private DeterministicStateMachine createMachine() {
+        var events = List.<SequenceEvent>of(
+                new SequenceEvent.MessageEvent("User", "GasPump", "insertCard"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.GroupStartEvent("opt", "receipt"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "eject"),
+                new SequenceEvent.EndEvent(),
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("User", "GasPump", "pay"),
+                new SequenceEvent.EndEvent());
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+        return new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"), StateDiagramTransformer.Options.DEFAULT)
+                .transformAllMinimal()
+                .get("GasPump");
+    }
+
+    /**
+     * Compiles the generated class and loads it.
+     */
+    private Class<?> compile(JavaCodeGenerator generator) throws Exception {
+        var source = directory.resolve(generator.getClassName() + ".java");
+        var code = new StringBuilder();
+        generator.render(code);
+        Files.writeString(source, code);
+
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, "-d", directory.toString(), source.toString()), code.toString());
+        var loader = new URLClassLoader(new URL[]{directory.toUri().toURL()});
+        return loader.loadClass(generator.getClassName());
+    }
+
+    @Test
+    public void testNames() {
+        var generator = new JavaCodeGenerator(createMachine());
+        assertEquals("GasPumpStateMachine", generator.getClassName());
+        assertEquals("P2faStateMachine", JavaCodeGenerator.classNameOf("2fa"));
+        assertEquals(List.of("IF_NOT_FUELING", "IF_NOT_RECEIPT", "SEND_EJECT", "SEND_START_FUEL", "IF_FUELING",
+                        "INSERT_CARD", "PAY", "IF_RECEIPT"),
+                JavaCodeGenerator.inputNamesOf(createMachine().getSymbols()));
+        assertEquals(List.of("INPUT_1", "INPUT_COUNT_1", "PIN_OK", "PIN_OK_3"), JavaCodeGenerator.inputNamesOf(List.of(
+                new Symbol(0, Symbol.Kind.TRIGGER, "1"),
+                new Symbol(1, Symbol.Kind.TRIGGER, "inputCount"),
+                new Symbol(2, Symbol.Kind.TRIGGER, "pinOK"),
+                new Symbol(3, Symbol.Kind.TRIGGER, "pin_ok"))));
+    }
+
+    @Test
+    public void testGeneratedClass() throws Exception {
+        var machine = createMachine();
+        var type = compile(new JavaCodeGenerator(machine));
+        var inputOf = type.getMethod("inputOf", String.class);
+        var fire = type.getMethod("fire", String.class);
+        var isAccepting = type.getMethod("isAccepting");
+        var reset = type.getMethod("reset");
+
+        assertEquals(machine.getStateCount(), type.getField("STATE_COUNT").getInt(null));
+        assertEquals(machine.indexOf("pay"), type.getField("PAY").getInt(null));
+        assertEquals(machine.indexOf("pay"), inputOf.invoke(null, "pay"));
+        assertEquals(-1, inputOf.invoke(null, "unknown"));
+
+        // Every random sequence of inputs is accepted exactly if the machine accepts it.
+        var instance = type.getConstructor().newInstance();
+        var random = new Random(0);
+        var texts = new ArrayList<String>();
+        machine.getSymbols().forEach(s -> texts.add(s.text()));
+        texts.add("unknown");
+        for (var i = 0; i < 2000; i++) {
+            reset.invoke(instance);
+            var trace = new ArrayList<String>();
+            for (var j = random.nextInt(8); j > 0; j--) {
+                var text = random.nextInt(3) == 0 ? "pay" : texts.get(random.nextInt(texts.size()));
+                trace.add(text);
+                fire.invoke(instance, text);
+            }
+            assertEquals(machine.accepts(trace), isAccepting.invoke(instance), trace.toString());
+        }
+
+        reset.invoke(instance);
+        for (var text : List.of("insertCard", "/ startFuel", "!(receipt)", "pay", "fueling", "pay", "!(fueling)")) {
+            assertEquals(true, fire.invoke(instance, text));
+        }
+        assertEquals(true, isAccepting.invoke(instance));
+        assertEquals(false, fire.invoke(instance, "pay"));
+        assertEquals(-1, type.getMethod("state").invoke(instance));
+    }
+
+    @Test
+    public void testLargeMachine() throws Exception {
+        // Several string constants and a binary search instead of a switch.
+        var events = new ArrayList<SequenceEvent>();
+        for (var i = 0; i < 1100; i++) {
+            events.add(new SequenceEvent.MessageEvent("User", "GasPump", "message" + i + "\u00e4\"\\"));
+        }
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+        var machine = new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"),
+                StateDiagramTransformer.Options.DEFAULT)
+                .transformAllMinimal()
+                .get("GasPump");
+
+        var type = compile(new JavaCodeGenerator(machine));
+        var instance = type.getConstructor().newInstance();
+        var fire = type.getMethod("fire", String.class);
+        for (var i = 0; i < 1100; i++) {
+            assertEquals(true, fire.invoke(instance, "message" + i + "\u00e4\"\\"));
+        }
+        assertEquals(true, type.getMethod("isAccepting").invoke(instance));
+        assertEquals("message0\u00e4\"\\", type.getMethod("textOf", int.class).invoke(null, 0));
+    }
+}
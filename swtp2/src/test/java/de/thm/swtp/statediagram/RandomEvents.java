@@ -0,0 +1,61 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceEvent;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random sequence diagrams of messages between User and GasPump and nested alt, loop and opt blocks.
+ */
+final class RandomEvents {
+
+    private RandomEvents() {
+    }
+
+    /**
+     * Adds up to three random messages or blocks.
+     * @param events The events to add to.
+     * @param random The source of randomness.
+     * @param maxDepth The depth below which blocks contain only messages.
+     * @param unguardedAlts Whether the first branch of an alt block may have no guard.
+     */
+    static void add(List<SequenceEvent> events, Random random, int maxDepth, boolean unguardedAlts) {
+        add(events, random, maxDepth, unguardedAlts, 0);
+    }
+
+    /**
+     * Adds up to three random messages or blocks at the given depth.
+     */
+    private static void add(List<SequenceEvent> events, Random random, int maxDepth, boolean unguardedAlts,
+                            int depth) {
+        var count = random.nextInt(4);
+        for (var i = 0; i < count; i++) {
+            switch (depth > maxDepth ? 0 : random.nextInt(5)) {
+                case 0, 1 -> events.add(random.nextBoolean()
+                        ? new SequenceEvent.MessageEvent("User", "GasPump", "insertCard")
+                        : new SequenceEvent.MessageEvent("GasPump", "User", "requestPin" + random.nextInt(3)));
+                case 2 -> {
+                    events.add(new SequenceEvent.GroupStartEvent("opt", "receipt"));
+                    add(events, random, maxDepth, unguardedAlts, depth + 1);
+                    events.add(new SequenceEvent.EndEvent());
+                }
+                case 3 -> {
+                    events.add(new SequenceEvent.GroupStartEvent("loop", "fueling"));
+                    add(events, random, maxDepth, unguardedAlts, depth + 1);
+                    events.add(new SequenceEvent.EndEvent());
+                }
+                case 4 -> {
+                    var guard = unguardedAlts && random.nextBoolean() ? null : "pinOK";
+                    events.add(new SequenceEvent.GroupStartEvent("alt", guard));
+                    add(events, random, maxDepth, unguardedAlts, depth + 1);
+                    for (var j = random.nextInt(3); j > 0; j--) {
+                        events.add(new SequenceEvent.ElseEvent(random.nextBoolean() ? null : "!pinOK"));
+                        add(events, random, maxDepth, unguardedAlts, depth + 1);
+                    }
+                    events.add(new SequenceEvent.EndEvent());
+                }
+            }
+        }
+    }
+}
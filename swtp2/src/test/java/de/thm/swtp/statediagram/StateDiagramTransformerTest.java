@@ -1,11 +1,23 @@
 package de.thm.swtp.statediagram;
 
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
 import net.sourceforge.plantuml.SourceStringReader;
 import net.sourceforge.plantuml.error.PSystemErrorV2;
 import net.sourceforge.plantuml.sequencediagram.SequenceDiagram;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class StateDiagramTransformerTest {
@@ -16,8 +28,6 @@ class StateDiagramTransformerTest {
 
     @Test
     public void testMessageEvent() {
-        StateNode.stateIdCounter = 0;
-
         var code =
                 """
                 @startuml message
@@ -53,8 +63,6 @@ class StateDiagramTransformerTest {
 
     @Test
     public void testOptEvent() {
-        StateNode.stateIdCounter = 0;
-
         var code =
                 """
                 @startuml message
@@ -94,8 +102,6 @@ class StateDiagramTransformerTest {
 
     @Test
     public void testAltEvent() {
-        StateNode.stateIdCounter = 0;
-
         var code =
                 """
                 @startuml message
@@ -143,8 +149,6 @@ class StateDiagramTransformerTest {
 
     @Test
     public void testLoopEvent() {
-        StateNode.stateIdCounter = 0;
-
         var code =
                 """
                 @startuml message
@@ -187,8 +191,6 @@ class StateDiagramTransformerTest {
 
     @Test
     void testAllEvents() {
-        StateNode.stateIdCounter = 0;
-
         var code =
                 """
                 @startuml message
@@ -272,9 +274,294 @@ class StateDiagramTransformerTest {
     }
 
     @Test
-    public void testSyntaxError() {
-        StateNode.stateIdCounter = 0;
+    public void testRenderToWriter() throws IOException {
+        var code =
+                """
+                @startuml message
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                alt pinOK
+                    GasPump --> User: startFuel
+                else
+                    GasPump --> User: invalidPin
+                end
+                @enduml
+                """;
+
+        var sequenceDiagram = parseSequenceDiagram(code);
+        var expected = new StateDiagramTransformer(sequenceDiagram, "GasPump").transform().toString();
+
+        var out = new StringWriter();
+        try (var buffered = new BufferedWriter(out)) {
+            new StateDiagramTransformer(sequenceDiagram, "GasPump").transform().render(buffered);
+        }
+
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testConcurrentTransforms() {
+        var code =
+                """
+                @startuml message
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                loop !pinOk
+                    GasPump --> User: requestPin
+                    alt pinOK
+                        GasPump --> User: startFuel
+                    else
+                        GasPump --> User: showWarning
+                    end
+                end
+                @enduml
+                """;
+
+        var sequenceDiagram = parseSequenceDiagram(code);
+        var expected = new StateDiagramTransformer(sequenceDiagram, "GasPump").transform().toString();
+
+        IntStream.range(0, 64).parallel().forEach(i ->
+                assertEquals(expected, new StateDiagramTransformer(sequenceDiagram, "GasPump").transform().toString()));
+    }
+
+    @Test
+    public void testInterruptedTransform() {
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"),
+                List.of(new SequenceEvent.MessageEvent("User", "GasPump", "insertCard")));
+
+        Thread.currentThread().interrupt();
+        var e = assertThrows(CancellationException.class,
+                () -> new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"),
+                        StateDiagramTransformer.Options.DEFAULT).transformAll());
+        assertEquals("Transformation was interrupted.", e.getMessage());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void testMultipleParticipants() {
+        var code =
+                """
+                @startuml message
+                participant User
+                participant GasPump
+                participant Bank
+                User --> GasPump: insertCard
+                opt pinOK
+                    GasPump --> Bank: validate
+                end
+                @enduml
+                """;
+
+        var sequenceDiagram = parseSequenceDiagram(code);
+        var stateDiagrams = new StateDiagramTransformer(sequenceDiagram, List.of(StateDiagramTransformer.ALL_PARTICIPANTS)).transformAll();
+
+        assertEquals(List.of("User", "GasPump", "Bank"), new ArrayList<>(stateDiagrams.keySet()));
+        for (var participant : stateDiagrams.keySet()) {
+            assertEquals(new StateDiagramTransformer(sequenceDiagram, participant).transform().toString(),
+                    stateDiagrams.get(participant).toString());
+        }
+
+        var selected = new StateDiagramTransformer(sequenceDiagram, List.of("Bank", "User")).transformAll();
+        assertEquals(List.of("Bank", "User"), new ArrayList<>(selected.keySet()));
+    }
 
+    // Parsing a million messages with PlantUML takes about a minute, so this only runs with the stress tests.
+    @Test
+    @Tag("stress")
+    public void testLongMessageSequence() {
+        var messages = 1_000_000;
+        var code = new StringBuilder("@startuml message\nparticipant User\nparticipant GasPump\n");
+        for (var i = 0; i < messages; i++) {
+            code.append("User --> GasPump: m").append(i).append("\n");
+        }
+        code.append("@enduml\n");
+
+        var sequenceDiagram = parseSequenceDiagram(code.toString());
+        var stateDiagram = new StateDiagramTransformer(sequenceDiagram, "GasPump").transform().toString();
+
+        assertTrue(stateDiagram.startsWith("""
+                @startuml
+                hide empty description
+                state GasPump {
+                [*] --> S1
+                S1 --> S2: m0
+                """));
+        assertTrue(stateDiagram.endsWith("""
+                S1000000 --> S1000001: m999999
+                S1000001 --> [*]
+                }
+                @enduml
+                """));
+    }
+
+    @Test
+    public void testDeepNesting() {
+        var depth = 10_000;
+        var code = new StringBuilder("@startuml message\nparticipant User\nparticipant GasPump\n");
+        code.append("opt pinOK\n".repeat(depth));
+        code.append("GasPump --> User: startFuel\n");
+        code.append("end\n".repeat(depth));
+        code.append("@enduml\n");
+
+        var sequenceDiagram = parseSequenceDiagram(code.toString());
+        var stateDiagram = new StateDiagramTransformer(sequenceDiagram, "GasPump").transform().toString();
+
+        // Every opt block consists of a wrapper and a branch state.
+        assertEquals(2 * depth, stateDiagram.split("\nstate S", -1).length - 1);
+        assertEquals(1, stateDiagram.split(": / startFuel\n", -1).length - 1);
+        assertTrue(stateDiagram.endsWith("""
+                S2 --> [*]
+                }
+                @enduml
+                """));
+    }
+
+    @Test
+    public void testSubgraphReuse() {
+        var template =
+                """
+                @startuml
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                alt pinOK
+                    GasPump --> User: startFuel
+                else
+                    GasPump --> User: %s
+                end
+                loop fueling
+                    GasPump --> User: %s
+                end
+                opt receipt
+                    GasPump --> User: printReceipt
+                end
+                @enduml
+                """;
+        var participants = List.of(StateDiagramTransformer.ALL_PARTICIPANTS);
+        var subgraphs = new SubgraphCache();
+
+        var edits = new String[][]{{"invalidPin", "fuel"}, {"invalidPin", "fuelMore"}, {"retry", "fuelMore"}, {"retry", "fuelMore"}};
+        for (var edit : edits) {
+            var sequenceDiagram = parseSequenceDiagram(String.format(template, edit[0], edit[1]));
+            var expected = new StateDiagramTransformer(sequenceDiagram, participants).transformAll();
+            var actual = new StateDiagramTransformer(SequenceDiagramModel.of(sequenceDiagram), participants,
+                    StateDiagramTransformer.Options.DEFAULT.withSubgraphs(subgraphs)).transformAll();
+
+            assertEquals(expected.keySet(), actual.keySet());
+            for (var name : expected.keySet()) {
+                assertEquals(expected.get(name).toString(), actual.get(name).toString());
+                // Reused states must render the same every time.
+                assertEquals(expected.get(name).toString(), actual.get(name).toString());
+            }
+        }
+
+        // Two participants with three blocks each: everything is generated first, then one block per edit changes
+        // and the last transformation reuses every block.
+        assertEquals(6 + 2 + 2, subgraphs.getMisses());
+        assertEquals(4 + 4 + 6, subgraphs.getHits());
+    }
+
+    @Test
+    public void testSharedFragments() {
+        var events = List.<SequenceEvent>of(
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("User", "GasPump", "pay"),
+                new SequenceEvent.EndEvent(),
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("User", "GasPump", "pay"),
+                new SequenceEvent.EndEvent(),
+                new SequenceEvent.GroupStartEvent("alt", "pinOK"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.ElseEvent(null),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.EndEvent());
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+        var transformer = new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"),
+                StateDiagramTransformer.Options.DEFAULT);
+
+        // Shared states are written with the IDs of every copy.
+        var expected = transformer.transformAllCompact().get("GasPump");
+        var actual = transformer.transformAll().get("GasPump");
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.statistics(), actual.statistics());
+
+        // The second loop and the second branch refer to the first ones.
+        var shared = transformer.transformAllShared().get("GasPump");
+        assertEquals(
+                """
+                @startuml
+                hide empty description
+                state GasPump {
+                [*] --> S1
+                S1 --> S2
+                state S2 {
+                [*] --> S4
+                state S4 {
+                [*] --> S8
+                S8 --> S9: pay
+                S9 --> [*]
+                }
+                S4 --> S4: fueling
+                S4 --> [*]: !(fueling)
+                }
+                S2 --> S10
+                state S10 : same as S2
+                S10 --> S18
+                state S18 {
+                [*] --> S20
+                S20 --> S22: pinOK
+                state S22 {
+                [*] --> S24: / startFuel
+                S24 --> [*]
+                }
+                S22 --> [*]
+                S20 --> S26
+                state S26 : same as S22
+                S26 --> [*]
+                }
+                S18 --> [*]
+                }
+                @enduml
+                """, shared.toString());
+        assertEquals(new GraphStatistics(21, 18, 4, 2), shared.statistics());
+    }
+
+    @Test
+    public void testParallelTransform() {
+        var participants = List.of("User", "GasPump");
+        for (var seed = 0; seed < 300; seed++) {
+            var events = new ArrayList<SequenceEvent>();
+            var random = new Random(seed);
+            while (events.size() < 40) {
+                RandomEvents.add(events, random, 3, false);
+            }
+            var sequenceDiagram = new SequenceDiagramModel(participants, events);
+
+            for (var optimize : new boolean[]{false, true}) {
+                var options = StateDiagramTransformer.Options.DEFAULT.withOptimize(optimize);
+                var sequential = new StateDiagramTransformer(sequenceDiagram, participants, options);
+                var expectedNodes = sequential.transformAll();
+                var expectedGraphs = sequential.transformAllCompact();
+                // Tasks of a single event split every fragment off, larger tasks leave small fragments in place.
+                for (var taskEvents : new int[]{1, 8, 512}) {
+                    var parallel = new StateDiagramTransformer(sequenceDiagram, participants,
+                            options.withTaskEvents(taskEvents));
+                    var actualNodes = parallel.transformAll();
+                    var actualGraphs = parallel.transformAllCompact();
+                    for (var name : participants) {
+                        assertEquals(expectedNodes.get(name).toString(), actualNodes.get(name).toString());
+                        assertEquals(expectedNodes.get(name).statistics(), actualNodes.get(name).statistics());
+                        assertEquals(expectedGraphs.get(name).toString(), actualGraphs.get(name).toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSyntaxError() {
         var code =
                 """
                 @startuml message
@@ -0,0 +1,187 @@
+package de.thm.swtp.statediagram;
+
+import de.thm.swtp.sequencediagram.SequenceDiagramModel;
+import de.thm.swtp.sequencediagram.SequenceEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateGraphOptimizerTest {
+
+    // Marks a sequence of triggers after which the diagram may be finished.
+    private static final int ACCEPT = -1;
+
+    /**
+     * Returns the states a transition leads to. Entering a composite state leads to its start states, a transition
+     * to an end state completes the composite state the transition is written in, from where the transitions of the
+     * composite state are taken.
+     */
+    private List<Integer> follow(CompactStateGraph graph, int[] scopes, int edge) {
+        var source = graph.getEdgeSource(edge);
+        var target = graph.getEdgeTarget(edge);
+        if (graph.isEndState(target)) {
+            return List.of(scopes[source] == CompactStateGraph.NO_PARENT ? ACCEPT : scopes[source]);
+        }
+        if (!graph.isCompositeState(target)) {
+            return List.of(target);
+        }
+        var startStates = new ArrayList<Integer>();
+        for (var s = 0; s < graph.getStateCount(); s++) {
+            if (graph.getParent(s) == target && graph.isStartState(s)) {
+                startStates.add(s);
+            }
+        }
+        return startStates;
+    }
+
+    /**
+     * Collects all sequences of triggers and guards up to the given length after which the diagram may be finished.
+     */
+    private Set<List<String>> traces(CompactStateGraph graph, int maxLength) {
+        // The composite state every state is written in, found like the states are written.
+        var scopes = new int[graph.getStateCount()];
+        var visited = new boolean[graph.getStateCount()];
+        var stack = new ArrayDeque<Integer>();
+        scopes[0] = CompactStateGraph.NO_PARENT;
+        visited[0] = true;
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            var state = stack.pop();
+            for (var s = 0; s < graph.getStateCount(); s++) {
+                if (graph.getParent(s) == state && !visited[s]) {
+                    visited[s] = true;
+                    scopes[s] = state;
+                    stack.push(s);
+                }
+            }
+            for (var e = 0; e < graph.getEdgeCount(); e++) {
+                var target = graph.getEdgeTarget(e);
+                if (graph.getEdgeSource(e) == state && !graph.isEndState(target) && !visited[target]) {
+                    visited[target] = true;
+                    scopes[target] = scopes[state];
+                    stack.push(target);
+                }
+            }
+        }
+
+        var traces = new HashSet<List<String>>();
+        collectTraces(graph, scopes, Set.of(0), new ArrayList<>(), maxLength, traces);
+        return traces;
+    }
+
+    private void collectTraces(CompactStateGraph graph, int[] scopes, Set<Integer> states, List<String> trace,
+                               int maxLength, Set<List<String>> traces) {
+        // Empty transitions are taken without an input.
+        var closure = new HashSet<>(states);
+        var pending = new ArrayDeque<>(states);
+        while (!pending.isEmpty()) {
+            var state = pending.pop();
+            for (var e = 0; e < graph.getEdgeCount(); e++) {
+                if (state != ACCEPT && graph.getEdgeSource(e) == state
+                        && graph.getEdgeTrigger(e) == CompactStateGraph.NO_TRIGGER) {
+                    for (var next : follow(graph, scopes, e)) {
+                        if (closure.add(next)) {
+                            pending.push(next);
+                        }
+                    }
+                }
+            }
+        }
+        if (closure.contains(ACCEPT)) {
+            traces.add(List.copyOf(trace));
+        }
+        if (trace.size() == maxLength) {
+            return;
+        }
+
+        var successors = new TreeMap<String, Set<Integer>>();
+        for (var e = 0; e < graph.getEdgeCount(); e++) {
+            if (closure.contains(graph.getEdgeSource(e)) && graph.getEdgeTrigger(e) != CompactStateGraph.NO_TRIGGER) {
+                var trigger = graph.getTriggers().get(graph.getEdgeTrigger(e)).text();
+                successors.computeIfAbsent(trigger, t -> new HashSet<>()).addAll(follow(graph, scopes, e));
+            }
+        }
+        for (var s : successors.entrySet()) {
+            trace.add(s.getKey());
+            collectTraces(graph, scopes, s.getValue(), trace, maxLength, traces);
+            trace.remove(trace.size() - 1);
+        }
+    }
+
+    @Test
+    public void testSameTraces() {
+        var states = 0;
+        var optimizedStates = 0;
+        for (var seed = 0; seed < 300; seed++) {
+            var events = new ArrayList<SequenceEvent>();
+            RandomEvents.add(events, new Random(seed), 2, false);
+            var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+
+            var expected = new StateDiagramTransformer(sequenceDiagram, List.of("User", "GasPump"),
+                    StateDiagramTransformer.Options.DEFAULT)
+                    .transformAllCompact();
+            var actual = new StateDiagramTransformer(sequenceDiagram, List.of("User", "GasPump"),
+                StateDiagramTransformer.Options.DEFAULT.withOptimize(true))
+                    .transformAllCompact();
+            for (var name : expected.keySet()) {
+                assertEquals(traces(expected.get(name), 6), traces(actual.get(name), 6), "Seed " + seed);
+                assertTrue(actual.get(name).getStateCount() <= expected.get(name).getStateCount());
+                states += expected.get(name).getStateCount();
+                optimizedStates += actual.get(name).getStateCount();
+            }
+        }
+        assertTrue(optimizedStates < states * 0.7);
+    }
+
+    @Test
+    public void testOptimize() {
+        var events = List.<SequenceEvent>of(
+                new SequenceEvent.MessageEvent("User", "GasPump", "insertCard"),
+                new SequenceEvent.GroupStartEvent("loop", "fueling"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "startFuel"),
+                new SequenceEvent.EndEvent(),
+                new SequenceEvent.GroupStartEvent("opt", "receipt"),
+                new SequenceEvent.MessageEvent("GasPump", "User", "print"),
+                new SequenceEvent.EndEvent());
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User", "GasPump"), events);
+
+        var transformer = new StateDiagramTransformer(sequenceDiagram, List.of("GasPump"),
+                StateDiagramTransformer.Options.DEFAULT.withOptimize(true));
+        var expected = """
+                @startuml
+                hide empty description
+                state GasPump {
+                [*] --> S1: insertCard
+                state S1 {
+                [*] --> [*]: / startFuel
+                }
+                S1 --> S1: fueling
+                S1 --> S9: !(fueling)
+                S9 --> [*]: !(receipt)
+                S9 --> S6: receipt
+                S6 --> [*]: / print
+                }
+                @enduml
+                """;
+        assertEquals(expected, transformer.transformAllCompact().get("GasPump").toString());
+        assertEquals(expected, transformer.transformAll().get("GasPump").toString());
+    }
+
+    @Test
+    public void testEmptyDiagram() {
+        var sequenceDiagram = new SequenceDiagramModel(List.of("User"), List.of());
+        var graph = new StateDiagramTransformer(sequenceDiagram, List.of("User"),
+                StateDiagramTransformer.Options.DEFAULT.withOptimize(true))
+                .transformAllCompact()
+                .get("User");
+        assertTrue(graph.toString().contains("state User {\n[*] --> [*]\n}\n"));
+    }
+}
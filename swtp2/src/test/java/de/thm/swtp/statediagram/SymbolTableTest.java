@@ -0,0 +1,82 @@
+package de.thm.swtp.statediagram;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+
+    @Test
+    public void testInterning() {
+        var symbols = new SymbolTable(100);
+
+        var received = symbols.trigger("insertCard", false);
+        assertEquals("insertCard", received.text());
+        assertEquals(Symbol.Kind.TRIGGER, received.kind());
+        assertSame(received, symbols.trigger("insertCard", false));
+
+        var sent = symbols.trigger("startFuel", true);
+        assertEquals("/ startFuel", sent.text());
+        assertSame(sent, symbols.trigger("startFuel", true));
+        // The same text is the same symbol, no matter how it was built.
+        assertSame(sent, symbols.trigger("/ startFuel", false));
+
+        var guard = symbols.guard("pinOK");
+        assertEquals(Symbol.Kind.GUARD, guard.kind());
+        assertEquals("!(pinOK)", symbols.negatedGuard("pinOK").text());
+        assertNull(symbols.guard(null));
+        assertNotEquals(symbols.trigger("pinOK", false), guard);
+
+        assertEquals(5, symbols.size());
+        assertEquals(3, symbols.getHits());
+        assertEquals(5, symbols.getMisses());
+    }
+
+    @Test
+    public void testMaxSize() {
+        var symbols = new SymbolTable(2);
+        symbols.trigger("insertCard", false);
+        symbols.trigger("requestPin", false);
+
+        var pinCode = symbols.trigger("pinCode", false);
+        assertEquals("pinCode", pinCode.text());
+        assertNotSame(pinCode, symbols.trigger("pinCode", false));
+        assertEquals(2, symbols.size());
+    }
+
+    @Test
+    public void testConcurrentInterning() throws InterruptedException, ExecutionException {
+        var symbols = new SymbolTable(1000);
+        var executor = Executors.newFixedThreadPool(4);
+        var tasks = new ArrayList<Callable<List<Symbol>>>();
+        for (var t = 0; t < 4; t++) {
+            tasks.add(() -> {
+                var result = new ArrayList<Symbol>();
+                for (var i = 0; i < 100; i++) {
+                    result.add(symbols.trigger("message" + i, true));
+                }
+                return result;
+            });
+        }
+
+        var results = new ArrayList<List<Symbol>>();
+        for (Future<List<Symbol>> f : executor.invokeAll(tasks)) {
+            results.add(f.get());
+        }
+        executor.shutdown();
+
+        for (var i = 0; i < 100; i++) {
+            for (var result : results) {
+                assertSame(results.get(0).get(i), result.get(i));
+            }
+        }
+        assertEquals(100, symbols.size());
+    }
+}
@@ -0,0 +1,71 @@
+package de.thm.swtp.watch;
+
+import de.thm.swtp.TransformationPipeline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagramWatcherTest {
+
+    @TempDir
+    Path directory;
+
+    private void writeSequenceDiagram(Path path, String guard, String message) throws IOException {
+        Files.writeString(path, String.format("""
+                @startuml
+                participant User
+                participant GasPump
+                User --> GasPump: insertCard
+                opt %s
+                    GasPump --> User: %s
+                end
+                @enduml
+                """, guard, message));
+    }
+
+    @Test
+    public void testUpdate() throws IOException {
+        var input = directory.resolve("sequence.puml");
+        var output = directory.resolve("state.puml");
+        var watcher = DiagramWatcher.forFile(new TransformationPipeline("User,GasPump", "uml", null), input, output);
+
+        writeSequenceDiagram(input, "pinOK", "startFuel");
+        var userOutput = directory.resolve("state-User.puml");
+        var gasPumpOutput = directory.resolve("state-GasPump.puml");
+        assertEquals(List.of(userOutput, gasPumpOutput), watcher.update(input));
+        var generated = Files.readString(gasPumpOutput);
+
+        // Saving without changes does not transform again.
+        assertEquals(List.of(), watcher.update(input));
+
+        writeSequenceDiagram(input, "pinOK", "startFueling");
+        assertEquals(List.of(userOutput, gasPumpOutput), watcher.update(input));
+        assertEquals(generated.replace("startFuel", "startFueling"), Files.readString(gasPumpOutput));
+
+        Files.writeString(input, "not a diagram");
+        assertThrows(IllegalStateException.class, () -> watcher.update(input));
+
+        Files.delete(input);
+        assertEquals(List.of(), watcher.update(input));
+    }
+
+    @Test
+    public void testBatchInputs() throws IOException {
+        var input = directory.resolve("in");
+        var output = input.resolve("out");
+        Files.createDirectories(output);
+        writeSequenceDiagram(input.resolve("a.puml"), "pinOK", "startFuel");
+        var watcher = DiagramWatcher.forBatch(new TransformationPipeline("GasPump", "uml", null), input.toString(), output);
+
+        assertEquals(List.of(output.resolve("a.puml")), watcher.update(input.resolve("a.puml")));
+        // Nothing differs for the participant, so the output is not written again.
+        Files.writeString(input.resolve("a.puml"), Files.readString(input.resolve("a.puml")) + "\n");
+        assertEquals(List.of(), watcher.update(input.resolve("a.puml")));
+    }
+}